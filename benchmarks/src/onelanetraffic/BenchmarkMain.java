@@ -0,0 +1,59 @@
+package onelanetraffic;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of the benchmarks module and writes the results as
+ * JSON, so runs can be compared by a script to track regressions:
+ *
+ * <pre>
+ * java -cp out/benchmarks:out/OneLaneTraffic:JMH_JARS onelanetraffic.BenchmarkMain [JMH options] [REGEX]
+ * </pre>
+ *
+ * The module must be compiled with annotation processing enabled, so that
+ * jmh-generator-annprocess generates the benchmark harness. Any JMH command
+ * line option can be passed, e.g. -f 1 -wi 3 -i 5 for a quick run or a regex
+ * such as RoadBenchmark to run a single class. Unless -rf or -rff is given,
+ * the results go to jmh-result.json in JSON format.
+ *
+ * Benchmarks:
+ * <ul>
+ * <li>RoadBenchmark: Road.moveVehicle and Road.setCurrent at several densities,
+ * and each collision path on its own</li>
+ * <li>HistoryBenchmark: HistoryTracking.addHistory and undo for every history store</li>
+ * <li>ReusePoolBenchmark: ReusePool.copy and a recycle and reuse, for both pool kinds and several pool sizes</li>
+ * <li>queues.QueueBenchmark: LinkedQueue against CircularArrayQueue</li>
+ * <li>stacks.StackBenchmark: LinkedStack against ArrayStack</li>
+ * </ul>
+ *
+ * @author Lehan Zhang
+ */
+public class BenchmarkMain {
+    /**  File the results are written to unless -rff is given. */
+    public static final String RESULT_FILE = "jmh-result.json";
+
+    public static void main(String[] args) throws RunnerException {
+        CommandLineOptions options;
+        try {
+            options = new CommandLineOptions(args);
+        } catch (CommandLineOptionException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(2);
+            return;
+        }
+        OptionsBuilder builder = new OptionsBuilder();
+        builder.parent(options);
+        if (!options.getResultFormat().hasValue()) {
+            builder.resultFormat(ResultFormatType.JSON);
+        }
+        if (!options.getResult().hasValue()) {
+            builder.result(RESULT_FILE);
+        }
+        new Runner(builder.build()).run();
+    }
+}
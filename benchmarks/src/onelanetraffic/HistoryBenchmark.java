@@ -0,0 +1,94 @@
+package onelanetraffic;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures HistoryTracking with each history store: saving the road before a
+ * move, and undoing moves.
+ *
+ * Every benchmark leaves the history as deep as it found it, so it can run for
+ * a whole trial without running out of memory. moveAndUndo saves, moves and
+ * undoes the move again; moveAndDeepUndo makes the given number of moves and
+ * undoes them with a single "u N", which is where IndexedHistory jumps while
+ * the others restore one state at a time. RoadBenchmark.moveVehicle gives the
+ * cost of the moves alone.
+ *
+ * @author Lehan Zhang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class HistoryBenchmark {
+
+    /**
+     * A simulation whose history already holds some states.
+     */
+    @State(Scope.Thread)
+    public static class Tracked {
+        @Param({"10000"})
+        public int size;
+
+        @Param({"50"})
+        public int densityPercent;
+
+        @Param({"array", "persistent"})
+        public String storage;
+
+        @Param({"snapshot", "journal", "checkpoint", "indexed"})
+        public String history;
+
+        @Param({"0", "1000"})
+        public int depth;
+
+        @Param({"100"})
+        public int undoSteps;
+
+        Simulation simulation;
+        SplittableRandom directions;
+
+        @Setup
+        public void setUp() {
+            Road road = new Road(BatchRunner.createStorage(storage, size), size * densityPercent / 100,
+                    new SplittableRandom(42));
+            simulation = new Simulation(road, BatchRunner.createHistory(history, 64, null));
+            directions = new SplittableRandom(7);
+            for (int i = 0; i < depth; i++) {
+                move();
+            }
+        }
+
+        void move() {
+            simulation.execute(CommandReader.MOVE, directions.nextInt(3) - 1);
+        }
+    }
+
+    @Benchmark
+    public Road moveAndUndo(Tracked tracked) {
+        tracked.move();
+        tracked.simulation.execute(CommandReader.UNDO, 1);
+        return tracked.simulation.getRoad();
+    }
+
+    @Benchmark
+    public Road moveAndDeepUndo(Tracked tracked) {
+        for (int i = 0; i < tracked.undoSteps; i++) {
+            tracked.move();
+        }
+        tracked.simulation.execute(CommandReader.UNDO, tracked.undoSteps);
+        return tracked.simulation.getRoad();
+    }
+}
@@ -0,0 +1,68 @@
+package onelanetraffic;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import exceptionclasses.EmptyQueueException;
+
+/**
+ * Measures the reuse pool: ReusePool.copy, which every Road.copy calls, and a
+ * recycle followed by a reuse, for the persistent-queue PersistentReusePool and the
+ * ring of ConcurrentReusePool at several pool sizes.
+ *
+ * @author Lehan Zhang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ReusePoolBenchmark {
+
+    /**
+     * A pool holding a given number of vehicles.
+     */
+    @State(Scope.Thread)
+    public static class Pool {
+        @Param({"persistent", "ring"})
+        public String kind;
+
+        @Param({"0", "100", "10000"})
+        public int poolSize;
+
+        ReusePool pool;
+        Vehicle vehicle;
+
+        @Setup
+        public void setUp() {
+            pool = kind.equals("ring") ? new ConcurrentReusePool(poolSize + 1) : new PersistentReusePool();
+            SplittableRandom rand = new SplittableRandom(42);
+            for (int i = 0; i < poolSize; i++) {
+                pool.recycleVehicle(rand.nextBoolean() ? new Car(rand) : new Bus(rand));
+            }
+            vehicle = new Car(rand);
+        }
+    }
+
+    @Benchmark
+    public ReusePool copy(Pool pool) {
+        return pool.pool.copy();
+    }
+
+    @Benchmark
+    public Vehicle recycleAndReuse(Pool pool) throws EmptyQueueException {
+        pool.pool.recycleVehicle(pool.vehicle);
+        pool.vehicle = pool.pool.reuseVehicle(); // keeps the pool at its size
+        return pool.vehicle;
+    }
+}
@@ -0,0 +1,163 @@
+package onelanetraffic;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the road itself: picking the current vehicle, moving it, and each
+ * of the ways a move can end.
+ *
+ * moveVehicle and setCurrent run on one road for the whole trial, so it
+ * settles into its steady state at the given density; the road changes
+ * between calls, as it does in a simulation. The collision benchmarks each
+ * start from a copy of a small prepared road where the vehicle at index 7
+ * moves into the one at index 8 (or off the end of the road for
+ * moveOutOfRange), and copyBaseline measures that copy alone,
+ * so it can be subtracted.
+ *
+ * @author Lehan Zhang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RoadBenchmark {
+
+    /**
+     * A road of a given size, storage and density, with its random source.
+     */
+    @State(Scope.Thread)
+    public static class Traffic {
+        @Param({"100000"})
+        public int size;
+
+        @Param({"1", "10", "50", "90", "100"})
+        public int densityPercent;
+
+        @Param({"array", "primitive", "persistent", "offheap"})
+        public String storage;
+
+        Road road;
+        SplittableRandom directions;
+
+        @Setup
+        public void setUp() {
+            int numVehicles = Math.max(1, (int) ((long) size * densityPercent / 100));
+            road = new Road(BatchRunner.createStorage(storage, size), numVehicles, new SplittableRandom(42));
+            directions = new SplittableRandom(7);
+        }
+    }
+
+    /**
+     * Small roads that each lead to one collision type when index 7 moves right.
+     */
+    @State(Scope.Thread)
+    public static class Collisions {
+        Road empty; // index 8 is free
+        Road edge; // a single vehicle at the last index
+        Road carsSameColor;
+        Road carsDifferentColor;
+        Road busVsBus;
+        Road carIntoBus;
+        Road busIntoCar;
+
+        @Setup
+        public void setUp() {
+            empty = road(new Car(200, 0), null);
+            edge = new Road(new ArrayRoadStorage(16));
+            edge.getStorage().set(15, new Car(200, 0));
+            edge.setNumVehicles(1);
+            carsSameColor = road(new Car(200, 0), new Car(150, 0));
+            carsDifferentColor = road(new Car(200, 0), new Car(150, 1));
+            busVsBus = road(new Bus(300, 20000), new Bus(300, 15000));
+            carIntoBus = road(new Car(200, 0), new Bus(300, 20000));
+            busIntoCar = road(new Bus(300, 20000), new Car(200, 0));
+        }
+
+        private static Road road(Vehicle mover, Vehicle other) {
+            Road road = new Road(new ArrayRoadStorage(16));
+            road.getStorage().set(7, mover);
+            road.getStorage().set(8, other);
+            road.setNumVehicles(other == null ? 1 : 2);
+            return road;
+        }
+    }
+
+    @Benchmark
+    public Road moveVehicle(Traffic traffic) {
+        Road road = traffic.road;
+        road.setCurrent();
+        road.moveVehicle(traffic.directions.nextInt(3) - 1);
+        return road;
+    }
+
+    @Benchmark
+    public int setCurrent(Traffic traffic) {
+        Road road = traffic.road;
+        road.setCurrent();
+        return road.getPosition();
+    }
+
+    @Benchmark
+    public Road copyBaseline(Collisions collisions) {
+        return collisions.empty.copy();
+    }
+
+    @Benchmark
+    public Road moveIntoEmpty(Collisions collisions) {
+        return collide(collisions.empty, -1);
+    }
+
+    @Benchmark
+    public Road moveOutOfRange(Collisions collisions) {
+        Road road = collisions.edge.copy();
+        road.replayMove(15, 1, -1);
+        return road;
+    }
+
+    @Benchmark
+    public Road carsSameColor(Collisions collisions) {
+        return collide(collisions.carsSameColor, -1);
+    }
+
+    @Benchmark
+    public Road carsDifferentColor(Collisions collisions) {
+        return collide(collisions.carsDifferentColor, 0); // both go to the pool, one comes back at index 0
+    }
+
+    @Benchmark
+    public Road busVsBus(Collisions collisions) {
+        return collide(collisions.busVsBus, -1);
+    }
+
+    @Benchmark
+    public Road carIntoBus(Collisions collisions) {
+        return collide(collisions.carIntoBus, -1);
+    }
+
+    @Benchmark
+    public Road busIntoCar(Collisions collisions) {
+        return collide(collisions.busIntoCar, -1);
+    }
+
+    /**
+     * Moves the vehicle at index 7 of a copy of the road to the right.
+     */
+    private static Road collide(Road template, int placement) {
+        Road road = template.copy();
+        road.replayMove(7, 1, placement);
+        return road;
+    }
+}
@@ -0,0 +1,77 @@
+package queues;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import exceptionclasses.EmptyQueueException;
+
+/**
+ * Compares LinkedQueue and CircularArrayQueue. The queue is kept at a given
+ * length, as a reuse pool is during a simulation: steady enqueues one item
+ * and dequeues one, and fillAndDrain builds the queue from empty and empties
+ * it again, per item.
+ *
+ * @author Lehan Zhang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class QueueBenchmark {
+
+    /**
+     * A queue of the given kind and length.
+     */
+    @State(Scope.Thread)
+    public static class Queue {
+        @Param({"linked", "array"})
+        public String kind;
+
+        @Param({"16", "1024", "65536"})
+        public int length;
+
+        QueueADT<Integer> queue;
+        Integer item = 42;
+
+        @Setup
+        public void setUp() {
+            queue = create();
+            for (int i = 0; i < length; i++) {
+                queue.enqueue(i);
+            }
+        }
+
+        QueueADT<Integer> create() {
+            return kind.equals("linked") ? new LinkedQueue<>() : new CircularArrayQueue<>();
+        }
+    }
+
+    @Benchmark
+    public Integer steady(Queue queue) throws EmptyQueueException {
+        queue.queue.enqueue(queue.item);
+        return queue.queue.dequeue();
+    }
+
+    @Benchmark
+    public int fillAndDrain(Queue queue) throws EmptyQueueException {
+        QueueADT<Integer> fresh = queue.create();
+        for (int i = 0; i < queue.length; i++) {
+            fresh.enqueue(queue.item);
+        }
+        int sum = 0;
+        while (!fresh.isEmpty()) {
+            sum += fresh.dequeue();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,75 @@
+package stacks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares LinkedStack and ArrayStack, as used for the road history. The
+ * stack is kept at a given depth: steady pushes one item and pops it, and
+ * fillAndDrain builds the stack from empty and empties it again, per item.
+ *
+ * @author Lehan Zhang
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class StackBenchmark {
+
+    /**
+     * A stack of the given kind and depth.
+     */
+    @State(Scope.Thread)
+    public static class Stack {
+        @Param({"linked", "array"})
+        public String kind;
+
+        @Param({"16", "1024", "65536"})
+        public int depth;
+
+        StackADT<Integer> stack;
+        Integer item = 42;
+
+        @Setup
+        public void setUp() {
+            stack = create();
+            for (int i = 0; i < depth; i++) {
+                stack.push(i);
+            }
+        }
+
+        StackADT<Integer> create() {
+            return kind.equals("linked") ? new LinkedStack<>() : new ArrayStack<>();
+        }
+    }
+
+    @Benchmark
+    public Integer steady(Stack stack) {
+        stack.stack.push(stack.item);
+        return stack.stack.pop();
+    }
+
+    @Benchmark
+    public int fillAndDrain(Stack stack) {
+        StackADT<Integer> fresh = stack.create();
+        for (int i = 0; i < stack.depth; i++) {
+            fresh.push(stack.item);
+        }
+        int sum = 0;
+        while (!fresh.isEmpty()) {
+            sum += fresh.pop();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,69 @@
+package onelanetraffic;
+
+/**
+ * A road storage backed by a plain array of vehicles.
+ * Reads and writes are O(1); a copy clones the whole array.
+ *
+ * @author Lehan Zhang
+ */
+public class ArrayRoadStorage implements RoadStorage {
+    private Vehicle[] vehicles; // an array that stores vehicle objects
+
+    /**
+     * Creates an empty storage with the given number of slots.
+     *
+     * @param size the size of the vehicles array
+     */
+    public ArrayRoadStorage(int size) {
+        vehicles = new Vehicle[size];
+    }
+
+    /**
+     * Returns the vehicle at the given index.
+     *
+     * @param index the 0-based index
+     * @return the vehicle, or null if the slot is empty
+     */
+    public Vehicle get(int index) {
+        return vehicles[index];
+    }
+
+    /**
+     * Stores a vehicle at the given index.
+     *
+     * @param index the 0-based index
+     * @param vehicle the vehicle to store, or null to empty the slot
+     */
+    public void set(int index, Vehicle vehicle) {
+        vehicles[index] = vehicle;
+    }
+
+    /**
+     * Returns the size of the vehicles array.
+     *
+     * @return the number of slots
+     */
+    public int size() {
+        return vehicles.length;
+    }
+
+    /**
+     * Creates a copy of this storage by cloning the array.
+     *
+     * @return a new ArrayRoadStorage with the same vehicles
+     */
+    public RoadStorage copy() {
+        ArrayRoadStorage clone = new ArrayRoadStorage(0);
+        clone.vehicles = vehicles.clone();
+        return clone;
+    }
+
+    /**
+     * Slots are separate array elements, so different slots can be written from different threads.
+     *
+     * @return true
+     */
+    public boolean isSegmentable() {
+        return true;
+    }
+}
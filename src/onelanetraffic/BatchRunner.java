@@ -0,0 +1,577 @@
+package onelanetraffic;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.random.RandomGenerator;
+import javax.management.JMException;
+
+/**
+ * Runs the one-lane traffic simulation from the command line without any dialogs.
+ * Everything MainApp asks for interactively is passed as arguments instead, and
+ * this class never touches AWT or Swing, so it starts quickly and works on
+ * headless machines:
+ *
+ * <pre>
+ * java onelanetraffic.BatchRunner --size 1000 --vehicles 600 --seed 42 --input input.txt --output out.txt
+ * </pre>
+ *
+ * Options:
+ * <ul>
+ * <li>--size N: number of positions on the road (required)</li>
+ * <li>--vehicles N: number of vehicles, 1 to size (required)</li>
+ * <li>--seed S: seed of the random source; random if omitted</li>
+ * <li>--input PATH: text or binary command file, input.txt by default</li>
+ * <li>--output PATH: file to write the simulation output to, standard output by default</li>
+ * <li>--events text|binary|none: the text narrative, written on a background thread,
+ * a BinaryEventLog, or nothing; text by default</li>
+ * <li>--frames diff|full: after each command show only the changed positions of
+ * the road, or the whole road; diff by default</li>
+ * <li>--quiet: discard the simulation output, same as --events none</li>
+ * <li>--storage array|persistent|primitive|offheap: road storage, array by default</li>
+ * <li>--pool persistent|ring: the persistent-queue reuse pool, or the lock-free ring of
+ * ConcurrentReusePool; persistent by default</li>
+ * <li>--history snapshot|journal|checkpoint|spill|indexed: history store, journal by default;
+ * only indexed can redo undone moves ("r" commands)</li>
+ * <li>--checkpoint-interval K: commands between checkpoints for checkpoint history, 64 by default</li>
+ * <li>--history-memory N: road states spill history keeps in memory before it writes older ones
+ * to disk, 1024 by default</li>
+ * <li>--spill-dir DIR: directory of the spill history file, the temporary directory by default</li>
+ * <li>--retain-depth N: snapshot history keeps at most the N newest states</li>
+ * <li>--retain-bytes N: snapshot history keeps the newest states that fit in an estimated N bytes</li>
+ * <li>--retain-every K: snapshot history keeps only the state before every K-th move once it
+ * is older than the --retain-recent newest ones (1024 by default)</li>
+ * <li>--ticks N: instead of reading commands, run N synchronous ticks in which every
+ * vehicle moves at once (see TickSimulation), and show only the initial and final road</li>
+ * <li>--replay-segments N: split the road into N segments when checkpoint history replays
+ * commands, and replay them in parallel; in order by default. Needs --history checkpoint. An
+ * undo replays fewer than K commands, and only runs of at least min(K / 2, 1024) of them are
+ * replayed in parallel, so this pays off for long roads with a large --checkpoint-interval
+ * (e.g. 4096), not with the default of 64.</li>
+ * <li>--durable DIR: keep a snapshot and a command log in DIR (see DurableSimulation); if DIR
+ * holds a snapshot of a run that was killed, resume that run instead of starting a new one; with
+ * --seed it goes on as the killed run would have. The files are deleted when the run finishes.</li>
+ * <li>--snapshot-interval N: commands between snapshots of a durable run, 10000 by default</li>
+ * <li>--metrics-interval N: print the SimulationMetrics of the run to standard error every N
+ * seconds and at the end</li>
+ * <li>--jmx: register the SimulationMetrics of the run with JMX as
+ * onelanetraffic:type=SimulationMetrics,name=batch while it runs</li>
+ * <li>--jfr: commit Java Flight Recorder events for commands, collisions and the reuse pool
+ * (see FlightRecorderEvents); history events are committed either way. Events are only
+ * kept while a recording runs, e.g. with -XX:StartFlightRecording.</li>
+ * </ul>
+ * Metrics and flight recorder events cover commands only, so they cannot be combined with --ticks.
+ * The exit status is 0 on success, 1 if the input file cannot be read, a durable run cannot
+ * read or write its files or a spill history its file, and 2 for invalid arguments.
+ *
+ * @author Lehan Zhang
+ */
+public class BatchRunner {
+    /**  The storage kinds createStorage knows. */
+    static final Set<String> STORAGE_KINDS = Set.of("array", "persistent", "primitive", "offheap");
+    /**  The history kinds createHistory knows; BatchRunner itself also has spill. */
+    static final Set<String> HISTORY_KINDS = Set.of("snapshot", "journal", "checkpoint", "indexed");
+
+    private int size; // size of the road
+    private int numVehicles; // num of vehicles to place on the road
+    private Long seed; // seed of the random source, null for a random seed
+    private String inputFile = "input.txt"; // name of the input file
+    private String outputFile; // name of the output file, null for standard output
+    private boolean quiet; // true to discard all output
+    private String events = "text"; // event output kind
+    private boolean fullFrames; // true to show the whole road after every command
+    private String storage = "array"; // road storage kind
+    private String history = "journal"; // history store kind
+    private boolean ringPool; // true to use a ConcurrentReusePool instead of a PersistentReusePool
+    private int checkpointInterval = 64; // commands between checkpoints
+    private int historyMemory = 1024; // road states spill history keeps in memory
+    private String spillDir = System.getProperty("java.io.tmpdir"); // directory of the spill history file
+    private int retainDepth; // most states snapshot history keeps, 0 for no limit
+    private long retainBytes; // most estimated bytes snapshot history keeps, 0 for no limit
+    private int retainRecent = 1024; // newest states snapshot history never thins out
+    private int retainEvery = 1; // snapshot history keeps every k-th older state
+    private int replaySegments; // segments checkpoint history replays in parallel, 0 to replay in order
+    private int ticks; // number of synchronous ticks to run instead of the commands, 0 for command mode
+    private String durableDir; // directory of the snapshot and command log, null to keep none
+    private int snapshotInterval = 10000; // commands between snapshots of a durable run
+    private int metricsInterval; // seconds between metrics dumps on standard error, 0 for none
+    private boolean jmx; // true to register the metrics with JMX
+    private boolean jfr; // true to commit flight recorder events for commands, collisions and the pool
+
+    public static void main(String[] args) {
+        BatchRunner runner = new BatchRunner();
+        try {
+            runner.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: java onelanetraffic.BatchRunner --size N --vehicles N [--seed S]"
+                    + " [--input PATH] [--output PATH] [--events text|binary|none | --quiet] [--frames diff|full]"
+                    + " [--storage array|persistent|primitive|offheap] [--pool persistent|ring]"
+                    + " [--history snapshot|journal|checkpoint|spill|indexed] [--checkpoint-interval K] [--history-memory N]"
+                    + " [--spill-dir DIR] [--retain-depth N] [--retain-bytes N] [--retain-every K]"
+                    + " [--retain-recent N] [--replay-segments N]"
+                    + " [--ticks N] [--durable DIR] [--snapshot-interval N] [--metrics-interval N] [--jmx] [--jfr]");
+            System.exit(2);
+        }
+        System.exit(runner.run());
+    }
+
+    /**
+     * Reads the command line options into this runner.
+     *
+     * @param args the command line arguments
+     * @throws IllegalArgumentException if an option is unknown, missing its value or invalid
+     */
+    public void parse(String[] args) {
+        boolean hasSize = false;
+        boolean hasVehicles = false;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--quiet")) {
+                quiet = true;
+                continue;
+            }
+            if (option.equals("--jmx")) {
+                jmx = true;
+                continue;
+            }
+            if (option.equals("--jfr")) {
+                jfr = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--size":
+                    size = parsePositive(option, value);
+                    hasSize = true;
+                    break;
+                case "--vehicles":
+                    numVehicles = parsePositive(option, value);
+                    hasVehicles = true;
+                    break;
+                case "--seed":
+                    try {
+                        seed = Long.parseLong(value);
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("Invalid seed: " + value);
+                    }
+                    break;
+                case "--input":
+                    inputFile = value;
+                    break;
+                case "--output":
+                    outputFile = value;
+                    break;
+                case "--events":
+                    if (!value.equals("text") && !value.equals("binary") && !value.equals("none")) {
+                        throw new IllegalArgumentException("Unknown events: " + value);
+                    }
+                    events = value;
+                    break;
+                case "--frames":
+                    if (!value.equals("diff") && !value.equals("full")) {
+                        throw new IllegalArgumentException("Unknown frames: " + value);
+                    }
+                    fullFrames = value.equals("full");
+                    break;
+                case "--storage":
+                    storage = value;
+                    break;
+                case "--pool":
+                    if (!value.equals("persistent") && !value.equals("ring")) {
+                        throw new IllegalArgumentException("Unknown pool: " + value);
+                    }
+                    ringPool = value.equals("ring");
+                    break;
+                case "--history":
+                    history = value;
+                    break;
+                case "--checkpoint-interval":
+                    checkpointInterval = parsePositive(option, value);
+                    break;
+                case "--history-memory":
+                    historyMemory = parsePositive(option, value);
+                    break;
+                case "--spill-dir":
+                    spillDir = value;
+                    break;
+                case "--retain-depth":
+                    retainDepth = parsePositive(option, value);
+                    break;
+                case "--retain-bytes":
+                    try {
+                        retainBytes = Long.parseLong(value);
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("Invalid number for " + option + ": " + value);
+                    }
+                    if (retainBytes <= 0) {
+                        throw new IllegalArgumentException(option + " must be a positive integer: " + value);
+                    }
+                    break;
+                case "--retain-every":
+                    retainEvery = parsePositive(option, value);
+                    break;
+                case "--retain-recent":
+                    retainRecent = parsePositive(option, value);
+                    break;
+                case "--ticks":
+                    ticks = parsePositive(option, value);
+                    break;
+                case "--replay-segments":
+                    replaySegments = parsePositive(option, value);
+                    break;
+                case "--durable":
+                    durableDir = value;
+                    break;
+                case "--snapshot-interval":
+                    snapshotInterval = parsePositive(option, value);
+                    break;
+                case "--metrics-interval":
+                    metricsInterval = parsePositive(option, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        if (!hasSize || !hasVehicles) {
+            throw new IllegalArgumentException("Both --size and --vehicles are required.");
+        }
+        if (numVehicles > size) {
+            throw new IllegalArgumentException("Total number of vehicles need to be less than road size");
+        }
+        boolean retains = retainDepth > 0 || retainBytes > 0 || retainEvery > 1;
+        if (retains && !history.equals("snapshot")) {
+            throw new IllegalArgumentException("Retention options need --history snapshot");
+        }
+        if (replaySegments > 0 && !history.equals("checkpoint")) {
+            throw new IllegalArgumentException("--replay-segments needs --history checkpoint");
+        }
+        if (retainEvery > 1 && durableDir != null) {
+            // a recovered history would count moves from the snapshot and keep different states
+            throw new IllegalArgumentException("--retain-every cannot be used with --durable");
+        }
+        if (ticks > 0 && (metricsInterval > 0 || jmx || jfr)) {
+            throw new IllegalArgumentException("--metrics-interval, --jmx and --jfr cannot be used with --ticks");
+        }
+        checkStorageKind(storage); // validate the names up front, without creating anything
+        if (!history.equals("spill")) {
+            checkHistoryKind(history);
+        }
+    }
+
+    /**
+     * Runs the simulation with the parsed options.
+     *
+     * @return the exit status of the run
+     */
+    public int run() {
+        CommandReader commands = null; // not needed in tick mode
+        if (ticks == 0) {
+            try {
+                commands = new CommandReader(Path.of(inputFile));
+            } catch (IOException ex) {
+                System.err.println("No file was found with the name " + "\"" + inputFile + "\"");
+                return 1;
+            }
+        }
+
+        OutputStream file = null; // the output file, null when writing to standard output
+        if (outputFile != null && !quiet) {
+            try {
+                file = new BufferedOutputStream(new FileOutputStream(outputFile), 1 << 16);
+            } catch (FileNotFoundException ex) {
+                System.err.println("Cannot write to " + "\"" + outputFile + "\"");
+                if (commands != null) {
+                    closeQuietly(commands);
+                }
+                return 1;
+            }
+        }
+
+        SimulationEventListener output = createEventListener(file != null ? file : System.out);
+        SimulationEventListener listener = output; // the output, behind the metrics and recorder if there are any
+        SimulationMetrics metrics = null;
+        MetricsReporter reporter = null;
+        if (metricsInterval > 0 || jmx) {
+            metrics = new SimulationMetrics(output);
+            listener = metrics;
+            if (jmx) {
+                try {
+                    metrics.register("batch");
+                } catch (JMException ex) {
+                    System.err.println("Cannot register the metrics with JMX: " + ex.getMessage());
+                }
+            }
+            if (metricsInterval > 0) {
+                reporter = new MetricsReporter(metrics, System.err, metricsInterval * 1000L);
+            }
+        }
+        if (jfr) {
+            listener = new FlightRecorderListener(listener);
+        }
+        try {
+            if (ticks == 0 && durableDir != null) {
+                // every snapshot reseeds the random source, so a resumed run draws what the killed one would have
+                long durableSeed = seed == null ? new SplittableRandom().nextLong() : seed;
+                return runDurable(new ReseedableRandom(durableSeed), listener, metrics, commands);
+            }
+            RandomGenerator rand = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+            Road aRoad = new Road(createStorage(size), numVehicles, rand);
+            if (ringPool) {
+                aRoad.setReusePool(createPool());
+            }
+            if (ticks > 0) {
+                // every vehicle moves in every tick; only the initial and final road are reported
+                listener.simulationStarted(aRoad);
+                TickSimulation simulation = new TickSimulation(aRoad);
+                simulation.run(ticks);
+                listener.simulationFinished(simulation.toRoad(createStorage(size)));
+            } else {
+                Simulation simulation = new Simulation(aRoad, createHistory(metrics), listener);
+                simulation.run(commands);
+            }
+        } catch (UncheckedIOException ex) {
+            System.err.println(ex.getCause()); // e.g. a spill history file that cannot be written
+            return 1;
+        } finally {
+            if (output instanceof TextEventWriter) {
+                ((TextEventWriter) output).close();
+            } else if (output instanceof BinaryEventLog) {
+                ((BinaryEventLog) output).flush(); // leaves standard output open
+            }
+            if (reporter != null) {
+                reporter.close(); // prints the final metrics
+            }
+            if (metrics != null) {
+                try {
+                    metrics.unregister();
+                } catch (JMException ex) {
+                    System.err.println(ex.getMessage());
+                }
+            }
+            if (file != null) {
+                closeQuietly(file);
+            }
+            if (commands != null) {
+                closeQuietly(commands);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Runs the commands as a durable simulation in --durable, resuming the run
+     * saved there if there is one.
+     *
+     * @return the exit status of the run
+     */
+    private int runDurable(ReseedableRandom rand, SimulationEventListener listener, SimulationMetrics metrics,
+                           CommandReader commands) {
+        Path directory = Path.of(durableDir);
+        DurableSimulation durable;
+        try {
+            if (DurableSimulation.hasSnapshot(directory)) {
+                ReusePool pool = createPool();
+                durable = DurableSimulation.recover(directory, snapshotInterval, this::createStorage, pool,
+                        createHistory(metrics), listener, commands);
+            } else {
+                Road aRoad = new Road(createStorage(size), numVehicles, rand);
+                if (ringPool) {
+                    aRoad.setReusePool(new ConcurrentReusePool(numVehicles));
+                }
+                durable = DurableSimulation.start(directory, snapshotInterval,
+                        new Simulation(aRoad, createHistory(metrics), listener), commands);
+            }
+        } catch (IOException | IllegalStateException ex) {
+            System.err.println("Cannot resume the run in " + "\"" + durableDir + "\": " + ex.getMessage());
+            return 1;
+        }
+
+        try {
+            durable.run(commands);
+            durable.delete();
+            return 0;
+        } catch (IOException ex) {
+            System.err.println("Cannot write the run to " + "\"" + durableDir + "\": " + ex.getMessage());
+            closeQuietly(durable);
+            return 1;
+        }
+    }
+
+    /**
+     * Creates the event listener given by --events and --quiet.
+     */
+    private SimulationEventListener createEventListener(OutputStream out) {
+        if (quiet || events.equals("none")) {
+            return SimulationEventListener.NONE;
+        }
+        if (events.equals("binary")) {
+            return new BinaryEventLog(out);
+        }
+        PrintStream text = out instanceof PrintStream ? (PrintStream) out : new PrintStream(out, false);
+        text.println("Starting one-lane traffic simulation...\n");
+        return new TextEventWriter(text, true, new RoadRenderer(!fullFrames));
+    }
+
+    /**
+     * Closes a file, reporting but otherwise ignoring a failure.
+     */
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+        }
+    }
+
+    /**
+     * Creates an empty road storage of the kind given by --storage.
+     */
+    private RoadStorage createStorage(int roadSize) {
+        return createStorage(storage, roadSize);
+    }
+
+    /**
+     * Creates an empty reuse pool of the kind given by --pool.
+     */
+    private ReusePool createPool() {
+        return ringPool ? new ConcurrentReusePool(numVehicles) : new PersistentReusePool(); // never holds more than all vehicles
+    }
+
+    /**
+     * Creates a history tracker with the store given by --history.
+     *
+     * @throws UncheckedIOException if the file of a spill history cannot be created
+     */
+    private HistoryTracking createHistory() {
+        if (history.equals("spill")) {
+            try {
+                return new HistoryTracking(new SpillingHistory(historyMemory, Path.of(spillDir),
+                        this::createStorage, this::createPool));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        SegmentedReplay replayer = null;
+        if (replaySegments > 0) {
+            // an undo replays at most K - 1 commands, so a fixed minimum above that would never be reached
+            int minBatch = Math.max(1, Math.min(checkpointInterval / 2, 1024));
+            replayer = new SegmentedReplay(ForkJoinPool.commonPool(), replaySegments, minBatch);
+        }
+        if (history.equals("snapshot")) {
+            return new HistoryTracking(new RetentionPolicy(retainDepth, retainBytes, retainRecent, retainEvery));
+        }
+        return createHistory(history, checkpointInterval, replayer);
+    }
+
+    /**
+     * Creates a history tracker with the store given by --history, and lets the
+     * metrics report its depth if there are any.
+     */
+    private HistoryTracking createHistory(SimulationMetrics metrics) {
+        HistoryTracking roadHistory = createHistory();
+        if (metrics != null) {
+            metrics.watch(roadHistory);
+        }
+        return roadHistory;
+    }
+
+    /**
+     * Creates an empty road storage.
+     *
+     * @param kind array, persistent, primitive or offheap
+     * @param roadSize the number of positions on the road
+     * @return the new storage
+     * @throws IllegalArgumentException if the kind is unknown
+     */
+    static RoadStorage createStorage(String kind, int roadSize) {
+        switch (kind) {
+            case "array":
+                return new ArrayRoadStorage(roadSize);
+            case "persistent":
+                return new PersistentRoadStorage(roadSize);
+            case "primitive":
+                return new PrimitiveRoadStorage(roadSize);
+            case "offheap":
+                return new OffHeapRoadStorage(roadSize);
+            default:
+                throw new IllegalArgumentException("Unknown storage: " + kind);
+        }
+    }
+
+    /**
+     * Checks that createStorage knows a storage kind.
+     *
+     * @param kind the kind to check
+     * @throws IllegalArgumentException if the kind is unknown
+     */
+    static void checkStorageKind(String kind) {
+        if (!STORAGE_KINDS.contains(kind)) {
+            throw new IllegalArgumentException("Unknown storage: " + kind);
+        }
+    }
+
+    /**
+     * Checks that createHistory knows a history kind.
+     *
+     * @param kind the kind to check
+     * @throws IllegalArgumentException if the kind is unknown
+     */
+    static void checkHistoryKind(String kind) {
+        if (!HISTORY_KINDS.contains(kind)) {
+            throw new IllegalArgumentException("Unknown history: " + kind);
+        }
+    }
+
+    /**
+     * Creates a history tracker.
+     *
+     * @param kind snapshot, journal, checkpoint or indexed
+     * @param checkpointInterval commands between checkpoints of a checkpoint history
+     * @param replayer replays the log of a checkpoint history in parallel segments, or null
+     * @return the new history tracker
+     * @throws IllegalArgumentException if the kind is unknown
+     */
+    static HistoryTracking createHistory(String kind, int checkpointInterval, SegmentedReplay replayer) {
+        switch (kind) {
+            case "snapshot":
+                return new HistoryTracking(new SnapshotHistory());
+            case "journal":
+                return new HistoryTracking(new JournalHistory());
+            case "checkpoint":
+                return new HistoryTracking(new CheckpointHistory(checkpointInterval, replayer));
+            case "indexed":
+                return new HistoryTracking(new IndexedHistory());
+            default:
+                throw new IllegalArgumentException("Unknown history: " + kind);
+        }
+    }
+
+    /**
+     * Parses a positive integer option value.
+     */
+    static int parsePositive(String option, String value) {
+        int number;
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid number for " + option + ": " + value);
+        }
+        if (number <= 0) {
+            throw new IllegalArgumentException(option + " must be a positive integer: " + value);
+        }
+        return number;
+    }
+}
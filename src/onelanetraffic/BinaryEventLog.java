@@ -0,0 +1,193 @@
+package onelanetraffic;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * An event listener that writes a compact binary record per event instead of text.
+ * No strings are built; each record is a one-byte event code followed by its
+ * fields as big-endian ints, so a log can be decoded with DataInputStream.
+ *
+ * Record layouts (positions are 0-based):
+ * <ul>
+ * <li>STARTED, COMMAND_FINISHED, FINISHED: number of vehicles on the road</li>
+ * <li>MOVE_COMMAND: position, step</li>
+ * <li>UNDO_COMMAND, REDO_COMMAND, INVALID_DIRECTION: steps</li>
+ * <li>INVALID_COMMAND, POOL_EMPTY, HISTORY_EMPTY, REDO_EMPTY: no fields</li>
+ * <li>STAYED: position</li>
+ * <li>OUT_OF_RANGE: position, direction</li>
+ * <li>MOVED: from, to</li>
+ * <li>COLLISION: collision type ordinal (byte), position, target, removed flags (byte: 1 mover, 2 other)</li>
+ * <li>RECYCLED, REUSED: position</li>
+ * </ul>
+ *
+ * @author Lehan Zhang
+ */
+public class BinaryEventLog implements SimulationEventListener, Closeable {
+    public static final byte STARTED = 1;
+    public static final byte MOVE_COMMAND = 2;
+    public static final byte UNDO_COMMAND = 3;
+    public static final byte INVALID_DIRECTION = 4;
+    public static final byte INVALID_COMMAND = 5;
+    public static final byte COMMAND_FINISHED = 6;
+    public static final byte FINISHED = 7;
+    public static final byte STAYED = 8;
+    public static final byte OUT_OF_RANGE = 9;
+    public static final byte MOVED = 10;
+    public static final byte COLLISION = 11;
+    public static final byte RECYCLED = 12;
+    public static final byte REUSED = 13;
+    public static final byte POOL_EMPTY = 14;
+    public static final byte HISTORY_EMPTY = 15;
+    public static final byte REDO_COMMAND = 16;
+    public static final byte REDO_EMPTY = 17;
+
+    private final DataOutputStream out;
+
+    /**
+     * Creates a log that writes to the given stream through a 64 KiB buffer.
+     *
+     * @param out the stream to write the records to
+     */
+    public BinaryEventLog(OutputStream out) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+    }
+
+    public void simulationStarted(Road road) {
+        record(STARTED, road.getNumVehicles());
+    }
+
+    public void moveCommand(int position, int step) {
+        record(MOVE_COMMAND, position, step);
+    }
+
+    public void undoCommand(int steps) {
+        record(UNDO_COMMAND, steps);
+    }
+
+    public void redoCommand(int steps) {
+        record(REDO_COMMAND, steps);
+    }
+
+    public void invalidDirection(int step) {
+        record(INVALID_DIRECTION, step);
+    }
+
+    public void invalidCommand() {
+        record(INVALID_COMMAND);
+    }
+
+    public void commandFinished(Road road) {
+        record(COMMAND_FINISHED, road.getNumVehicles());
+    }
+
+    public void simulationFinished(Road road) {
+        record(FINISHED, road.getNumVehicles());
+        flush();
+    }
+
+    public void vehicleStayed(Vehicle vehicle, int position) {
+        record(STAYED, position);
+    }
+
+    public void moveOutOfRange(int position, int direction) {
+        record(OUT_OF_RANGE, position, direction);
+    }
+
+    public void vehicleMoved(Vehicle vehicle, int from, int to) {
+        record(MOVED, from, to);
+    }
+
+    public void collision(CollisionType type, Vehicle mover, int position, Vehicle other, int target,
+                          boolean moverRemoved, boolean otherRemoved, ReusePool pool) {
+        try {
+            out.writeByte(COLLISION);
+            out.writeByte(type.ordinal());
+            out.writeInt(position);
+            out.writeInt(target);
+            out.writeByte((moverRemoved ? 1 : 0) | (otherRemoved ? 2 : 0));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    public void vehicleRecycled(Vehicle vehicle, int position, ReusePool pool) {
+        record(RECYCLED, position);
+    }
+
+    public void vehicleReused(Vehicle vehicle, int position, ReusePool pool) {
+        record(REUSED, position);
+    }
+
+    public void poolEmpty() {
+        record(POOL_EMPTY);
+    }
+
+    public void historyEmpty() {
+        record(HISTORY_EMPTY);
+    }
+
+    public void redoEmpty() {
+        record(REDO_EMPTY);
+    }
+
+    /**
+     * Records only positions, so Road need not build vehicle objects for the events.
+     *
+     * @return false
+     */
+    public boolean needsVehicles() {
+        return false;
+    }
+
+    /**
+     * Writes all buffered records to the underlying stream.
+     */
+    public void flush() {
+        try {
+            out.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Flushes and closes the log.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void record(byte code) {
+        try {
+            out.writeByte(code);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void record(byte code, int value) {
+        try {
+            out.writeByte(code);
+            out.writeInt(value);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void record(byte code, int first, int second) {
+        try {
+            out.writeByte(code);
+            out.writeInt(first);
+            out.writeInt(second);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package onelanetraffic;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * Represents a Bus in the traffic simulation.
@@ -17,11 +18,30 @@ public class Bus extends Vehicle {
      * Weight is randomly selected from 15000-40000.
      */
     public Bus() {
-        super(); // Initialize horsepower and position in Vehicle
-        Random rand = new Random();
+        this(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Constructs a new Bus whose weight and horsepower are drawn from the given random source.
+     *
+     * @param rand the random source of the simulation
+     */
+    public Bus(RandomGenerator rand) {
+        super(rand); // Initialize horsepower and position in Vehicle
         this.weight = rand.nextInt(15000, 40001);
     }
 
+    /**
+     * Constructs a new Bus with the given horsepower and weight.
+     *
+     * @param horsePower the horsepower of the bus
+     * @param weight the weight of the bus
+     */
+    public Bus(int horsePower, int weight) {
+        super(horsePower);
+        this.weight = weight;
+    }
+
     /**
      * Gets the weight of this bus.
      * 
@@ -1,6 +1,7 @@
 package onelanetraffic;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 /**
  * Represents a car in the traffic simulation.
  * Car has a color and horsepower.
@@ -9,15 +10,39 @@ import java.util.Random;
  * @author Lehan Zhang
  */
 public class Car extends Vehicle {
+    private static final String[] COLORS = {"red", "blue", "White", "black", "silver"}; // predefined car colors
     private final String color; // color property of cars
+    private final int colorIndex; // index of the color in COLORS
 
     /**
      * Constructs a new Car with random color and horsepower.
      * Color is randomly selected.
      */
     public Car() {
-        super(); //initialize horsepower and position in Vehicle
-        this.color = randomColor() ; // assign a random color
+        this(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Constructs a new Car whose color and horsepower are drawn from the given random source.
+     *
+     * @param rand the random source of the simulation
+     */
+    public Car(RandomGenerator rand) {
+        super(rand); //initialize horsepower and position in Vehicle
+        this.colorIndex = rand.nextInt(COLORS.length); // assign a random color
+        this.color = COLORS[colorIndex];
+    }
+
+    /**
+     * Constructs a new Car with the given horsepower and color.
+     *
+     * @param horsePower the horsepower of the car
+     * @param colorIndex the index of the color in the predefined colors
+     */
+    public Car(int horsePower, int colorIndex) {
+        super(horsePower);
+        this.color = COLORS[colorIndex];
+        this.colorIndex = colorIndex;
     }
 
     /**
@@ -26,9 +51,16 @@ public class Car extends Vehicle {
      * @return a randomly selected color string
      */
     public String randomColor() {
-        String[] colors = {"red", "blue", "White", "black", "silver"};
-        Random rand = new Random();
-        return colors[rand.nextInt(colors.length)];
+        return COLORS[ThreadLocalRandom.current().nextInt(COLORS.length)];
+    }
+
+    /**
+     * Gets the index of this car's color in the predefined colors.
+     *
+     * @return the color index
+     */
+    public int getColorIndex() {
+        return colorIndex;
     }
 
     /**
@@ -0,0 +1,185 @@
+package onelanetraffic;
+
+import java.util.Arrays;
+import stacks.ArrayStack;
+
+/**
+ * A history store that keeps a full copy of the road only every K move commands,
+ * plus a compact log of the commands in between: which vehicle moved, in which
+ * direction, and where a repaired vehicle was randomly placed (if one was).
+ * Restoring a state copies the nearest earlier checkpoint and replays the logged
+ * commands up to that state.
+ *
+ * Memory drops by about a factor of K compared to SnapshotHistory, at the cost
+ * of replaying at most K - 1 commands per undo. With a SegmentedReplay the
+ * commands are replayed on all cores, which pays off for long roads and large K.
+ *
+ * @author Lehan Zhang
+ */
+public class CheckpointHistory implements HistoryStore, RoadRecorder {
+    private static final int STEP_BYTES = 12; // three ints logged per command
+
+    private final int interval; // K, the number of commands between two checkpoints
+    private ArrayStack<Road> checkpoints; // checkpoint i is the road before command i * K
+    private Road road; // the live road the log is being recorded from
+    private final SegmentedReplay replayer; // replays the log in parallel segments, null to replay in order
+    private long checkpointBytes; // estimated size of one checkpoint; every road of the history has the same size
+
+    // one entry per command, oldest first
+    private int[] moveIndex;
+    private int[] moveDirection;
+    private int[] movePlacement;
+    private int steps;
+
+    /**
+     * Creates an empty history that takes a checkpoint every interval commands.
+     *
+     * @param interval the number of commands between checkpoints, at least 1
+     */
+    public CheckpointHistory(int interval) {
+        this(interval, null);
+    }
+
+    /**
+     * Creates an empty history that takes a checkpoint every interval commands
+     * and replays logged commands with the given replayer.
+     *
+     * @param interval the number of commands between checkpoints, at least 1
+     * @param replayer replays the logged commands in parallel segments, or null to replay them in order
+     */
+    public CheckpointHistory(int interval, SegmentedReplay replayer) {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval must be at least 1: " + interval);
+        }
+        this.interval = interval;
+        this.replayer = replayer;
+        checkpoints = new ArrayStack<>();
+        moveIndex = new int[16];
+        moveDirection = new int[16];
+        movePlacement = new int[16];
+    }
+
+    /**
+     * Opens a log entry for the next command, taking a checkpoint first if one is due.
+     *
+     * @param currentRoad the live road about to be changed
+     */
+    public void save(Road currentRoad) {
+        if (road != currentRoad) {
+            if (road != null) {
+                road.setRecorder(null);
+            }
+            road = currentRoad;
+            road.setRecorder(this);
+        }
+        if (steps % interval == 0) {
+            Road checkpoint = currentRoad.copy();
+            checkpointBytes = checkpoint.estimatedCopyBytes();
+            checkpoints.push(checkpoint);
+        }
+        if (steps == moveIndex.length) {
+            int newCapacity = steps * 2;
+            moveIndex = Arrays.copyOf(moveIndex, newCapacity);
+            moveDirection = Arrays.copyOf(moveDirection, newCapacity);
+            movePlacement = Arrays.copyOf(movePlacement, newCapacity);
+        }
+        moveIndex[steps] = currentRoad.getPosition() - 1;
+        moveDirection[steps] = 0;
+        movePlacement[steps] = -1;
+        steps++;
+    }
+
+    /**
+     * Rebuilds the road as it was before the most recent command.
+     *
+     * @return the previous state of the road, or null if there is none
+     */
+    public Road restore() {
+        if (steps == 0) {
+            return null;
+        }
+        steps--;
+
+        Road previous;
+        int first = steps - steps % interval; // the command the nearest checkpoint was taken before
+        if (first == steps) {
+            // the checkpoint is exactly the state we want and is no longer needed
+            previous = checkpoints.pop();
+        } else {
+            previous = checkpoints.peek().copy();
+            if (replayer != null) {
+                replayer.replay(previous, moveIndex, moveDirection, movePlacement, first, steps);
+            } else {
+                for (int i = first; i < steps; i++) {
+                    previous.replayMove(moveIndex[i], moveDirection[i], movePlacement[i]);
+                }
+            }
+        }
+
+        if (road != null) {
+            road.setRecorder(null);
+            road = null;
+        }
+        return previous;
+    }
+
+    /**
+     * Checks whether there is a command left to undo.
+     *
+     * @return true if no command is logged; false otherwise
+     */
+    public boolean isEmpty() {
+        return steps == 0;
+    }
+
+    /**
+     * Returns the number of logged commands.
+     *
+     * @return the number of commands that can be undone
+     */
+    public int size() {
+        return steps;
+    }
+
+    /**
+     * Returns the estimated size of the checkpoints plus the three ints logged per command.
+     *
+     * @return the estimated bytes of the checkpoints and the log
+     */
+    public long retainedBytes() {
+        return checkpointBytes * checkpoints.size() + (long) STEP_BYTES * steps;
+    }
+
+    /**
+     * Returns the number of commands between two checkpoints.
+     *
+     * @return the checkpoint interval K
+     */
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Logs the vehicle and direction of the command being executed.
+     *
+     * @param index the array index of the moving vehicle
+     * @param direction the direction of the move
+     */
+    public void recordMove(int index, int direction) {
+        if (steps > 0) {
+            moveIndex[steps - 1] = index;
+            moveDirection[steps - 1] = direction;
+        }
+    }
+
+    /**
+     * Logs where a repaired vehicle was randomly placed during the command.
+     *
+     * @param index the array index the vehicle was placed at
+     */
+    public void recordPlacement(int index) {
+        if (steps > 0) {
+            movePlacement[steps - 1] = index;
+        }
+    }
+}
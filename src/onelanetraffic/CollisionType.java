@@ -0,0 +1,19 @@
+package onelanetraffic;
+
+/**
+ * The kinds of collisions that can happen when a vehicle moves into an occupied position.
+ *
+ * @author Lehan Zhang
+ */
+public enum CollisionType {
+    /**  Two cars of the same color; the one with less horsepower is removed. */
+    CARS_SAME_COLOR,
+    /**  Two cars of different colors; both are removed and a repaired vehicle is added. */
+    CARS_DIFFERENT_COLOR,
+    /**  Two buses; the lighter one is removed, or both stay if they weigh the same. */
+    BUS_VS_BUS,
+    /**  A car moving into a bus; the car stops. */
+    CAR_INTO_BUS,
+    /**  A bus moving into a car; the car is pushed out and removed. */
+    BUS_INTO_CAR
+}
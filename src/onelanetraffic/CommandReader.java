@@ -0,0 +1,325 @@
+package onelanetraffic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads simulation commands from a memory-mapped file without creating any
+ * objects per command. Each call to next() decodes one action and its integer
+ * step directly from the mapped bytes.
+ *
+ * Two formats are understood:
+ * <ul>
+ * <li>Text, as in input.txt: an action token ("m", "u" or "r") followed by a signed
+ * integer, separated by whitespace. Any other action token is reported as
+ * INVALID; skipLine() then skips the rest of its line like Scanner.nextLine().</li>
+ * <li>Binary, written by CommandWriter: the four bytes "OLTB" followed by one
+ * 5-byte record per command, the action as one ASCII byte and the step as a
+ * big-endian int.</li>
+ * </ul>
+ * Files of any length are read through a sliding window of mappings, since a
+ * single mapping is limited to 2 GiB.
+ *
+ * @author Lehan Zhang
+ */
+public class CommandReader implements Closeable {
+    /**  Action code for a move command. */
+    public static final char MOVE = 'm';
+    /**  Action code for an undo command. */
+    public static final char UNDO = 'u';
+    /**  Action code for a redo command. */
+    public static final char REDO = 'r';
+    /**  Action code for any unknown action token. */
+    public static final char INVALID = '?';
+
+    /**  The first bytes of a binary command file. */
+    static final byte[] BINARY_MAGIC = {'O', 'L', 'T', 'B'};
+
+    private static final long WINDOW_SIZE = 1L << 30; // bytes mapped at a time
+
+    private final FileChannel channel;
+    private final long length; // length of the file in bytes
+    private final boolean binary; // true for the binary format
+    private MappedByteBuffer window; // the currently mapped part of the file
+    private long windowStart; // file offset of the first byte of window
+    private long position; // file offset of the next byte to read
+
+    private char action; // action of the current command
+    private int step; // step of the current command
+
+    /**
+     * Opens and maps a command file. The format is detected from its first bytes.
+     *
+     * @param path the command file
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public CommandReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        length = channel.size();
+        position = 0;
+        map(0);
+        binary = hasMagic();
+        if (binary) {
+            position = BINARY_MAGIC.length;
+        }
+    }
+
+    /**
+     * Decodes the next command.
+     *
+     * @return true if a command was read; false at the end of the file
+     * @throws InputMismatchException if a text step is not an integer
+     * @throws NoSuchElementException if the file ends between an action and its step
+     */
+    public boolean next() {
+        if (binary) {
+            return nextBinary();
+        }
+        return nextText();
+    }
+
+    /**
+     * Returns the action of the current command.
+     *
+     * @return MOVE, UNDO, REDO or INVALID
+     */
+    public char action() {
+        return action;
+    }
+
+    /**
+     * Returns the step of the current command.
+     *
+     * @return the direction of a move or the number of moves to undo or redo
+     */
+    public int step() {
+        return step;
+    }
+
+    /**
+     * Skips the rest of the current line of a text file. Does nothing for a binary file.
+     */
+    public void skipLine() {
+        if (binary) {
+            return;
+        }
+        int b = read();
+        while (b != -1 && b != '\n') {
+            b = read();
+        }
+    }
+
+    /**
+     * Returns the file offset of the next byte to read, e.g. to resume reading
+     * after the current command later with seek.
+     *
+     * @return the offset in bytes from the start of the file
+     */
+    public long getOffset() {
+        return Math.min(position, length);
+    }
+
+    /**
+     * Continues reading at the given file offset, which must be the start of a
+     * command or of the whitespace before one, e.g. a value of getOffset().
+     *
+     * @param offset the offset in bytes from the start of the file
+     * @throws IllegalArgumentException if the offset is outside the file or inside the binary header
+     */
+    public void seek(long offset) {
+        long first = binary ? BINARY_MAGIC.length : 0;
+        if (offset < first || offset > length) {
+            throw new IllegalArgumentException("Offset outside the commands of the file: " + offset);
+        }
+        position = offset;
+        map(offset);
+    }
+
+    /**
+     * Checks whether the file uses the binary format.
+     *
+     * @return true for a binary command file; false for a text one
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Closes the file. The mapping itself is released by the garbage collector.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Decodes a text command: an action token followed by an integer token.
+     */
+    private boolean nextText() {
+        int b = skipWhitespace();
+        if (b == -1) {
+            return false;
+        }
+        // the action token; only a single "m", "u" or "r" is a valid action
+        char first = (char) b;
+        int tokenLength = 0;
+        while (b != -1 && !isWhitespace(b)) {
+            tokenLength++;
+            b = read();
+        }
+        if (tokenLength == 1 && isAction(first)) {
+            action = first;
+        } else {
+            action = INVALID;
+        }
+
+        b = skipWhitespace();
+        if (b == -1) {
+            throw new NoSuchElementException("Missing step after action at byte " + position);
+        }
+        step = parseInt(b);
+        return true;
+    }
+
+    /**
+     * Checks whether a character is the code of a valid action.
+     */
+    private static boolean isAction(int code) {
+        return code == MOVE || code == UNDO || code == REDO;
+    }
+
+    /**
+     * Decodes a binary command: one action byte and a big-endian int.
+     */
+    private boolean nextBinary() {
+        if (position >= length) {
+            return false;
+        }
+        if (length - position < 5) {
+            throw new NoSuchElementException("Truncated command at byte " + position);
+        }
+        int code = read();
+        action = isAction(code) ? (char) code : INVALID;
+        step = (read() << 24) | (read() << 16) | (read() << 8) | read();
+        return true;
+    }
+
+    /**
+     * Parses a signed decimal integer whose first byte has already been read,
+     * stopping before the next whitespace or at the end of the file. Like
+     * Scanner.nextInt, the whitespace is left unread, so skipLine after an
+     * invalid command skips the rest of its own line and not the next one.
+     */
+    private int parseInt(int b) {
+        long start = position - 1;
+        boolean negative = false;
+        if (b == '-' || b == '+') {
+            negative = b == '-';
+            b = read();
+        }
+        if (b == -1 || isWhitespace(b)) {
+            throw new InputMismatchException("Invalid step at byte " + start);
+        }
+        long value = 0;
+        while (true) {
+            if (b < '0' || b > '9') {
+                throw new InputMismatchException("Invalid step at byte " + start);
+            }
+            value = value * 10 + (b - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) {
+                throw new InputMismatchException("Step out of range at byte " + start);
+            }
+            int next = peek();
+            if (next == -1 || isWhitespace(next)) {
+                break; // the number ends here; its whitespace stays unread
+            }
+            b = read();
+        }
+        value = negative ? -value : value;
+        if (value > Integer.MAX_VALUE) {
+            throw new InputMismatchException("Step out of range at byte " + start);
+        }
+        return (int) value;
+    }
+
+    /**
+     * Reads bytes until one that is not whitespace.
+     *
+     * @return that byte, or -1 at the end of the file
+     */
+    private int skipWhitespace() {
+        int b = read();
+        while (b != -1 && isWhitespace(b)) {
+            b = read();
+        }
+        return b;
+    }
+
+    private static boolean isWhitespace(int b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+    }
+
+    /**
+     * Reads the next byte of the file, moving the mapped window when needed.
+     *
+     * @return the byte as 0-255, or -1 at the end of the file
+     */
+    private int read() {
+        int b = peek();
+        position++; // also at the end, to keep positions consistent with the bytes consumed
+        return b;
+    }
+
+    /**
+     * Returns the next byte of the file without consuming it, moving the
+     * mapped window when needed.
+     *
+     * @return the byte as 0-255, or -1 at the end of the file
+     */
+    private int peek() {
+        if (position >= length) {
+            return -1;
+        }
+        long offset = position - windowStart;
+        if (offset < 0 || offset >= window.capacity()) {
+            map(position);
+            offset = 0;
+        }
+        return window.get((int) offset) & 0xFF;
+    }
+
+    /**
+     * Maps the window of the file that starts at the given offset.
+     */
+    private void map(long start) {
+        try {
+            long size = Math.min(WINDOW_SIZE, length - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.max(size, 0));
+            windowStart = start;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot map command file at byte " + start, ex);
+        }
+    }
+
+    /**
+     * Checks whether the file starts with the binary magic bytes.
+     */
+    private boolean hasMagic() {
+        if (length < BINARY_MAGIC.length) {
+            return false;
+        }
+        for (int i = 0; i < BINARY_MAGIC.length; i++) {
+            if (window.get(i) != BINARY_MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,91 @@
+package onelanetraffic;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes simulation commands to a file in the text format of input.txt or in
+ * the compact binary format understood by CommandReader.
+ *
+ * A text script can be converted with
+ * <pre>
+ * java onelanetraffic.CommandWriter input.txt input.bin
+ * </pre>
+ *
+ * @author Lehan Zhang
+ */
+public class CommandWriter implements Closeable {
+    private final DataOutputStream out;
+    private final boolean binary; // true for the binary format
+
+    /**
+     * Creates a command file, replacing any existing file.
+     *
+     * @param path the file to write
+     * @param binary true for the binary format; false for text
+     * @throws IOException if the file cannot be created
+     */
+    public CommandWriter(Path path, boolean binary) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        this.binary = binary;
+        if (binary) {
+            out.write(CommandReader.BINARY_MAGIC);
+        }
+    }
+
+    /**
+     * Writes one command.
+     *
+     * @param action the action code, e.g. CommandReader.MOVE or CommandReader.UNDO
+     * @param step the direction of a move or the number of moves to undo or redo
+     * @throws IOException if the file cannot be written
+     */
+    public void write(char action, int step) throws IOException {
+        if (binary) {
+            out.writeByte(action);
+            out.writeInt(step);
+        } else {
+            out.writeByte(action);
+            out.writeByte(' ');
+            out.writeBytes(Integer.toString(step));
+            out.writeByte('\n');
+        }
+    }
+
+    /**
+     * Flushes and closes the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Converts a command file to the binary format.
+     *
+     * @param args the input file and the binary file to create
+     */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.err.println("Usage: java onelanetraffic.CommandWriter INPUT BINARY_OUTPUT");
+            System.exit(2);
+        }
+        try (CommandReader reader = new CommandReader(Path.of(args[0]));
+             CommandWriter writer = new CommandWriter(Path.of(args[1]), true)) {
+            while (reader.next()) {
+                writer.write(reader.action(), reader.step());
+                if (reader.action() == CommandReader.INVALID) {
+                    reader.skipLine(); // drop the rest of an invalid line like the simulation does
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            System.exit(1);
+        }
+    }
+}
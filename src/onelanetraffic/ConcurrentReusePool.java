@@ -0,0 +1,339 @@
+package onelanetraffic;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import exceptionclasses.EmptyQueueException;
+
+/**
+ * A reuse pool that several threads can recycle vehicles into and reuse them
+ * from at the same time, without locks.
+ *
+ * The vehicles are kept in a fixed ring of slots (a bounded multi-producer
+ * multi-consumer queue after Dmitry Vyukov). Every slot has a sequence number
+ * that tells whether it is ready to be written or read for a given lap around
+ * the ring; a thread claims a slot by moving the head or tail counter with one
+ * compare-and-set, then writes or reads it and advances its sequence number.
+ * Nothing is allocated after construction.
+ *
+ * drainTo and fillFrom move a whole batch of vehicles with a single
+ * compare-and-set, so threads that recycle or reuse many vehicles at a time
+ * contend much less.
+ *
+ * The pool is bounded: recycleVehicle throws IllegalStateException when it is
+ * full. A capacity of at least the number of vehicles in the simulation never
+ * fills up. undoRecycle, undoReuse, copy and toString must not run while other
+ * threads use the pool; they are meant for a history undoing moves of a single
+ * simulation thread.
+ *
+ * A history copies the pool of every road state it saves, and most of those
+ * copies are never used again. So a copy only keeps the vehicles in the pool,
+ * which takes time and memory proportional to their number; the ring of a copy
+ * is built the first time it is used, by whichever thread gets there first.
+ *
+ * @author Lehan Zhang
+ */
+public class ConcurrentReusePool implements ReusePool {
+    private final int capacity; // slots of the ring, a power of two
+    private final Vehicle[] saved; // the vehicles of a copy, front first, until its ring is built; null if none
+    private final AtomicReference<Ring> ring; // the ring, null until a copy is first used
+
+    /**
+     * The fixed ring of slots and the counters at its two ends.
+     */
+    private static class Ring {
+        private final int mask; // capacity - 1, to turn a position into a slot index
+        private final AtomicReferenceArray<Vehicle> slots; // the vehicles, by position & mask
+        private final AtomicLongArray sequence; // per slot: position it can be written at, or position + 1 to be read
+        private final AtomicLong head = new AtomicLong(); // position of the next vehicle to reuse
+        private final AtomicLong tail = new AtomicLong(); // position the next recycled vehicle goes to
+
+        private Ring(int slotCount) {
+            mask = slotCount - 1;
+            slots = new AtomicReferenceArray<>(slotCount);
+            sequence = new AtomicLongArray(slotCount);
+            for (int i = 0; i < slotCount; i++) {
+                sequence.set(i, i);
+            }
+        }
+    }
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param capacity the most vehicles the pool can hold; rounded up to a power of two
+     */
+    public ConcurrentReusePool(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        int slotCount = Integer.highestOneBit(capacity);
+        if (slotCount < capacity) {
+            slotCount <<= 1;
+        }
+        this.capacity = slotCount;
+        this.saved = null;
+        this.ring = new AtomicReference<>(new Ring(slotCount));
+    }
+
+    /**
+     * Creates a copy that holds the given vehicles and builds its ring when first used.
+     */
+    private ConcurrentReusePool(int capacity, Vehicle[] saved) {
+        this.capacity = capacity;
+        this.saved = saved;
+        this.ring = new AtomicReference<>();
+    }
+
+    /**
+     * Adds a crashed vehicle to the rear of the pool.
+     *
+     * @param crashedVehicle the vehicle that has been crashed and is to be recycled
+     * @throws IllegalStateException if the pool is full
+     */
+    public void recycleVehicle(Vehicle crashedVehicle) {
+        if (fill(ring(), crashedVehicle, null, 0, 1) == 0) {
+            throw new IllegalStateException("The pool is full, cannot recycle " + crashedVehicle);
+        }
+    }
+
+    /**
+     * Takes the vehicle at the front of the pool.
+     *
+     * @return the vehicle that was recycled first among those in the pool
+     * @throws EmptyQueueException if the pool is empty
+     */
+    public Vehicle reuseVehicle() throws EmptyQueueException {
+        Ring r = ring();
+        while (true) {
+            long position = r.head.get();
+            int index = (int) position & r.mask;
+            long ready = r.sequence.get(index) - (position + 1);
+            if (ready < 0) {
+                throw new EmptyQueueException("The pool is empty, there is no vehicle to reuse.");
+            }
+            if (ready == 0 && r.head.compareAndSet(position, position + 1)) {
+                return take(r, index, position);
+            }
+            // another thread took this position first; try the next one
+        }
+    }
+
+    /**
+     * Adds vehicles to the rear of the pool, as many as fit, keeping their order.
+     * The vehicles that fit are claimed with a single compare-and-set.
+     *
+     * @param vehicles the vehicles to recycle
+     * @param offset index of the first vehicle in the array
+     * @param count number of vehicles to recycle
+     * @return the number of vehicles added; fewer than count if the pool filled up
+     */
+    public int fillFrom(Vehicle[] vehicles, int offset, int count) {
+        Ring r = ring();
+        int added = 0;
+        while (added < count) {
+            int batch = fill(r, null, vehicles, offset + added, count - added);
+            if (batch == 0) {
+                break;
+            }
+            added += batch;
+        }
+        return added;
+    }
+
+    /**
+     * Takes up to max vehicles from the front of the pool, in order. The
+     * vehicles are claimed with a single compare-and-set.
+     *
+     * @param out array to store the vehicles in
+     * @param offset index in out of the first vehicle
+     * @param max the most vehicles to take
+     * @return the number of vehicles taken; 0 if the pool is empty
+     */
+    public int drainTo(Vehicle[] out, int offset, int max) {
+        Ring r = ring();
+        while (max > 0) {
+            long position = r.head.get();
+            int ready = 0; // vehicles at the front that are ready to be read
+            while (ready < max && ready <= r.mask
+                    && r.sequence.get((int) (position + ready) & r.mask) == position + ready + 1) {
+                ready++;
+            }
+            if (ready == 0) {
+                if (r.sequence.get((int) position & r.mask) < position + 1) {
+                    return 0; // empty
+                }
+                continue; // another thread took the front first
+            }
+            if (r.head.compareAndSet(position, position + ready)) {
+                for (int i = 0; i < ready; i++) {
+                    out[offset + i] = take(r, (int) (position + i) & r.mask, position + i);
+                }
+                return ready;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of vehicles in the pool. Only a hint while other threads use the pool.
+     *
+     * @return the number of vehicles between the front and the rear of the pool
+     */
+    public int size() {
+        Ring r = ring.get();
+        if (r == null) {
+            return saved.length;
+        }
+        long count = r.tail.get() - r.head.get();
+        return (int) Math.max(0, Math.min(count, capacity));
+    }
+
+    /**
+     * Returns the most vehicles the pool can hold.
+     *
+     * @return the capacity of the pool
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Takes back the vehicle most recently added to the rear of the pool.
+     * Must not run while other threads use the pool.
+     *
+     * @throws EmptyQueueException if the reuse pool is empty
+     */
+    public void undoRecycle() throws EmptyQueueException {
+        Ring r = ring();
+        long position = r.tail.get() - 1;
+        if (position < r.head.get()) {
+            throw new EmptyQueueException("The queue is empty.");
+        }
+        int index = (int) position & r.mask;
+        r.slots.set(index, null);
+        r.sequence.set(index, position); // writable again at the same position
+        r.tail.set(position);
+    }
+
+    /**
+     * Puts a reused vehicle back at the front of the pool.
+     * Must not run while other threads use the pool.
+     *
+     * @param reusedVehicle the vehicle that was taken from the front of the pool
+     * @throws IllegalStateException if the pool is full
+     */
+    public void undoReuse(Vehicle reusedVehicle) {
+        Ring r = ring();
+        long position = r.head.get() - 1;
+        if (r.tail.get() - position > capacity) {
+            throw new IllegalStateException("The pool is full, cannot put back " + reusedVehicle);
+        }
+        int index = (int) position & r.mask;
+        r.slots.set(index, reusedVehicle);
+        r.sequence.set(index, position + 1); // readable at that position
+        r.head.set(position);
+    }
+
+    /**
+     * Creates a copy of the pool with the same capacity and vehicles, in time
+     * and memory proportional to the vehicles in the pool. A copy that was
+     * never used shares them with this pool.
+     * Must not run while other threads use the pool.
+     *
+     * @return a new ConcurrentReusePool holding the same vehicles in the same order
+     */
+    public ReusePool copy() {
+        Ring r = ring.get();
+        if (r == null) {
+            return new ConcurrentReusePool(capacity, saved); // neither pool ever writes saved
+        }
+        return new ConcurrentReusePool(capacity, toArray(r));
+    }
+
+    /**
+     * Returns a string representation of the pool, in the same format as PersistentReusePool.
+     * Must not run while other threads use the pool.
+     *
+     * @return a string describing the vehicles in the pool
+     */
+    @Override
+    public String toString() {
+        Ring r = ring.get();
+        StringBuilder str = new StringBuilder("\nVehicles in the repair shop:\n");
+        for (Vehicle vehicle : r == null ? saved : toArray(r)) {
+            str.append(vehicle).append("\n");
+        }
+        return str.toString();
+    }
+
+    /**
+     * Returns the ring, building it from the saved vehicles the first time a copy is used.
+     * If threads race to build it, one ring wins and the others are dropped.
+     */
+    private Ring ring() {
+        Ring r = ring.get();
+        if (r != null) {
+            return r;
+        }
+        Ring built = new Ring(capacity);
+        if (saved.length > 0) {
+            fill(built, null, saved, 0, saved.length);
+        }
+        return ring.compareAndSet(null, built) ? built : ring.get();
+    }
+
+    /**
+     * Returns the vehicles in a ring, front first.
+     */
+    private static Vehicle[] toArray(Ring r) {
+        long head = r.head.get();
+        Vehicle[] vehicles = new Vehicle[(int) (r.tail.get() - head)];
+        for (int i = 0; i < vehicles.length; i++) {
+            vehicles[i] = r.slots.get((int) (head + i) & r.mask);
+        }
+        return vehicles;
+    }
+
+    /**
+     * Claims as many free positions at the rear as are ready, up to count, with one
+     * compare-and-set, and stores single (if vehicles is null) or the vehicles there.
+     *
+     * @return the number of vehicles stored; 0 if the pool is full
+     */
+    private static int fill(Ring r, Vehicle single, Vehicle[] vehicles, int offset, int count) {
+        while (true) {
+            long position = r.tail.get();
+            int ready = 0; // positions at the rear that are free to be written
+            while (ready < count && ready <= r.mask
+                    && r.sequence.get((int) (position + ready) & r.mask) == position + ready) {
+                ready++;
+            }
+            if (ready == 0) {
+                if (r.sequence.get((int) position & r.mask) < position) {
+                    return 0; // full: the slot still holds a vehicle from the previous lap
+                }
+                continue; // another thread wrote this position first
+            }
+            if (r.tail.compareAndSet(position, position + ready)) {
+                for (int i = 0; i < ready; i++) {
+                    int index = (int) (position + i) & r.mask;
+                    r.slots.set(index, vehicles == null ? single : vehicles[offset + i]);
+                    r.sequence.set(index, position + i + 1); // readable now
+                }
+                return ready;
+            }
+        }
+    }
+
+    /**
+     * Reads and clears a claimed slot and frees it for the next lap.
+     */
+    private static Vehicle take(Ring r, int index, long position) {
+        Vehicle vehicle = r.slots.get(index);
+        r.slots.set(index, null);
+        r.sequence.set(index, position + r.mask + 1); // writable at the same slot one lap later
+        return vehicle;
+    }
+}
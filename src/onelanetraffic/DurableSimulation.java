@@ -0,0 +1,307 @@
+package onelanetraffic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.IntFunction;
+
+/**
+ * Runs a simulation so that it can be resumed after the process is killed.
+ * The road and its reuse pool are written to a SnapshotFile every so many
+ * commands, and every command executed in between is appended to a
+ * WriteAheadLog together with its random outcomes. Recovery maps the latest
+ * snapshot and repeats only the logged commands after it, so it takes time
+ * proportional to the snapshot interval rather than to the length of the run.
+ *
+ * The road draws from a ReseedableRandom. Each snapshot reseeds it with a seed
+ * drawn from it and records that seed, so the recovered road starts from the
+ * same generator state the killed run had at the snapshot. The logged commands
+ * are then executed again through a new history of the same kind, drawing the
+ * same numbers, and the vehicle and placement of each move are checked against
+ * the log. The history is not part of a snapshot, so an undo that reaches back
+ * before the latest snapshot, or a redo of a move undone before it, is followed
+ * by a new snapshot right away; every undo and redo in the log therefore only
+ * concerns moves that are in the log too. After recovery, undo reaches back to
+ * the latest snapshot at most, and until such an undo a seeded run goes on
+ * exactly as it would have without the crash.
+ *
+ * A recovered run continues reading the command file where the log ends.
+ *
+ * @author Lehan Zhang
+ */
+public class DurableSimulation implements Closeable {
+    /**  Name of the snapshot file in the directory of a durable simulation. */
+    public static final String SNAPSHOT_FILE = "snapshot.bin";
+    /**  Name of the command log in the directory of a durable simulation. */
+    public static final String LOG_FILE = "commands.wal";
+
+    private final Simulation simulation; // the simulation being run
+    private final Path directory; // holds the snapshot and the log
+    private final int snapshotInterval; // commands between snapshots
+    private final WriteAheadLog log; // commands executed since the latest snapshot
+    private final ReseedableRandom random; // shared by every state of the road, reseeded at each snapshot
+    private long commandNumber; // commands executed so far, including the ones before a recovery
+    private int sinceSnapshot; // commands logged since the latest snapshot
+    private int depth; // moves since the latest snapshot that the history can still undo
+    private int redoable; // moves undone since the latest snapshot that the history can still redo
+
+    private DurableSimulation(Simulation simulation, Path directory, int snapshotInterval, WriteAheadLog log) {
+        this.simulation = simulation;
+        this.directory = directory;
+        this.snapshotInterval = snapshotInterval;
+        this.log = log;
+        this.random = (ReseedableRandom) simulation.getRoad().getRandom();
+    }
+
+    /**
+     * Checks whether a directory holds a snapshot to recover from.
+     *
+     * @param directory the directory of a durable simulation
+     * @return true if recover can be called for the directory
+     */
+    public static boolean hasSnapshot(Path directory) {
+        return Files.isRegularFile(directory.resolve(SNAPSHOT_FILE));
+    }
+
+    /**
+     * Starts a new durable simulation, replacing any snapshot and log in the directory.
+     *
+     * @param directory the directory for the snapshot and the log; created if needed
+     * @param snapshotInterval the number of commands between snapshots, at least 1
+     * @param simulation the simulation to run, not yet started, whose road draws from a ReseedableRandom
+     * @param commands the command file it will read, positioned at its first command
+     * @return the durable simulation
+     * @throws IOException if the directory, the first snapshot or the log cannot be written
+     */
+    public static DurableSimulation start(Path directory, int snapshotInterval, Simulation simulation,
+                                          CommandReader commands) throws IOException {
+        checkInterval(snapshotInterval);
+        if (!(simulation.getRoad().getRandom() instanceof ReseedableRandom)) {
+            throw new IllegalArgumentException("The road of a durable simulation must draw from a ReseedableRandom");
+        }
+        Files.createDirectories(directory);
+        WriteAheadLog log = new WriteAheadLog(directory.resolve(LOG_FILE), 4096);
+        DurableSimulation durable = new DurableSimulation(simulation, directory, snapshotInterval, log);
+        durable.takeSnapshot(commands);
+        return durable;
+    }
+
+    /**
+     * Rebuilds a simulation from the snapshot and the log in the directory and
+     * moves the command file to the first command that was not logged.
+     *
+     * @param directory the directory of a durable simulation, see hasSnapshot
+     * @param snapshotInterval the number of commands between snapshots from now on, at least 1
+     * @param storageFactory creates an empty storage of the given size for the road
+     * @param pool an empty reuse pool for the road
+     * @param history an empty history of the kind the crashed run used
+     * @param events the listener of the resumed simulation; the repeated commands are not reported
+     * @param commands the command file the crashed run read
+     * @return the durable simulation, ready to run the rest of the command file
+     * @throws IOException if the snapshot or the log cannot be read or written
+     * @throws IllegalStateException if the log does not match the command file or the repeated commands
+     */
+    public static DurableSimulation recover(Path directory, int snapshotInterval,
+                                            IntFunction<RoadStorage> storageFactory, ReusePool pool,
+                                            HistoryTracking history, SimulationEventListener events,
+                                            CommandReader commands) throws IOException {
+        checkInterval(snapshotInterval);
+        SnapshotFile snapshot = SnapshotFile.read(directory.resolve(SNAPSHOT_FILE), storageFactory, pool);
+        commands.seek(snapshot.getInputOffset());
+        Simulation replay = new Simulation(snapshot.getRoad(), history); // reports nothing
+
+        WriteAheadLog log = new WriteAheadLog(directory.resolve(LOG_FILE), 4096);
+        long commandNumber = snapshot.getCommandNumber();
+        // records up to the snapshot are left over from a crash between writing it and emptying the log
+        int first = (int) Math.min(log.getRecordCount(), Math.max(0, commandNumber - log.getBaseCommand()));
+        if (log.getBaseCommand() > commandNumber) {
+            first = log.getRecordCount(); // the log belongs to a newer snapshot that was lost
+        }
+        int count = log.getRecordCount() - first;
+        char[] actions = new char[count];
+        int[] steps = new int[count];
+        int[] indexes = new int[count];
+        int[] placements = new int[count];
+        boolean[] moved = new boolean[count];
+        int[] undone = new int[count];
+        for (int i = 0; i < count; i++) {
+            int record = first + i;
+            actions[i] = log.action(record);
+            steps[i] = log.step(record);
+            indexes[i] = log.index(record);
+            placements[i] = log.placement(record);
+            if (!commands.next() || commands.action() != actions[i] || commands.step() != steps[i]) {
+                log.close();
+                throw new IllegalStateException("The command log does not match the command file at command "
+                        + (commandNumber + i + 1));
+            }
+            int historySize = history.size();
+            if (!replay.execute(actions[i], steps[i])) {
+                commands.skipLine();
+            }
+            if (actions[i] == CommandReader.MOVE && steps[i] >= -1 && steps[i] <= 1) {
+                Road road = replay.getRoad();
+                if (road.getPosition() - 1 != indexes[i] || road.getLastPlacement() != placements[i]) {
+                    log.close();
+                    throw new IllegalStateException("The repeated move does not match the command log at command "
+                            + (commandNumber + i + 1));
+                }
+                moved[i] = true;
+            } else if (actions[i] == CommandReader.UNDO || actions[i] == CommandReader.REDO) {
+                undone[i] = historySize - history.size();
+            }
+        }
+
+        DurableSimulation durable = new DurableSimulation(new Simulation(replay.getRoad(), history, events),
+                directory, snapshotInterval, log);
+        // a new snapshot would reseed the random source where the killed run did not, so the
+        // snapshot is kept and the log is written again without what is left of a partly written record
+        log.reset(commandNumber);
+        boolean snapshotDue = false;
+        for (int i = 0; i < count; i++) {
+            log.append(actions[i], steps[i], indexes[i], placements[i]);
+            snapshotDue |= durable.count(moved[i], undone[i]);
+        }
+        durable.commandNumber = commandNumber + count;
+        if (snapshotDue) {
+            durable.takeSnapshot(commands); // the killed run was about to take it
+        } else {
+            log.flush();
+        }
+        return durable;
+    }
+
+    /**
+     * Executes every remaining command of the reader like Simulation.run,
+     * logging each one and taking a snapshot every snapshotInterval commands.
+     *
+     * @param commands the command file, positioned by start or recover
+     * @return the number of commands read by this call
+     * @throws IOException if the log or a snapshot cannot be written
+     */
+    public long run(CommandReader commands) throws IOException {
+        SimulationEventListener events = simulation.getRoad().getEventListener();
+        HistoryTracking history = simulation.getHistory();
+        events.simulationStarted(simulation.getRoad());
+
+        long count = 0;
+        while (commands.next()) {
+            count++;
+            char action = commands.action();
+            int step = commands.step();
+            int historySize = history.size();
+            if (!simulation.execute(action, step)) {
+                commands.skipLine();
+            }
+
+            int index = -1;
+            int placement = -1;
+            boolean moved = action == CommandReader.MOVE && step >= -1 && step <= 1;
+            int undone = 0; // negative for moves redone
+            if (moved) {
+                Road road = simulation.getRoad();
+                index = road.getPosition() - 1;
+                placement = road.getLastPlacement();
+            } else if (action == CommandReader.UNDO || action == CommandReader.REDO) {
+                undone = historySize - history.size();
+            }
+            log.append(action, step, index, placement);
+            commandNumber++;
+            if (count(moved, undone)) {
+                takeSnapshot(commands);
+            }
+        }
+
+        events.simulationFinished(simulation.getRoad());
+        return count;
+    }
+
+    /**
+     * Retrieves the simulation being run.
+     *
+     * @return the simulation
+     */
+    public Simulation getSimulation() {
+        return simulation;
+    }
+
+    /**
+     * Returns the number of commands executed, including those before a recovery.
+     *
+     * @return the command number of the simulation
+     */
+    public long getCommandNumber() {
+        return commandNumber;
+    }
+
+    /**
+     * Writes the buffered log records to disk and closes the log. The snapshot
+     * and the log stay in the directory, so the run can be recovered.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    public void close() throws IOException {
+        try {
+            log.force();
+        } finally {
+            log.close();
+        }
+    }
+
+    /**
+     * Closes the log and deletes the snapshot and the log, e.g. after the run
+     * finished, so that the next run of the directory starts from scratch.
+     *
+     * @throws IOException if the files cannot be deleted
+     */
+    public void delete() throws IOException {
+        log.close();
+        Files.deleteIfExists(directory.resolve(LOG_FILE));
+        Files.deleteIfExists(directory.resolve(SNAPSHOT_FILE));
+    }
+
+    /**
+     * Counts a logged command towards the next snapshot.
+     *
+     * @param moved whether the command was a valid move
+     * @param undone the number of moves the command undid, negative for moves it redid
+     * @return true if a snapshot is due, because the interval is over or the
+     *         undo or redo crossed the latest snapshot
+     */
+    private boolean count(boolean moved, int undone) {
+        sinceSnapshot++;
+        if (moved) {
+            depth++;
+            redoable = 0; // a move discards the undone moves
+        }
+        if (undone > depth || -undone > redoable) {
+            return true;
+        }
+        depth -= undone;
+        redoable += undone;
+        return sinceSnapshot >= snapshotInterval;
+    }
+
+    /**
+     * Reseeds the random source of the road, writes a snapshot of the current
+     * road and the seed, and empties the log. The log is emptied only once the
+     * snapshot is safely in place.
+     */
+    private void takeSnapshot(CommandReader commands) throws IOException {
+        long seed = random.nextLong();
+        random.reseed(seed);
+        SnapshotFile.write(directory.resolve(SNAPSHOT_FILE), simulation.getRoad(), commandNumber,
+                commands.getOffset(), seed);
+        log.reset(commandNumber);
+        sinceSnapshot = 0;
+        depth = 0;
+        redoable = 0;
+    }
+
+    private static void checkInterval(int snapshotInterval) {
+        if (snapshotInterval < 1) {
+            throw new IllegalArgumentException("Snapshot interval must be at least 1: " + snapshotInterval);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package onelanetraffic;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The Java Flight Recorder event types of the simulation, shown under
+ * "One-Lane Traffic" in JDK Mission Control. Start a recording as usual, e.g.
+ *
+ * <pre>
+ * java -XX:StartFlightRecording:filename=run.jfr onelanetraffic.BatchRunner ... --jfr
+ * </pre>
+ *
+ * History events are committed by HistoryTracking itself; command, collision
+ * and reuse pool events by a FlightRecorderListener. None of them record a
+ * stack trace, and while an event type is disabled creating and committing
+ * its events costs next to nothing, so they can be left in place.
+ *
+ * @author Lehan Zhang
+ */
+final class FlightRecorderEvents {
+    private static final String CATEGORY = "One-Lane Traffic";
+
+    private FlightRecorderEvents() {
+    }
+
+    @Name("onelanetraffic.Command")
+    @Label("Command")
+    @Description("A move, undo or redo command, from its start to the end of its events")
+    @Category({CATEGORY, "Commands"})
+    @StackTrace(false)
+    static final class Command extends Event {
+        @Label("Action")
+        @Description("m to move, u to undo, r to redo")
+        char action;
+
+        @Label("Step")
+        @Description("Direction of a move, or the number of moves to undo or redo")
+        int step;
+
+        @Label("Position")
+        @Description("0-based position of the vehicle that moved, -1 for undo and redo")
+        int position;
+
+        @Label("Outcome")
+        @Description("What the command did, e.g. MOVED, OUT_OF_RANGE, a collision type or HISTORY_EMPTY")
+        String outcome;
+    }
+
+    @Name("onelanetraffic.Collision")
+    @Label("Collision")
+    @Description("A vehicle moved into another one")
+    @Category({CATEGORY, "Road"})
+    @StackTrace(false)
+    static final class Collision extends Event {
+        @Label("Type")
+        String type;
+
+        @Label("Position")
+        @Description("0-based position of the vehicle that moved")
+        int position;
+
+        @Label("Target")
+        @Description("0-based position of the vehicle that was hit")
+        int target;
+
+        @Label("Mover Removed")
+        boolean moverRemoved;
+
+        @Label("Other Removed")
+        boolean otherRemoved;
+    }
+
+    @Name("onelanetraffic.HistorySave")
+    @Label("History Save")
+    @Description("HistoryTracking.addHistory saved the road before a move")
+    @Category({CATEGORY, "History"})
+    @StackTrace(false)
+    static final class HistorySave extends Event {
+        @Label("Retained Bytes")
+        @Description("Estimated memory the history store kept for the save: a road copy, a checkpoint or journal"
+                + " entries, less what it evicted or spilled. The entries a journal records during a move show"
+                + " in the next save")
+        @DataAmount
+        long retainedBytes;
+
+        @Label("History Bytes")
+        @Description("Estimated memory the history store keeps afterwards")
+        @DataAmount
+        long historyBytes;
+
+        @Label("Depth")
+        @Description("Moves that can be undone afterwards")
+        int depth;
+    }
+
+    @Name("onelanetraffic.HistoryRestore")
+    @Label("History Restore")
+    @Description("HistoryTracking restored an earlier road for an undo, or a later one for a redo")
+    @Category({CATEGORY, "History"})
+    @StackTrace(false)
+    static final class HistoryRestore extends Event {
+        @Label("Operation")
+        @Description("UNDO or REDO")
+        String operation;
+
+        @Label("Requested")
+        @Description("Moves the command asked to undo or redo")
+        int requested;
+
+        @Label("Restored")
+        @Description("Moves actually undone or redone; fewer if the history ran out")
+        int restored;
+
+        @Label("Released Bytes")
+        @Description("Estimated memory the history store let go of; negative if it keeps more, e.g. the live"
+                + " road an indexed history keeps for redo")
+        @DataAmount
+        long releasedBytes;
+
+        @Label("History Bytes")
+        @Description("Estimated memory the history store keeps afterwards")
+        @DataAmount
+        long historyBytes;
+
+        @Label("Depth")
+        @Description("Moves that can be undone afterwards")
+        int depth;
+    }
+
+    @Name("onelanetraffic.PoolRecycle")
+    @Label("Pool Recycle")
+    @Description("A crashed vehicle was added to the reuse pool")
+    @Category({CATEGORY, "Reuse Pool"})
+    @StackTrace(false)
+    static final class PoolRecycle extends Event {
+        @Label("Vehicle")
+        @Description("Car or Bus")
+        String vehicle;
+
+        @Label("Position")
+        @Description("0-based position the vehicle was removed from")
+        int position;
+
+        @Label("Pool Size")
+        @Description("Vehicles in the pool afterwards")
+        int poolSize;
+    }
+
+    @Name("onelanetraffic.PoolReuse")
+    @Label("Pool Reuse")
+    @Description("A vehicle was taken from the reuse pool and placed on the road")
+    @Category({CATEGORY, "Reuse Pool"})
+    @StackTrace(false)
+    static final class PoolReuse extends Event {
+        @Label("Vehicle")
+        @Description("Car or Bus, or none if the pool was empty")
+        String vehicle;
+
+        @Label("Position")
+        @Description("0-based position the vehicle was placed at")
+        int position;
+
+        @Label("Pool Size")
+        @Description("Vehicles left in the pool")
+        int poolSize;
+    }
+}
@@ -0,0 +1,202 @@
+package onelanetraffic;
+
+/**
+ * An event listener that commits Java Flight Recorder events for commands,
+ * collisions and the reuse pool (see FlightRecorderEvents), and passes every
+ * event on to another listener.
+ *
+ * A command event spans from the command event to commandFinished, so JFR
+ * can line it up with the samples, allocations and GC pauses it contains. Its
+ * outcome is taken from the road events in between: MOVED, STAYED,
+ * OUT_OF_RANGE or the collision type for a move, UNDONE or HISTORY_EMPTY for
+ * an undo, and REDONE or REDO_EMPTY for a redo. Invalid commands are committed
+ * at once with the outcome INVALID_DIRECTION or INVALID_COMMAND.
+ *
+ * While the command event type is disabled, no command event is created. The
+ * events only name the kind of a recycled or reused vehicle, so the road builds
+ * vehicle objects for the other events only if the next listener needs them.
+ *
+ * @author Lehan Zhang
+ */
+public class FlightRecorderListener implements SimulationEventListener {
+    private final SimulationEventListener next; // receives every event after it was recorded
+    private FlightRecorderEvents.Command command; // the command being executed, null if it is not recorded
+
+    /**
+     * Creates a listener that only records.
+     */
+    public FlightRecorderListener() {
+        this(SimulationEventListener.NONE);
+    }
+
+    /**
+     * Creates a listener that records every event and then passes it on.
+     *
+     * @param next the listener that receives the events, e.g. a TextEventWriter
+     */
+    public FlightRecorderListener(SimulationEventListener next) {
+        this.next = next;
+    }
+
+    public void simulationStarted(Road road) {
+        next.simulationStarted(road);
+    }
+
+    public void moveCommand(int position, int step) {
+        begin(CommandReader.MOVE, step, position, "MOVED");
+        next.moveCommand(position, step);
+    }
+
+    public void undoCommand(int steps) {
+        begin(CommandReader.UNDO, steps, -1, "UNDONE");
+        next.undoCommand(steps);
+    }
+
+    public void redoCommand(int steps) {
+        begin(CommandReader.REDO, steps, -1, "REDONE");
+        next.redoCommand(steps);
+    }
+
+    public void invalidDirection(int step) {
+        FlightRecorderEvents.Command event = new FlightRecorderEvents.Command();
+        if (event.shouldCommit()) {
+            event.action = CommandReader.MOVE;
+            event.step = step;
+            event.position = -1;
+            event.outcome = "INVALID_DIRECTION";
+            event.commit();
+        }
+        next.invalidDirection(step);
+    }
+
+    public void invalidCommand() {
+        FlightRecorderEvents.Command event = new FlightRecorderEvents.Command();
+        if (event.shouldCommit()) {
+            event.action = CommandReader.INVALID;
+            event.position = -1;
+            event.outcome = "INVALID_COMMAND";
+            event.commit();
+        }
+        next.invalidCommand();
+    }
+
+    public void commandFinished(Road road) {
+        next.commandFinished(road);
+        if (command != null) {
+            command.commit();
+            command = null;
+        }
+    }
+
+    public void simulationFinished(Road road) {
+        next.simulationFinished(road);
+    }
+
+    public void vehicleStayed(Vehicle vehicle, int position) {
+        outcome("STAYED");
+        next.vehicleStayed(vehicle, position);
+    }
+
+    public void moveOutOfRange(int position, int direction) {
+        outcome("OUT_OF_RANGE");
+        next.moveOutOfRange(position, direction);
+    }
+
+    public void vehicleMoved(Vehicle vehicle, int from, int to) {
+        next.vehicleMoved(vehicle, from, to); // MOVED already, unless a collision made way for the mover
+    }
+
+    public void collision(CollisionType type, Vehicle mover, int position, Vehicle other, int target,
+                          boolean moverRemoved, boolean otherRemoved, ReusePool pool) {
+        outcome(type.name());
+        FlightRecorderEvents.Collision event = new FlightRecorderEvents.Collision();
+        if (event.shouldCommit()) {
+            event.type = type.name();
+            event.position = position;
+            event.target = target;
+            event.moverRemoved = moverRemoved;
+            event.otherRemoved = otherRemoved;
+            event.commit();
+        }
+        next.collision(type, mover, position, other, target, moverRemoved, otherRemoved, pool);
+    }
+
+    public void vehicleRecycled(Vehicle vehicle, int position, ReusePool pool) {
+        FlightRecorderEvents.PoolRecycle event = new FlightRecorderEvents.PoolRecycle();
+        if (event.shouldCommit()) {
+            event.vehicle = kind(vehicle);
+            event.position = position;
+            event.poolSize = pool.size();
+            event.commit();
+        }
+        next.vehicleRecycled(vehicle, position, pool);
+    }
+
+    public void vehicleReused(Vehicle vehicle, int position, ReusePool pool) {
+        FlightRecorderEvents.PoolReuse event = new FlightRecorderEvents.PoolReuse();
+        if (event.shouldCommit()) {
+            event.vehicle = kind(vehicle);
+            event.position = position;
+            event.poolSize = pool.size();
+            event.commit();
+        }
+        next.vehicleReused(vehicle, position, pool);
+    }
+
+    public void poolEmpty() {
+        next.poolEmpty();
+    }
+
+    public void historyEmpty() {
+        outcome("HISTORY_EMPTY");
+        next.historyEmpty();
+    }
+
+    public void redoEmpty() {
+        outcome("REDO_EMPTY");
+        next.redoEmpty();
+    }
+
+    /**
+     * Looks at no vehicle but the recycled and reused ones, which are passed anyway.
+     *
+     * @return whether the next listener needs the vehicles
+     */
+    public boolean needsVehicles() {
+        return next.needsVehicles();
+    }
+
+    /**
+     * Starts the event of a command, if command events are enabled.
+     */
+    private void begin(char action, int step, int position, String outcome) {
+        FlightRecorderEvents.Command event = new FlightRecorderEvents.Command();
+        if (event.isEnabled()) {
+            event.action = action;
+            event.step = step;
+            event.position = position;
+            event.outcome = outcome;
+            event.begin();
+            command = event;
+        } else {
+            command = null;
+        }
+    }
+
+    /**
+     * Names the kind of a vehicle for a pool event; a vehicle reused from an
+     * empty pool is null.
+     */
+    private static String kind(Vehicle vehicle) {
+        return vehicle == null ? "none" : vehicle.getClass().getSimpleName();
+    }
+
+    /**
+     * Sets the outcome of the command being executed.
+     */
+    private void outcome(String outcome) {
+        if (command != null) {
+            command.outcome = outcome;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package onelanetraffic;
+
+/**
+ * Defines the behaviors of a store that keeps previous road states so that
+ * move commands can be undone. HistoryTracking delegates to one of these.
+ *
+ * Stores restore one state at a time by default; a store that can reach any
+ * state directly overrides restore(int), and one that keeps undone states
+ * overrides redo and redoSize.
+ *
+ * @author Lehan Zhang
+ */
+public interface HistoryStore {
+
+    /**  Records the state of the road before a move command changes it. */
+    public void save(Road currentRoad);
+
+    /**  Removes and returns the most recently saved road state, or null if there is none. */
+    public Road restore();
+
+    /**
+     * Removes the given number of states and returns the oldest of them, i.e.
+     * the road as it was steps moves ago. By default restore is called steps times.
+     *
+     * @param steps the number of states to go back, from 1 to size()
+     * @return the state steps moves ago
+     */
+    public default Road restore(int steps) {
+        Road previous = null;
+        for (int i = 0; i < steps; i++) {
+            previous = restore();
+        }
+        return previous;
+    }
+
+    /**
+     * Goes forward again over states that were restored and returns the road
+     * as it was steps restores ago. By default no undone state is kept.
+     *
+     * @param steps the number of undone moves to redo, from 1 to redoSize()
+     * @return the redone state, or null if the store cannot redo
+     */
+    public default Road redo(int steps) {
+        return null;
+    }
+
+    /**  Returns the number of undone moves that can be redone; 0 by default. */
+    public default int redoSize() {
+        return 0;
+    }
+
+    /**  Determines whether or not any state can still be restored. */
+    public boolean isEmpty();
+
+    /**  Returns the number of states that can be restored. */
+    public int size();
+
+    /**
+     * Returns an estimate of the memory the store currently keeps for its
+     * states, so that what a save retained and what a restore released can be
+     * reported. Takes constant time.
+     *
+     * @return the estimated bytes held by the store
+     */
+    public long retainedBytes();
+}
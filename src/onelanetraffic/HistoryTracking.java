@@ -1,57 +1,176 @@
 package onelanetraffic;
 
-import stacks.LinkedStack;
-
 public class HistoryTracking {
-    private LinkedStack<Road> roadHistory; // a linkedStack to store previous road states
+    private HistoryStore roadHistory; // the store that keeps previous road states
+    private SimulationEventListener events = SimulationEventListener.NONE; // told when the history runs out
 
     public HistoryTracking() {
-        roadHistory = new LinkedStack<>(); // a linkedStack object used as history tracking for previous road states
+        this(new SnapshotHistory()); // a linkedStack of full road copies used as history tracking
+    }
+
+    /**
+     * Creates a history tracker that keeps full road copies as allowed by the
+     * given retention policy, evicting the oldest ones beyond it.
+     *
+     * @param policy the retention policy, e.g. RetentionPolicy.maxDepth(1000)
+     */
+    public HistoryTracking(RetentionPolicy policy) {
+        this(new SnapshotHistory(policy));
     }
 
     /**
-     * create a deep copy of the current road with all its fields (except current)
-     * and push the copy into the roadHistory stack.
+     * Creates a history tracker that keeps previous road states in the given store.
+     *
+     * @param store the history store to use, e.g. a SnapshotHistory or a JournalHistory
+     */
+    public HistoryTracking(HistoryStore store) {
+        roadHistory = store;
+    }
+
+    /**
+     * Saves the state of the current road before it is changed by a move,
+     * so that the move can be undone later.
      *
      * @param currentRoad the road needed to be stored into roadHistory
      */
     public void addHistory(Road currentRoad) {
-        Road clone = new Road(currentRoad.getSize());
-        for (int i = 0; i < clone.getSize(); i++) {
-            clone.getVehicles()[i] = currentRoad.getVehicles()[i];
+        FlightRecorderEvents.HistorySave event = new FlightRecorderEvents.HistorySave();
+        event.begin();
+        long before = event.isEnabled() ? roadHistory.retainedBytes() : 0;
+        roadHistory.save(currentRoad);
+        if (event.shouldCommit()) {
+            event.historyBytes = roadHistory.retainedBytes();
+            event.retainedBytes = event.historyBytes - before;
+            event.depth = roadHistory.size();
+            event.commit();
         }
-
-        clone.setNumVehicles(currentRoad.getNumVehicles());
-        // deep copy of the reusePool
-        clone.setReusePool(currentRoad.getReusePool().copy());
-
-        roadHistory.push(clone);
     }
 
     /**
      * Reverts to the previous state of the road by removing and returning the most
-     * recently saved Road object from the history stack.
-     * If the history stack is empty, return null and prints a message.
+     * recently saved Road object from the history.
+     * If the history is empty, return null and reports it to the event listener.
      *
      * @return the previous state of the Road, or null if the
-     *         roadHistory stack is empty.
+     *         roadHistory is empty.
      */
     public Road undo() {
-        if (roadHistory.isEmpty()) {
-            System.out.println("No more steps to undo. History is empty.");
+        FlightRecorderEvents.HistoryRestore event = new FlightRecorderEvents.HistoryRestore();
+        event.begin();
+        long before = event.isEnabled() ? roadHistory.retainedBytes() : 0;
+        Road previous = roadHistory.restore();
+        if (previous == null) {
+            events.historyEmpty();
+        }
+        commit(event, "UNDO", 1, previous == null ? 0 : 1, before);
+        return previous;
+    }
+
+    /**
+     * Reverts the road by the given number of moves at once. A store that can
+     * reach any state directly, such as an IndexedHistory, does so in constant
+     * time; other stores restore one state after another. If the history holds
+     * fewer states, the oldest one is returned and the shortfall is reported to
+     * the event listener.
+     *
+     * @param steps the number of moves to undo
+     * @return the state of the Road steps moves ago, or the oldest state kept;
+     *         null if steps is not positive or the roadHistory is empty
+     */
+    public Road undo(int steps) {
+        if (steps <= 0) {
+            return null;
+        }
+        FlightRecorderEvents.HistoryRestore event = new FlightRecorderEvents.HistoryRestore();
+        event.begin();
+        long before = event.isEnabled() ? roadHistory.retainedBytes() : 0;
+        int available = roadHistory.size();
+        Road previous = available > 0 ? roadHistory.restore(Math.min(steps, available)) : null;
+        if (steps > available) {
+            events.historyEmpty();
+        }
+        commit(event, "UNDO", steps, Math.min(steps, available), before);
+        return previous;
+    }
+
+    /**
+     * Goes forward again by the given number of undone moves. Only stores that
+     * keep undone states, such as an IndexedHistory, can redo; a new move
+     * discards them. If fewer moves can be redone, the newest undone state is
+     * returned and the shortfall is reported to the event listener.
+     *
+     * @param steps the number of undone moves to redo
+     * @return the redone state of the Road, or null if steps is not positive
+     *         or nothing can be redone
+     */
+    public Road redo(int steps) {
+        if (steps <= 0) {
             return null;
         }
-        return roadHistory.pop();
+        FlightRecorderEvents.HistoryRestore event = new FlightRecorderEvents.HistoryRestore();
+        event.begin();
+        long before = event.isEnabled() ? roadHistory.retainedBytes() : 0;
+        int available = roadHistory.redoSize();
+        Road next = available > 0 ? roadHistory.redo(Math.min(steps, available)) : null;
+        if (steps > available) {
+            events.redoEmpty();
+        }
+        commit(event, "REDO", steps, next == null ? 0 : Math.min(steps, available), before);
+        return next;
+    }
+
+    /**
+     * Commits the flight recorder event of an undo or redo, if it is enabled,
+     * with the bytes the store let go of since it kept bytesBefore.
+     */
+    private void commit(FlightRecorderEvents.HistoryRestore event, String operation, int requested, int restored,
+                        long bytesBefore) {
+        if (event.shouldCommit()) {
+            event.operation = operation;
+            event.requested = requested;
+            event.restored = restored;
+            event.historyBytes = roadHistory.retainedBytes();
+            event.releasedBytes = bytesBefore - event.historyBytes;
+            event.depth = roadHistory.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Sets the listener that is told when an undo or redo finds the history empty.
+     *
+     * @param listener the event listener, or SimulationEventListener.NONE
+     */
+    public void setEventListener(SimulationEventListener listener) {
+        this.events = listener;
     }
 
     /**
-     * Checks whether the roadHistory stack is empty.
+     * Checks whether the roadHistory is empty.
      *
-     * @return true if the roadHistory stack is empty; false otherwise
+     * @return true if the roadHistory is empty; false otherwise
      */
     public boolean isEmpty() {
         return roadHistory.isEmpty();
     }
+
+    /**
+     * Returns the number of steps that can still be undone.
+     *
+     * @return the history depth
+     */
+    public int size() {
+        return roadHistory.size();
+    }
+
+    /**
+     * Returns the number of undone steps that can be redone.
+     *
+     * @return the redo depth, 0 unless the store keeps undone states
+     */
+    public int redoSize() {
+        return roadHistory.redoSize();
+    }
 }
 
 
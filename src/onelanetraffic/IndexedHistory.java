@@ -0,0 +1,150 @@
+package onelanetraffic;
+
+import java.util.Arrays;
+
+/**
+ * A history store that keeps every version of the road in an array indexed
+ * by its move number: version i is the road before move i. Undoing n moves
+ * is then a jump to version step - n, and redoing one forward again, both in
+ * constant time however far they go; nothing is popped or replayed on the way.
+ *
+ * Versions that were jumped back over stay in the array until the next move
+ * overwrites them, so they can be redone without being recomputed. Each move
+ * saves a copy of the road, so a storage with cheap copies such as
+ * PersistentRoadStorage keeps the whole history small.
+ *
+ * The version the road is currently at is handed out as the live road. It is
+ * never changed in place: the next move saves a copy of it first, and the
+ * array keeps that copy.
+ *
+ * @author Lehan Zhang
+ */
+public class IndexedHistory implements HistoryStore {
+    private Road[] versions; // versions[i] is the road before move i
+    private int step; // move number of the live road; versions below it can be restored
+    private int top; // number of versions kept; those above step can be redone
+    private Road live; // the live road, which is versions[step] unless a move changed it
+    private long versionBytes; // estimated size of one saved version; every version has the same size
+
+    /**
+     * Constructs an empty history.
+     */
+    public IndexedHistory() {
+        versions = new Road[16];
+    }
+
+    /**
+     * Saves a copy of the road as the version before the next move, and
+     * discards the versions that could have been redone.
+     *
+     * @param currentRoad the live road about to be changed
+     */
+    public void save(Road currentRoad) {
+        if (step + 1 >= versions.length) {
+            versions = Arrays.copyOf(versions, versions.length * 2);
+        }
+        Arrays.fill(versions, step + 1, Math.max(top, step + 1), null);
+        versions[step] = currentRoad.copy();
+        versionBytes = versions[step].estimatedCopyBytes();
+        step++;
+        top = step;
+        live = currentRoad;
+    }
+
+    /**
+     * Jumps back to the version before the most recent move.
+     *
+     * @return the previous state of the road, or null if there is none
+     */
+    public Road restore() {
+        return step == 0 ? null : jumpTo(step - 1);
+    }
+
+    /**
+     * Jumps back the given number of moves in constant time.
+     *
+     * @param steps the number of moves to go back, from 1 to size()
+     * @return the state of the road steps moves ago
+     */
+    public Road restore(int steps) {
+        return jumpTo(step - steps);
+    }
+
+    /**
+     * Jumps forward again the given number of undone moves in constant time.
+     *
+     * @param steps the number of moves to redo, from 1 to redoSize()
+     * @return the state of the road steps undos ago
+     */
+    public Road redo(int steps) {
+        return jumpTo(step + steps);
+    }
+
+    /**
+     * Returns the number of undone moves that can be redone.
+     *
+     * @return the number of versions after the live one
+     */
+    public int redoSize() {
+        return Math.max(top - step - 1, 0);
+    }
+
+    /**
+     * Checks whether there is a move left to undo.
+     *
+     * @return true if the live road is the first version; false otherwise
+     */
+    public boolean isEmpty() {
+        return step == 0;
+    }
+
+    /**
+     * Returns the number of moves that can be undone.
+     *
+     * @return the move number of the live road
+     */
+    public int size() {
+        return step;
+    }
+
+    /**
+     * Returns the estimated size of the kept versions. An undo releases
+     * nothing, since the versions it jumps over are kept for redo; the first
+     * one after a move even keeps the live road as well.
+     *
+     * @return the estimated bytes of the kept versions
+     */
+    public long retainedBytes() {
+        return versionBytes * top;
+    }
+
+    /**
+     * Returns the move number of the live road, i.e. its index in the history.
+     *
+     * @return the number of moves that led to the live road
+     */
+    public int getStep() {
+        return step;
+    }
+
+    /**
+     * Makes the version of a given move number the live road.
+     *
+     * @param target the move number of the version, from 0 to size() + redoSize()
+     * @return the road before move target
+     * @throws IndexOutOfBoundsException if no version of that move number is kept
+     */
+    public Road jumpTo(int target) {
+        if (live == null || target < 0 || target > step + redoSize()) {
+            throw new IndexOutOfBoundsException("No version of move " + target + " is kept");
+        }
+        if (top == step) {
+            // the live road was changed by a move since it was saved; keep it for redo
+            versions[step] = live;
+            top = step + 1;
+        }
+        step = target;
+        live = versions[target];
+        return live;
+    }
+}
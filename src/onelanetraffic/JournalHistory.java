@@ -0,0 +1,207 @@
+package onelanetraffic;
+
+import java.util.Arrays;
+import exceptionclasses.EmptyQueueException;
+import stacks.IntArrayStack;
+
+/**
+ * A history store that records only what each move command changed instead of
+ * copying the whole road. For every step it keeps the road slots that were
+ * overwritten (with their old vehicles), the number of vehicles before the move,
+ * and the vehicles that went into or came out of the reuse pool.
+ * Undoing a step replays those records backwards on the live road, so both
+ * saving and restoring cost time proportional to what the step changed.
+ *
+ * The road being tracked reports its changes through recordSlot, recordRecycle
+ * and recordReuse while a step is open.
+ *
+ * @author Lehan Zhang
+ */
+public class JournalHistory implements HistoryStore, RoadRecorder {
+    private static final int STEP_BYTES = 12; // three ints per step
+    private static final int SLOT_BYTES = 8; // an index and a reference per slot change
+    private static final int POOL_BYTES = 4; // a reference per pool change
+
+    private Road road; // the live road this journal is attached to
+
+    // slot changes of all steps, oldest first
+    private int[] slotIndex;
+    private Vehicle[] slotOld;
+    private int slotCount;
+
+    // pool changes of all steps, oldest first; reused vehicles are kept so they can be put back
+    private Vehicle[] poolReused;
+    private int poolCount;
+
+    // per step, oldest at the bottom: where it starts in the arrays above, and the vehicle count before it
+    private IntArrayStack stepSlotStart;
+    private IntArrayStack stepPoolStart;
+    private IntArrayStack stepNumVehicles;
+
+    /**
+     * Constructs an empty journal.
+     */
+    public JournalHistory() {
+        slotIndex = new int[16];
+        slotOld = new Vehicle[16];
+        poolReused = new Vehicle[16];
+        stepSlotStart = new IntArrayStack(16);
+        stepPoolStart = new IntArrayStack(16);
+        stepNumVehicles = new IntArrayStack(16);
+    }
+
+    /**
+     * Opens a new step for the given road. Changes the road makes until the next
+     * call are recorded into this step.
+     *
+     * @param currentRoad the live road about to be changed
+     */
+    public void save(Road currentRoad) {
+        if (road != currentRoad) {
+            // a different road object means earlier steps do not describe it anymore
+            if (road != null) {
+                road.setRecorder(null);
+            }
+            clear();
+            road = currentRoad;
+            road.setRecorder(this);
+        }
+        stepSlotStart.push(slotCount);
+        stepPoolStart.push(poolCount);
+        stepNumVehicles.push(currentRoad.getNumVehicles());
+    }
+
+    /**
+     * Reverts the most recent step on the live road and returns it.
+     *
+     * @return the live road in its previous state, or null if there is no step to undo
+     */
+    public Road restore() {
+        if (stepSlotStart.isEmpty()) {
+            return null;
+        }
+
+        // put the reuse pool back first, newest change first
+        ReusePool pool = road.getReusePool();
+        int poolStart = stepPoolStart.pop();
+        try {
+            while (poolCount > poolStart) {
+                poolCount--;
+                Vehicle reused = poolReused[poolCount];
+                poolReused[poolCount] = null;
+                if (reused == null) {
+                    pool.undoRecycle();
+                } else {
+                    pool.undoReuse(reused);
+                }
+            }
+        } catch (EmptyQueueException ex) {
+            throw new IllegalStateException("The journal does not match the reuse pool.", ex);
+        }
+
+        // restore overwritten slots, newest change first
+        int slotStart = stepSlotStart.pop();
+        while (slotCount > slotStart) {
+            slotCount--;
+            road.restoreSlot(slotIndex[slotCount], slotOld[slotCount]);
+            slotOld[slotCount] = null;
+        }
+
+        road.setNumVehicles(stepNumVehicles.pop());
+        return road;
+    }
+
+    /**
+     * Checks whether there is a step left to undo.
+     *
+     * @return true if no step is recorded; false otherwise
+     */
+    public boolean isEmpty() {
+        return stepSlotStart.isEmpty();
+    }
+
+    /**
+     * Returns the number of recorded steps.
+     *
+     * @return the number of steps that can be undone
+     */
+    public int size() {
+        return stepSlotStart.size();
+    }
+
+    /**
+     * Returns the estimated size of the recorded changes: the entries of the
+     * steps, slot changes and pool changes, not the vehicles they refer to,
+     * most of which are on the road or in the pool anyway.
+     *
+     * @return the estimated bytes of the journal entries
+     */
+    public long retainedBytes() {
+        return (long) STEP_BYTES * stepSlotStart.size() + (long) SLOT_BYTES * slotCount
+                + (long) POOL_BYTES * poolCount;
+    }
+
+    /**
+     * Records that a road slot is about to be overwritten.
+     *
+     * @param index the array index of the slot
+     * @param oldVehicle the vehicle currently in the slot, may be null
+     */
+    public void recordSlot(int index, Vehicle oldVehicle) {
+        if (stepSlotStart.isEmpty()) {
+            return; // nothing to undo into
+        }
+        if (slotCount == slotIndex.length) {
+            slotIndex = Arrays.copyOf(slotIndex, slotCount * 2);
+            slotOld = Arrays.copyOf(slotOld, slotCount * 2);
+        }
+        slotIndex[slotCount] = index;
+        slotOld[slotCount] = oldVehicle;
+        slotCount++;
+    }
+
+    /**
+     * Records that a vehicle was added to the rear of the reuse pool.
+     */
+    public void recordRecycle() {
+        recordPool(null);
+    }
+
+    /**
+     * Records that a vehicle was taken from the front of the reuse pool.
+     *
+     * @param reused the vehicle taken from the pool
+     */
+    public void recordReuse(Vehicle reused) {
+        recordPool(reused);
+    }
+
+    /**
+     * Appends a pool change; null stands for a recycle.
+     *
+     * @param reused the reused vehicle, or null for a recycle
+     */
+    private void recordPool(Vehicle reused) {
+        if (stepSlotStart.isEmpty()) {
+            return;
+        }
+        if (poolCount == poolReused.length) {
+            poolReused = Arrays.copyOf(poolReused, poolCount * 2);
+        }
+        poolReused[poolCount] = reused;
+        poolCount++;
+    }
+
+    /**
+     * Forgets every recorded step.
+     */
+    private void clear() {
+        Arrays.fill(slotOld, 0, slotCount, null);
+        Arrays.fill(poolReused, 0, poolCount, null);
+        slotCount = 0;
+        poolCount = 0;
+        stepSlotStart.clear();
+        stepPoolStart.clear();
+        stepNumVehicles.clear();
+    }
+}
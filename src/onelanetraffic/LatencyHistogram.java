@@ -0,0 +1,155 @@
+package onelanetraffic;
+
+import java.util.Arrays;
+
+/**
+ * Counts latencies in nanoseconds in a fixed set of buckets, so that any number
+ * of them can be recorded without allocating and percentiles can be read at any
+ * time. Values below 64 ns each have their own bucket; above that every power of
+ * two is split into 32 buckets, so a reported percentile is at most about 3%
+ * above the true value.
+ *
+ * A histogram is not thread-safe; record from one thread and read from it, or
+ * read a copy.
+ *
+ * @author Lehan Zhang
+ */
+public class LatencyHistogram {
+    private static final int SUB_BITS = 5; // each power of two is split into 2^SUB_BITS buckets
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final long[] counts; // counts[i] is the number of values in bucket i
+    private long count; // number of values recorded
+    private long sum; // sum of the values recorded
+    private long max; // largest value recorded
+
+    /**
+     * Creates an empty histogram.
+     */
+    public LatencyHistogram() {
+        counts = new long[BUCKETS];
+    }
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos the latency in nanoseconds; negative values are counted as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Adds all values of another histogram to this one.
+     *
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Returns a copy of this histogram.
+     *
+     * @return a histogram with the same values
+     */
+    public LatencyHistogram copy() {
+        LatencyHistogram copy = new LatencyHistogram();
+        copy.add(this);
+        return copy;
+    }
+
+    /**
+     * Forgets all recorded values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    /**
+     * Returns the number of values recorded.
+     *
+     * @return the count
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the mean of the values recorded.
+     *
+     * @return the mean in nanoseconds, or 0 if there are none
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the largest value recorded.
+     *
+     * @return the maximum in nanoseconds, or 0 if there are none
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the value below or at which the given percentage of the values lie.
+     *
+     * @param percentile the percentage, from 0 to 100
+     * @return the upper end of the bucket holding that value in nanoseconds, never
+     *         more than the maximum; 0 if there are no values
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the bucket of a non-negative value.
+     */
+    private static int bucket(long value) {
+        if (value < 2 * SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_COUNT + (int) (value >>> shift); // value >>> shift lies in [SUB_COUNT, 2 * SUB_COUNT)
+    }
+
+    /**
+     * Returns the largest value that falls into a bucket.
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < 2 * SUB_COUNT) {
+            return bucket;
+        }
+        int shift = bucket / SUB_COUNT - 1;
+        long mantissa = bucket - (long) shift * SUB_COUNT;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -1,8 +1,7 @@
 package onelanetraffic;
 
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.nio.file.Path;
 import javax.swing.JOptionPane;
 
 /**
@@ -55,57 +54,25 @@ public class MainApp {
         }
 
         Road aRoad = new Road(size, numVehicles); // create a new road object with valid user inputs
-        HistoryTracking roadHistory = new HistoryTracking(); // an linkedStack to store history state of the road
-        String action; // store string character that indicates a command type
-        int step; // store the steps of the specified command
-        Scanner scr; // scanner to scan and read input from an input file
+        // a journal of the changes made by each move, used to restore earlier states of the road
+        HistoryTracking roadHistory = new HistoryTracking(new JournalHistory());
+        CommandReader commands; // reads the commands from the memory-mapped input file
         String fileName = "input.txt";  // name of the input file
 
         System.out.println("Starting one-lane traffic simulation...\n");
 
         try {
-            scr = new Scanner(new File(fileName));
-        } catch (FileNotFoundException ex) {
+            commands = new CommandReader(Path.of(fileName));
+        } catch (IOException ex) {
             System.out.println("No file was found with the name " + "\"" + fileName + "\"");
             System.out.println("Program terminated");
             return;
         }
-        System.out.println("Initial state of the road:\n" + aRoad);
 
-        while (scr.hasNext()) {
-            // reads inputs from the file
-            action = scr.next();
-            step =scr.nextInt();
-            aRoad.setCurrent(); // set a current vehicle to perform movement
-            int targetPosition = aRoad.getPosition() + step; // 1-based index of the target position
-
-            if (action.equals("m")) {
-                // validate movement command
-                if ( !(step == 0 || step == 1 || step == -1) ) {
-                    System.out.println("Invalid direction. Proceeding to the next command.");
-                    continue;
-                }
-                System.out.println("Executing command - moving vehicle at position " + aRoad.getPosition()
-                        + " to position " + targetPosition + ".");
-                roadHistory.addHistory(aRoad); // add a copy of the current road state to history
-                aRoad.moveVehicle(step);
-            } else if (action.equals("u")) {
-                System.out.println("Executing command - restoring the road to its state " + step + " steps ago.");
-                // restore the current road to its earlier state, loop ends if no more history
-                for (int i = 0; i < step; i++) {
-                    Road prev = roadHistory.undo();
-                    if (prev == null) break;
-                    aRoad = prev; // reassign aRoad to its previous state
-                }
-            } else {
-                System.out.println("Invalid command. Proceeding to the next step.\n");
-                scr.nextLine(); // ignores and consumes the invalid step number and move to the next line
-                continue;
-            }
-            System.out.println("\nCurrent state of the road:\n" + aRoad);
-        }
-
-        System.out.println("Simulation finished.");
-        System.out.println("\nFinal state of the road:\n" + aRoad);
+        // prints what happens during the simulation, showing only the changed positions after each command
+        TextEventWriter output = new TextEventWriter(System.out, false, new RoadRenderer(true));
+        Simulation simulation = new Simulation(aRoad, roadHistory, output);
+        simulation.run(commands); // execute the commands of the input file
+        output.close();
     }
 }
\ No newline at end of file
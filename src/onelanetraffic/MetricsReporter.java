@@ -0,0 +1,59 @@
+package onelanetraffic;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints the text dump of SimulationMetrics at a fixed interval on a daemon
+ * thread, and once more when it is closed, so the final numbers of a run are
+ * always shown.
+ *
+ * @author Lehan Zhang
+ */
+public class MetricsReporter implements Closeable {
+    private final SimulationMetrics metrics; // the metrics to print
+    private final PrintStream out; // where the dumps go
+    private final ScheduledExecutorService timer; // runs the periodic dumps
+
+    /**
+     * Starts printing the metrics every period.
+     *
+     * @param metrics the metrics to print
+     * @param out the stream to print them to, e.g. System.err
+     * @param periodMillis milliseconds between two dumps
+     */
+    public MetricsReporter(SimulationMetrics metrics, PrintStream out, long periodMillis) {
+        this.metrics = metrics;
+        this.out = out;
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleAtFixedRate(this::dump, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic dumps and prints the metrics a last time.
+     */
+    public void close() {
+        timer.shutdownNow();
+        try {
+            timer.awaitTermination(1, TimeUnit.SECONDS); // let a dump in progress finish first
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        dump();
+    }
+
+    /**
+     * Prints the metrics once.
+     */
+    private void dump() {
+        out.print(metrics.format());
+        out.flush();
+    }
+}
@@ -0,0 +1,21 @@
+package onelanetraffic;
+
+/**
+ * An event listener that ignores every event. Use SimulationEventListener.NONE
+ * rather than creating new instances, so Road can recognise it and skip
+ * building events altogether.
+ *
+ * @author Lehan Zhang
+ */
+public class NoOpEventListener implements SimulationEventListener {
+
+    /**
+     * Creates the listener behind SimulationEventListener.NONE.
+     */
+    NoOpEventListener() {
+    }
+
+    public boolean needsVehicles() {
+        return false;
+    }
+}
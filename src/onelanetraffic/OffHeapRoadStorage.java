@@ -0,0 +1,201 @@
+package onelanetraffic;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A road storage that keeps every slot as a packed 8-byte record in direct
+ * (off-heap) memory instead of the Java heap: the type code, car color index,
+ * horsepower and bus weight of the vehicle share one long.
+ *
+ * The records are split over direct buffers of at most 2^27 slots (1 GiB)
+ * each, since a single buffer cannot exceed 2 GiB; the high bits of a slot
+ * index pick the buffer, so the full int range of slots (16 GiB of records)
+ * is addressable. The cells are never scanned or moved by the garbage collector,
+ * and like PrimitiveRoadStorage a vehicle object is only created when get() is
+ * called. Direct memory is limited by -XX:MaxDirectMemorySize, which defaults
+ * to the maximum heap size, so a road larger than the heap needs that option
+ * raised. The slot index of such a road is kept in direct memory too (see
+ * OffHeapSlotIndex).
+ *
+ * @author Lehan Zhang
+ */
+public class OffHeapRoadStorage implements RoadStorage {
+    private static final int RECORD_BYTES = 8; // one long per slot
+    private static final int SEGMENT_SHIFT = 27; // slots per buffer, as a power of two
+    private static final int SEGMENT_MASK = (1 << SEGMENT_SHIFT) - 1;
+
+    private final ByteBuffer[] segments; // the records, 2^SEGMENT_SHIFT slots per buffer except the last
+    private final int size; // number of slots
+
+    /**
+     * Creates an empty storage with the given number of slots.
+     *
+     * @param size the number of positions on the road
+     */
+    public OffHeapRoadStorage(int size) {
+        this.size = size;
+        int count = (int) (((long) size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        segments = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long slots = Math.min(size - ((long) i << SEGMENT_SHIFT), 1L << SEGMENT_SHIFT);
+            // direct buffers start zeroed, and a zero record is an empty slot
+            segments[i] = ByteBuffer.allocateDirect((int) (slots * RECORD_BYTES)).order(ByteOrder.nativeOrder());
+        }
+    }
+
+    /**
+     * Builds a vehicle object from the record stored at the given index.
+     *
+     * @param index the 0-based index
+     * @return a new Car or Bus, or null if the slot is empty
+     */
+    public Vehicle get(int index) {
+        return unpack(read(index));
+    }
+
+    /**
+     * Stores the record of a vehicle at the given index.
+     *
+     * @param index the 0-based index
+     * @param vehicle the vehicle to store, or null to empty the slot
+     */
+    public void set(int index, Vehicle vehicle) {
+        write(index, pack(vehicle));
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the size of the road
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates a copy of this storage in new direct buffers.
+     *
+     * @return a new OffHeapRoadStorage with the same vehicles
+     */
+    public RoadStorage copy() {
+        OffHeapRoadStorage clone = new OffHeapRoadStorage(size);
+        for (int i = 0; i < segments.length; i++) {
+            clone.segments[i].put(0, segments[i], 0, segments[i].capacity());
+        }
+        return clone;
+    }
+
+    /**
+     * A copy takes one 8-byte record per slot in direct memory, which is
+     * counted like heap memory.
+     *
+     * @return the estimated size of a copy in bytes
+     */
+    public long estimatedCopyBytes() {
+        return 64 + (long) RECORD_BYTES * size;
+    }
+
+    public byte type(int index) {
+        return typeOf(read(index));
+    }
+
+    public int horsePower(int index) {
+        return horsePowerOf(read(index));
+    }
+
+    public int weight(int index) {
+        return weightOf(read(index));
+    }
+
+    public int colorIndex(int index) {
+        return (int) (read(index) >>> 8) & 0xFF;
+    }
+
+    /**
+     * Copies the record of one slot to another and empties the first.
+     *
+     * @param from the index of the vehicle to move
+     * @param to the index it moves to
+     */
+    public void move(int from, int to) {
+        write(to, read(from));
+        write(from, EMPTY);
+    }
+
+    /**
+     * Slots are separate 8-byte records written with absolute puts, so different
+     * slots can be written from different threads.
+     *
+     * @return true
+     */
+    public boolean isSegmentable() {
+        return true;
+    }
+
+    /**
+     * Builds an OffHeapSlotIndex, so that the index of a road in direct
+     * memory is kept there as well instead of on the heap.
+     *
+     * @return a new OffHeapSlotIndex of this storage
+     */
+    public SlotIndex createSlotIndex() {
+        return new OffHeapSlotIndex(this);
+    }
+
+    /**
+     * Packs a vehicle into the 8-byte record this storage keeps per slot.
+     * SnapshotFile writes vehicles in the same form.
+     *
+     * @param vehicle the vehicle to pack, or null for an empty slot
+     * @return the record; EMPTY (0) for null
+     */
+    static long pack(Vehicle vehicle) {
+        if (vehicle == null) {
+            return EMPTY;
+        }
+        if (vehicle.isCar()) {
+            return CAR | (((Car) vehicle).getColorIndex() & 0xFFL) << 8
+                    | (vehicle.getHorsePower() & 0xFFFFL) << 16;
+        }
+        return BUS | (vehicle.getHorsePower() & 0xFFFFL) << 16
+                | (long) ((Bus) vehicle).getWeight() << 32;
+    }
+
+    /**
+     * Builds a vehicle object from a record made by pack.
+     *
+     * @param record the packed record
+     * @return a new Car or Bus, or null for an empty record
+     */
+    static Vehicle unpack(long record) {
+        switch (typeOf(record)) {
+            case CAR:
+                return new Car(horsePowerOf(record), (int) (record >>> 8) & 0xFF);
+            case BUS:
+                return new Bus(horsePowerOf(record), weightOf(record));
+            default:
+                return null;
+        }
+    }
+
+    private long read(int index) {
+        return segments[index >>> SEGMENT_SHIFT].getLong((index & SEGMENT_MASK) * RECORD_BYTES);
+    }
+
+    private void write(int index, long record) {
+        segments[index >>> SEGMENT_SHIFT].putLong((index & SEGMENT_MASK) * RECORD_BYTES, record);
+    }
+
+    private static byte typeOf(long record) {
+        return (byte) record;
+    }
+
+    private static int horsePowerOf(long record) {
+        return (int) (record >>> 16) & 0xFFFF;
+    }
+
+    private static int weightOf(long record) {
+        return (int) (record >>> 32);
+    }
+}
@@ -0,0 +1,172 @@
+package onelanetraffic;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.random.RandomGenerator;
+
+/**
+ * A slot index kept in direct (off-heap) memory, which OffHeapRoadStorage
+ * builds so that a road larger than the heap does not need an index on the
+ * heap either.
+ *
+ * Occupied positions are bits of a bitmap, 64 per word, and a Fenwick tree
+ * counts the occupied positions of the words, so picking or updating a
+ * position takes O(log n). Both take about 0.19 bytes per position, none of
+ * them on the heap. A copy copies both buffers, which is small next to the
+ * 8 bytes per position the storage copies.
+ *
+ * @author Lehan Zhang
+ */
+public class OffHeapSlotIndex implements SlotIndex {
+    private final int size; // number of positions
+    private final int words; // 64-bit words of the bitmap
+    private final ByteBuffer bits; // one bit per position, set if it is occupied
+    private final ByteBuffer tree; // Fenwick tree (1-based) of the occupied positions per word, one int per node
+    private int occupiedCount;
+
+    /**
+     * Builds the index for the current content of a road storage.
+     *
+     * @param storage the storage to index
+     */
+    public OffHeapSlotIndex(RoadStorage storage) {
+        this(storage.size());
+        for (int word = 0; word < words; word++) {
+            int start = word << 6;
+            int end = (int) Math.min(size, start + 64L);
+            long value = 0;
+            for (int position = start; position < end; position++) {
+                if (storage.type(position) != RoadStorage.EMPTY) {
+                    value |= 1L << position;
+                }
+            }
+            bits.putLong(word * 8, value);
+            tree.putInt((word + 1) * 4, Long.bitCount(value));
+            occupiedCount += Long.bitCount(value);
+        }
+        for (int node = 1; node <= words; node++) {
+            int parent = node + (node & -node);
+            if (parent <= words) {
+                tree.putInt(parent * 4, tree.getInt(parent * 4) + tree.getInt(node * 4));
+            }
+        }
+    }
+
+    /**
+     * Creates an index with zeroed buffers, where every position is free.
+     */
+    private OffHeapSlotIndex(int size) {
+        this.size = size;
+        words = (int) (((long) size + 63) >>> 6);
+        bits = ByteBuffer.allocateDirect(words * 8).order(ByteOrder.nativeOrder());
+        tree = ByteBuffer.allocateDirect((words + 1) * 4).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Marks a free position as occupied. Does nothing if it is already occupied.
+     *
+     * @param position the 0-based position
+     */
+    public void occupy(int position) {
+        long word = bits.getLong((position >>> 6) * 8);
+        if ((word & (1L << position)) == 0) {
+            bits.putLong((position >>> 6) * 8, word | (1L << position));
+            add(position >>> 6, 1);
+            occupiedCount++;
+        }
+    }
+
+    /**
+     * Marks an occupied position as free. Does nothing if it is already free.
+     *
+     * @param position the 0-based position
+     */
+    public void vacate(int position) {
+        long word = bits.getLong((position >>> 6) * 8);
+        if ((word & (1L << position)) != 0) {
+            bits.putLong((position >>> 6) * 8, word & ~(1L << position));
+            add(position >>> 6, -1);
+            occupiedCount--;
+        }
+    }
+
+    /**
+     * Picks an occupied position uniformly at random.
+     *
+     * @param rand the random source
+     * @return an occupied position, or -1 if there is none
+     */
+    public int randomOccupied(RandomGenerator rand) {
+        if (occupiedCount == 0) {
+            return -1;
+        }
+        return select(rand.nextInt(occupiedCount), false);
+    }
+
+    /**
+     * Picks a free position uniformly at random.
+     *
+     * @param rand the random source
+     * @return a free position, or -1 if there is none
+     */
+    public int randomFree(RandomGenerator rand) {
+        int freeCount = size - occupiedCount;
+        if (freeCount == 0) {
+            return -1;
+        }
+        return select(rand.nextInt(freeCount), true);
+    }
+
+    /**
+     * Returns the number of occupied positions.
+     *
+     * @return the occupied count
+     */
+    public int getOccupiedCount() {
+        return occupiedCount;
+    }
+
+    /**
+     * Creates a copy of this index in new direct buffers.
+     *
+     * @return a new OffHeapSlotIndex of the same positions
+     */
+    public SlotIndex copy() {
+        OffHeapSlotIndex clone = new OffHeapSlotIndex(size);
+        clone.bits.put(0, bits, 0, bits.capacity());
+        clone.tree.put(0, tree, 0, tree.capacity());
+        clone.occupiedCount = occupiedCount;
+        return clone;
+    }
+
+    /**
+     * Finds the k-th occupied (or free) position, counting from 0 at the start
+     * of the road, by walking down the Fenwick tree. The free positions past
+     * the end of the road in the last word only come after all real ones.
+     */
+    private int select(int k, boolean free) {
+        int word = 0; // words wholly before the position, as the tree is walked down
+        for (int step = Integer.highestOneBit(words); step > 0; step >>>= 1) {
+            int node = word + step;
+            if (node <= words) {
+                int occupied = tree.getInt(node * 4);
+                int count = free ? (step << 6) - occupied : occupied; // a node counts the step words before it
+                if (count <= k) {
+                    word = node;
+                    k -= count;
+                }
+            }
+        }
+        long value = bits.getLong(word * 8);
+        return (word << 6) + PersistentSlotIndex.selectBit(free ? ~value : value, k);
+    }
+
+    /**
+     * Adds delta to the count of a word in the Fenwick tree.
+     */
+    private void add(int word, int delta) {
+        for (int node = word + 1; node <= words; node += node & -node) {
+            tree.putInt(node * 4, tree.getInt(node * 4) + delta);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package onelanetraffic;
+
+import exceptionclasses.EmptyQueueException;
+import queues.PersistentQueue;
+
+/**
+ * The default reuse pool: a persistent queue of the crashed vehicles, so that a
+ * copy shares the queue and costs O(1).
+ *
+ * @author Lehan Zhang
+ */
+public class PersistentReusePool implements ReusePool {
+    private PersistentQueue<Vehicle> reusePool; // the current version of the queue of crashed vehicles that can be reused
+
+    /**
+     * Default constructor for the PersistentReusePool class.
+     * Starts with an empty queue of reusable vehicles.
+     */
+    public PersistentReusePool() {
+        reusePool = new PersistentQueue<>();
+    }
+
+    /**
+     * Recycles a vehicle by adding a crashed vehicle to the reuse pool.
+     * This allows the vehicle to be reused later if needed.
+     *
+     * @param crashedVehicle the vehicle that has been crashed and is to be recycled
+     */
+    public void recycleVehicle(Vehicle crashedVehicle) {
+        reusePool = reusePool.enqueue(crashedVehicle);
+    }
+
+    /**
+     * Retrieves and removes a vehicle from the reuse pool for reuse.
+     * If the pool is empty, an EmptyQueueException is thrown.
+     *
+     * @return the first vehicle object stored in the reuse pool
+     * @throws EmptyQueueException if the reuse pool is empty
+     */
+    public Vehicle reuseVehicle() throws EmptyQueueException {
+        if (reusePool.isEmpty()) {
+            throw new EmptyQueueException("The pool is empty, there is no vehicle to reuse.");
+        }
+        Vehicle vehicle = reusePool.front();
+        reusePool = reusePool.dequeue();
+        return vehicle;
+    }
+
+    /**
+     * Takes back the vehicle most recently added to the rear of the pool.
+     * Used when a recycle is undone.
+     *
+     * @throws EmptyQueueException if the reuse pool is empty
+     */
+    public void undoRecycle() throws EmptyQueueException {
+        reusePool = reusePool.removeLast();
+    }
+
+    /**
+     * Puts a reused vehicle back at the front of the pool.
+     * Used when a reuse is undone.
+     *
+     * @param reusedVehicle the vehicle that was taken from the front of the pool
+     */
+    public void undoReuse(Vehicle reusedVehicle) {
+        reusePool = reusePool.addFirst(reusedVehicle);
+    }
+
+    /**
+     * Returns the number of vehicles waiting in the pool.
+     *
+     * @return the number of vehicles in the pool
+     */
+    public int size() {
+        return reusePool.size();
+    }
+
+    /**
+     * Creates a copy of the current PersistentReusePool object in constant time.
+     * The queue never changes once built, so the copy shares it with this pool;
+     * recycling or reusing a vehicle in either pool afterwards does not affect the other.
+     *
+     * @return a new PersistentReusePool object holding the same vehicles in the same order
+     */
+    public ReusePool copy() {
+        PersistentReusePool newPool = new PersistentReusePool();
+        newPool.reusePool = reusePool;
+        return newPool;
+    }
+
+    /**
+     * Returns a string representation of the PersistentReusePool object
+     *
+     * @return a string describing the vehicles in the reusePool
+     */
+    @Override
+    public String toString() {
+        return "\nVehicles in the repair shop:\n" + reusePool.toString();
+    }
+
+}
+
@@ -0,0 +1,162 @@
+package onelanetraffic;
+
+/**
+ * A road storage built as a persistent vector: a 32-way trie whose leaves hold
+ * the vehicles. Copies share the whole trie, so copy() is O(1). Writing a slot
+ * copies only the nodes on the path from the root to that slot (O(log n) of them),
+ * and only the first time the path is written after a copy; until the next copy,
+ * the nodes this storage made itself are changed in place.
+ *
+ * Empty parts of the road have no nodes at all, so an empty road costs almost nothing.
+ *
+ * @author Lehan Zhang
+ */
+public class PersistentRoadStorage implements RoadStorage {
+    private static final int BITS = 5; // index bits consumed per trie level
+    private static final int WIDTH = 1 << BITS; // children per node
+    private static final int MASK = WIDTH - 1;
+
+    private final int size; // number of slots
+    private final int shift; // bit shift of the root level, 0 when the root is a leaf
+    private Node root;
+    private Object owner; // token marking the nodes this storage may change in place
+
+    /**
+     * A trie node; inner nodes hold child nodes, leaves hold vehicles.
+     */
+    private static class Node {
+        private final Object owner; // the storage token that created this node
+        private final Object[] slots;
+
+        private Node(Object owner, Object[] slots) {
+            this.owner = owner;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * Creates an empty storage with the given number of slots.
+     *
+     * @param size the number of positions on the road
+     */
+    public PersistentRoadStorage(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Road size cannot be negative: " + size);
+        }
+        int levelShift = 0;
+        while (((long) WIDTH << levelShift) < size) {
+            levelShift += BITS;
+        }
+        this.size = size;
+        this.shift = levelShift;
+        this.owner = new Object();
+        this.root = new Node(owner, new Object[WIDTH]);
+    }
+
+    /**
+     * Creates a storage that shares the given trie.
+     */
+    private PersistentRoadStorage(int size, int shift, Node root) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.owner = new Object();
+    }
+
+    /**
+     * Returns the vehicle at the given index by walking down the trie.
+     *
+     * @param index the 0-based index
+     * @return the vehicle, or null if the slot is empty
+     */
+    public Vehicle get(int index) {
+        checkIndex(index);
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            node = (Node) node.slots[(index >>> level) & MASK];
+            if (node == null) {
+                return null;
+            }
+        }
+        return (Vehicle) node.slots[index & MASK];
+    }
+
+    /**
+     * Stores a vehicle at the given index, copying the nodes on its path that
+     * are shared with a copy of this storage.
+     *
+     * @param index the 0-based index
+     * @param vehicle the vehicle to store, or null to empty the slot
+     */
+    public void set(int index, Vehicle vehicle) {
+        checkIndex(index);
+        root = editable(root);
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS) {
+            int i = (index >>> level) & MASK;
+            Node child = (Node) node.slots[i];
+            if (child == null) {
+                if (vehicle == null) {
+                    return; // the slot is already empty
+                }
+                child = new Node(owner, new Object[WIDTH]);
+            } else {
+                child = editable(child);
+            }
+            node.slots[i] = child;
+            node = child;
+        }
+        node.slots[index & MASK] = vehicle;
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the size of the road
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Creates a copy that shares the whole trie with this storage.
+     * Both storages get a new owner token, so neither can change shared nodes in place.
+     *
+     * @return a new PersistentRoadStorage holding the same vehicles
+     */
+    public RoadStorage copy() {
+        owner = new Object();
+        return new PersistentRoadStorage(size, shift, root);
+    }
+
+    /**
+     * A copy shares the trie, so what it costs is the nodes the next move
+     * copies: a path from the root for each of the two slots it typically
+     * writes.
+     *
+     * @return the estimated size of a copy in bytes
+     */
+    public long estimatedCopyBytes() {
+        long nodeBytes = 32 + 16 + 4L * WIDTH; // the node, its slot array and the references in it
+        return 2 * (shift / BITS + 1) * nodeBytes;
+    }
+
+    /**
+     * Returns the node itself if this storage owns it, otherwise a private copy of it.
+     */
+    private Node editable(Node node) {
+        if (node.owner == owner) {
+            return node;
+        }
+        return new Node(owner, node.slots.clone());
+    }
+
+    /**
+     * Throws if the index is outside the road, like an array would.
+     */
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new ArrayIndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+}
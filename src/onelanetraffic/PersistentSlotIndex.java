@@ -0,0 +1,321 @@
+package onelanetraffic;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * A slot index kept in a persistent counting trie, so that copy() is O(1) and
+ * a road copy can take its index along instead of rebuilding it from the
+ * storage.
+ *
+ * The leaves are bitmaps of 512 positions, one bit per position that is set
+ * while the position is occupied. Inner nodes have 32 children and count the
+ * occupied positions below each of them, so the k-th occupied or free
+ * position is found by walking down the counts, and picking or updating a
+ * position takes O(log n) (at most five levels). Parts of the road without
+ * any vehicle have no nodes at all.
+ *
+ * Like PersistentRoadStorage, every node carries the token of the index that
+ * created it. copy() gives this index a new token, so the shared nodes are
+ * copied before they are written, and only along the paths to the positions
+ * that change.
+ *
+ * @author Lehan Zhang
+ */
+public class PersistentSlotIndex implements SlotIndex {
+    private static final int WORD_BITS = 6; // positions per bitmap word, as a power of two
+    private static final int LEAF_BITS = 9; // positions per leaf, as a power of two
+    private static final int LEAF_WORDS = 1 << (LEAF_BITS - WORD_BITS); // bitmap words per leaf
+    private static final int BITS = 5; // position bits consumed per inner level
+    private static final int WIDTH = 1 << BITS; // children per inner node
+    private static final int MASK = WIDTH - 1;
+
+    private final int size; // number of positions
+    private final int shift; // bit shift of the root level, 0 when the root is a leaf
+    private Node root;
+    private int occupiedCount;
+    private Object owner; // token marking the nodes this index may change in place
+
+    /**
+     * A trie node; inner nodes hold child nodes and their counts, leaves hold bits.
+     */
+    private static class Node {
+        private final Object owner; // the index token that created this node
+        private final Node[] children; // null for a leaf; null entries have no occupied position
+        private final int[] counts; // occupied positions below each child, null for a leaf
+        private final long[] bits; // one bit per position of a leaf, null for an inner node
+
+        private Node(Object owner, Node[] children, int[] counts, long[] bits) {
+            this.owner = owner;
+            this.children = children;
+            this.counts = counts;
+            this.bits = bits;
+        }
+    }
+
+    /**
+     * Builds the index for the current content of a road storage, one leaf at a time.
+     *
+     * @param storage the storage to index
+     */
+    public PersistentSlotIndex(RoadStorage storage) {
+        size = storage.size();
+        int levelShift = 0;
+        if (size > 1 << LEAF_BITS) {
+            levelShift = LEAF_BITS;
+            while (((long) WIDTH << levelShift) < size) {
+                levelShift += BITS;
+            }
+        }
+        shift = levelShift;
+        owner = new Object();
+        root = newNode(shift == 0);
+
+        long[] bits = new long[LEAF_WORDS];
+        for (long start = 0; start < size; start += 1 << LEAF_BITS) {
+            int end = (int) Math.min(size, start + (1 << LEAF_BITS));
+            int count = 0;
+            for (int position = (int) start; position < end; position++) {
+                if (storage.type(position) != RoadStorage.EMPTY) {
+                    bits[wordOf(position)] |= 1L << position;
+                    count++;
+                }
+            }
+            if (count > 0) {
+                addLeaf((int) start, bits, count);
+                bits = new long[LEAF_WORDS];
+            }
+        }
+    }
+
+    /**
+     * Creates an index that shares the given trie.
+     */
+    private PersistentSlotIndex(int size, int shift, Node root, int occupiedCount) {
+        this.size = size;
+        this.shift = shift;
+        this.root = root;
+        this.occupiedCount = occupiedCount;
+        this.owner = new Object();
+    }
+
+    /**
+     * Marks a free position as occupied. Does nothing if it is already occupied.
+     *
+     * @param position the 0-based position
+     */
+    public void occupy(int position) {
+        if (isOccupied(position)) {
+            return;
+        }
+        root = editable(root);
+        Node node = root;
+        for (int level = shift; level >= LEAF_BITS; level -= BITS) {
+            int i = (position >>> level) & MASK;
+            node.counts[i]++;
+            Node child = node.children[i];
+            child = child == null ? newNode(level == LEAF_BITS) : editable(child);
+            node.children[i] = child;
+            node = child;
+        }
+        node.bits[wordOf(position)] |= 1L << position;
+        occupiedCount++;
+    }
+
+    /**
+     * Marks an occupied position as free. Does nothing if it is already free.
+     *
+     * @param position the 0-based position
+     */
+    public void vacate(int position) {
+        if (!isOccupied(position)) {
+            return;
+        }
+        occupiedCount--;
+        root = editable(root);
+        Node node = root;
+        for (int level = shift; level >= LEAF_BITS; level -= BITS) {
+            int i = (position >>> level) & MASK;
+            node.counts[i]--;
+            if (node.counts[i] == 0) {
+                node.children[i] = null; // that was the last vehicle below this child
+                return;
+            }
+            Node child = editable(node.children[i]);
+            node.children[i] = child;
+            node = child;
+        }
+        node.bits[wordOf(position)] &= ~(1L << position);
+    }
+
+    /**
+     * Picks an occupied position uniformly at random.
+     *
+     * @param rand the random source
+     * @return an occupied position, or -1 if there is none
+     */
+    public int randomOccupied(RandomGenerator rand) {
+        if (occupiedCount == 0) {
+            return -1;
+        }
+        return select(rand.nextInt(occupiedCount), false);
+    }
+
+    /**
+     * Picks a free position uniformly at random.
+     *
+     * @param rand the random source
+     * @return a free position, or -1 if there is none
+     */
+    public int randomFree(RandomGenerator rand) {
+        int freeCount = size - occupiedCount;
+        if (freeCount == 0) {
+            return -1;
+        }
+        return select(rand.nextInt(freeCount), true);
+    }
+
+    /**
+     * Returns the number of occupied positions.
+     *
+     * @return the occupied count
+     */
+    public int getOccupiedCount() {
+        return occupiedCount;
+    }
+
+    /**
+     * Creates a copy that shares the whole trie with this index.
+     *
+     * @return a new PersistentSlotIndex of the same positions
+     */
+    public SlotIndex copy() {
+        owner = new Object();
+        return new PersistentSlotIndex(size, shift, root, occupiedCount);
+    }
+
+    /**
+     * Checks whether a position is occupied by walking down the trie.
+     */
+    private boolean isOccupied(int position) {
+        Node node = root;
+        for (int level = shift; level >= LEAF_BITS; level -= BITS) {
+            node = node.children[(position >>> level) & MASK];
+            if (node == null) {
+                return false;
+            }
+        }
+        return (node.bits[wordOf(position)] & (1L << position)) != 0;
+    }
+
+    /**
+     * Finds the k-th occupied (or free) position, counting from 0 at the start of the road.
+     * Free positions past the end of the road only come after all real ones, so
+     * they are never reached for k below the number of free positions.
+     */
+    private int select(int k, boolean free) {
+        Node node = root;
+        int base = 0;
+        for (int level = shift; level >= LEAF_BITS; level -= BITS) {
+            int i = 0;
+            while (true) {
+                int count = free ? (1 << level) - node.counts[i] : node.counts[i];
+                if (k < count) {
+                    break;
+                }
+                k -= count;
+                i++;
+            }
+            base += i << level;
+            node = node.children[i];
+            if (node == null) {
+                return base + k; // nothing below is occupied, so only free positions lead here
+            }
+        }
+        for (int w = 0; ; w++) {
+            long word = free ? ~node.bits[w] : node.bits[w];
+            int count = Long.bitCount(word);
+            if (k < count) {
+                return base + (w << WORD_BITS) + selectBit(word, k);
+            }
+            k -= count;
+        }
+    }
+
+    /**
+     * Finds the k-th set bit of a word, counting from 0 at the lowest bit, by
+     * halving the part of the word it is in.
+     *
+     * @param word the word
+     * @param k which set bit, below the number of set bits in the word
+     * @return the bit number, 0 to 63
+     */
+    static int selectBit(long word, int k) {
+        int bit = 0;
+        for (int width = 32; width > 0; width >>>= 1) {
+            long low = word & ((1L << width) - 1);
+            int count = Long.bitCount(low);
+            if (k < count) {
+                word = low;
+            } else {
+                k -= count;
+                word >>>= width;
+                bit += width;
+            }
+        }
+        return bit;
+    }
+
+    /**
+     * Hangs a leaf built by the constructor into the trie.
+     */
+    private void addLeaf(int start, long[] bits, int count) {
+        occupiedCount += count;
+        if (shift == 0) {
+            root = new Node(owner, null, null, bits);
+            return;
+        }
+        Node node = root;
+        for (int level = shift; ; level -= BITS) {
+            int i = (start >>> level) & MASK;
+            node.counts[i] += count;
+            if (level == LEAF_BITS) {
+                node.children[i] = new Node(owner, null, null, bits);
+                return;
+            }
+            if (node.children[i] == null) {
+                node.children[i] = newNode(false);
+            }
+            node = node.children[i];
+        }
+    }
+
+    /**
+     * Creates an empty node owned by this index.
+     */
+    private Node newNode(boolean leaf) {
+        if (leaf) {
+            return new Node(owner, null, null, new long[LEAF_WORDS]);
+        }
+        return new Node(owner, new Node[WIDTH], new int[WIDTH], null);
+    }
+
+    /**
+     * Returns the node itself if this index owns it, otherwise a private copy of it.
+     */
+    private Node editable(Node node) {
+        if (node.owner == owner) {
+            return node;
+        }
+        if (node.bits != null) {
+            return new Node(owner, null, null, node.bits.clone());
+        }
+        return new Node(owner, node.children.clone(), node.counts.clone(), null);
+    }
+
+    /**
+     * Returns the index of the bitmap word of a position within its leaf.
+     */
+    private static int wordOf(int position) {
+        return (position >>> WORD_BITS) & (LEAF_WORDS - 1);
+    }
+}
@@ -0,0 +1,140 @@
+package onelanetraffic;
+
+/**
+ * A road storage that keeps the vehicle fields in parallel primitive arrays
+ * (struct of arrays) instead of an array of vehicle objects: the type code,
+ * horsepower, bus weight and car color index of each slot.
+ *
+ * Moves and collision checks only read and write these arrays, so they need
+ * neither pointer chasing nor allocation. A vehicle object is only created
+ * when get() is called, e.g. when a crashed vehicle goes to the reuse pool
+ * or the road is printed.
+ *
+ * @author Lehan Zhang
+ */
+public class PrimitiveRoadStorage implements RoadStorage {
+    private byte[] types; // EMPTY, CAR or BUS
+    private short[] horsePowers;
+    private int[] weights; // only used for buses
+    private byte[] colors; // only used for cars
+
+    /**
+     * Creates an empty storage with the given number of slots.
+     *
+     * @param size the number of positions on the road
+     */
+    public PrimitiveRoadStorage(int size) {
+        types = new byte[size];
+        horsePowers = new short[size];
+        weights = new int[size];
+        colors = new byte[size];
+    }
+
+    /**
+     * Builds a vehicle object from the fields stored at the given index.
+     *
+     * @param index the 0-based index
+     * @return a new Car or Bus, or null if the slot is empty
+     */
+    public Vehicle get(int index) {
+        switch (types[index]) {
+            case CAR:
+                return new Car(horsePowers[index], colors[index]);
+            case BUS:
+                return new Bus(horsePowers[index], weights[index]);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Stores the fields of a vehicle at the given index.
+     *
+     * @param index the 0-based index
+     * @param vehicle the vehicle to store, or null to empty the slot
+     */
+    public void set(int index, Vehicle vehicle) {
+        if (vehicle == null) {
+            types[index] = EMPTY;
+        } else if (vehicle.isCar()) {
+            types[index] = CAR;
+            horsePowers[index] = (short) vehicle.getHorsePower();
+            colors[index] = (byte) ((Car) vehicle).getColorIndex();
+        } else {
+            types[index] = BUS;
+            horsePowers[index] = (short) vehicle.getHorsePower();
+            weights[index] = ((Bus) vehicle).getWeight();
+        }
+    }
+
+    /**
+     * Returns the number of slots.
+     *
+     * @return the size of the road
+     */
+    public int size() {
+        return types.length;
+    }
+
+    /**
+     * Creates a copy of this storage by cloning the arrays.
+     *
+     * @return a new PrimitiveRoadStorage with the same vehicles
+     */
+    public RoadStorage copy() {
+        PrimitiveRoadStorage clone = new PrimitiveRoadStorage(0);
+        clone.types = types.clone();
+        clone.horsePowers = horsePowers.clone();
+        clone.weights = weights.clone();
+        clone.colors = colors.clone();
+        return clone;
+    }
+
+    /**
+     * A copy clones the four field arrays: 8 bytes per slot.
+     *
+     * @return the estimated size of a copy in bytes
+     */
+    public long estimatedCopyBytes() {
+        return 64 + 8L * types.length;
+    }
+
+    public byte type(int index) {
+        return types[index];
+    }
+
+    public int horsePower(int index) {
+        return horsePowers[index];
+    }
+
+    public int weight(int index) {
+        return weights[index];
+    }
+
+    public int colorIndex(int index) {
+        return colors[index];
+    }
+
+    /**
+     * Copies the fields of one slot to another and empties the first.
+     *
+     * @param from the index of the vehicle to move
+     * @param to the index it moves to
+     */
+    public void move(int from, int to) {
+        types[to] = types[from];
+        horsePowers[to] = horsePowers[from];
+        weights[to] = weights[from];
+        colors[to] = colors[from];
+        types[from] = EMPTY;
+    }
+
+    /**
+     * Slots are separate elements of each field array, so different slots can be written from different threads.
+     *
+     * @return true
+     */
+    public boolean isSegmentable() {
+        return true;
+    }
+}
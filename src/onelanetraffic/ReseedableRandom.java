@@ -0,0 +1,78 @@
+package onelanetraffic;
+
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
+
+/**
+ * A random source whose sequence can be restarted from a new seed in place.
+ * Every copy of a road shares the random source of the road it was copied
+ * from, so reseeding it reseeds every saved state of the road as well.
+ *
+ * DurableSimulation draws a new seed from it at each snapshot and records the
+ * seed in the snapshot, so a recovered run draws the same numbers as the run
+ * that was killed. Between reseeds it draws exactly what a SplittableRandom
+ * with the same seed draws.
+ *
+ * @author Lehan Zhang
+ */
+public class ReseedableRandom implements RandomGenerator {
+    private SplittableRandom rand; // the sequence since the latest seed
+
+    /**
+     * Creates a random source with the given seed.
+     *
+     * @param seed the seed of the sequence
+     */
+    public ReseedableRandom(long seed) {
+        rand = new SplittableRandom(seed);
+    }
+
+    /**
+     * Restarts the sequence from a new seed.
+     *
+     * @param seed the seed of the new sequence
+     */
+    public void reseed(long seed) {
+        rand = new SplittableRandom(seed);
+    }
+
+    public int nextInt() {
+        return rand.nextInt();
+    }
+
+    public int nextInt(int bound) {
+        return rand.nextInt(bound);
+    }
+
+    public int nextInt(int origin, int bound) {
+        return rand.nextInt(origin, bound);
+    }
+
+    public long nextLong() {
+        return rand.nextLong();
+    }
+
+    public long nextLong(long bound) {
+        return rand.nextLong(bound);
+    }
+
+    public long nextLong(long origin, long bound) {
+        return rand.nextLong(origin, bound);
+    }
+
+    public double nextDouble() {
+        return rand.nextDouble();
+    }
+
+    public double nextDouble(double bound) {
+        return rand.nextDouble(bound);
+    }
+
+    public double nextDouble(double origin, double bound) {
+        return rand.nextDouble(origin, bound);
+    }
+
+    public boolean nextBoolean() {
+        return rand.nextBoolean();
+    }
+}
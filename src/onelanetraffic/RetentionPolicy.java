@@ -0,0 +1,168 @@
+package onelanetraffic;
+
+/**
+ * Decides how many previous road states a SnapshotHistory keeps. A policy may
+ * cap the number of states, cap their estimated size in bytes, and thin out
+ * old states so that only every k-th one is kept; once a cap is reached, the
+ * oldest states are evicted first. Undo then reaches back only as far as the
+ * oldest state kept.
+ *
+ * With decimation the newest states are all kept, so recent moves are undone
+ * one at a time. Further back, an undo step lands on the next older kept state
+ * and so takes back up to k moves at once.
+ *
+ * Policies are immutable and can be shared between histories.
+ *
+ * @author Lehan Zhang
+ */
+public final class RetentionPolicy {
+    private static final RetentionPolicy UNLIMITED = new RetentionPolicy(0, 0, 0, 1);
+
+    private final int maxDepth; // most states kept, 0 for no limit
+    private final long maxBytes; // most estimated bytes kept, 0 for no limit
+    private final int recent; // newest states that are never thinned out
+    private final int every; // k: of the older states, those of every k-th move are kept
+
+    /**
+     * Creates a policy that combines the given limits.
+     *
+     * @param maxDepth the most states kept, or 0 for no limit
+     * @param maxBytes the most estimated bytes the kept states take, or 0 for no limit
+     * @param recent the number of newest states kept in full when decimating
+     * @param every keep only every k-th state older than the recent ones; 1 keeps them all
+     * @throws IllegalArgumentException if a limit is negative or every is less than 1
+     */
+    public RetentionPolicy(int maxDepth, long maxBytes, int recent, int every) {
+        if (maxDepth < 0 || maxBytes < 0 || recent < 0) {
+            throw new IllegalArgumentException("Retention limits cannot be negative");
+        }
+        if (every < 1) {
+            throw new IllegalArgumentException("Decimation step must be at least 1: " + every);
+        }
+        this.maxDepth = maxDepth;
+        this.maxBytes = maxBytes;
+        this.recent = recent;
+        this.every = every;
+    }
+
+    /**
+     * Returns the policy that keeps every state, like the original history.
+     *
+     * @return the unlimited policy
+     */
+    public static RetentionPolicy unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * Returns a policy that keeps at most the given number of newest states.
+     *
+     * @param maxDepth the most states kept, at least 1
+     * @return the policy
+     */
+    public static RetentionPolicy maxDepth(int maxDepth) {
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("Maximum depth must be at least 1: " + maxDepth);
+        }
+        return new RetentionPolicy(maxDepth, 0, 0, 1);
+    }
+
+    /**
+     * Returns a policy that keeps the newest states that fit in the given
+     * number of bytes, as estimated by Road.estimatedCopyBytes.
+     *
+     * @param maxBytes the most estimated bytes the kept states take, at least 1
+     * @return the policy
+     */
+    public static RetentionPolicy maxBytes(long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Maximum bytes must be at least 1: " + maxBytes);
+        }
+        return new RetentionPolicy(0, maxBytes, 0, 1);
+    }
+
+    /**
+     * Returns a policy that keeps the newest states in full and, of the older
+     * ones, only the state before every k-th move.
+     *
+     * @param recent the number of newest states kept in full
+     * @param every k, at least 1
+     * @return the policy
+     */
+    public static RetentionPolicy decimated(int recent, int every) {
+        return new RetentionPolicy(0, 0, recent, every);
+    }
+
+    /**
+     * Checks whether the policy ever drops a state.
+     *
+     * @return true if every state is kept; false otherwise
+     */
+    public boolean isUnlimited() {
+        return maxDepth == 0 && maxBytes == 0 && every == 1;
+    }
+
+    /**
+     * Returns the most states kept.
+     *
+     * @return the maximum depth, or 0 for no limit
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Returns the most estimated bytes the kept states take.
+     *
+     * @return the byte budget, or 0 for no limit
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Returns the number of newest states that are never thinned out.
+     *
+     * @return the size of the recent window
+     */
+    public int getRecent() {
+        return recent;
+    }
+
+    /**
+     * Returns k: of the states older than the recent ones, only every k-th is kept.
+     *
+     * @return the decimation step, 1 if no state is thinned out
+     */
+    public int getEvery() {
+        return every;
+    }
+
+    /**
+     * Checks whether a state that leaves the recent window is kept.
+     *
+     * @param step the number of moves the road had made when the state was saved
+     * @return true if the state is kept; false if it is dropped
+     */
+    public boolean keepsOld(long step) {
+        return step % every == 0;
+    }
+
+    @Override
+    public String toString() {
+        if (isUnlimited()) {
+            return "unlimited";
+        }
+        String str = "";
+        if (maxDepth > 0) {
+            str += "max depth " + maxDepth + ", ";
+        }
+        if (maxBytes > 0) {
+            str += "max bytes " + maxBytes + ", ";
+        }
+        if (every > 1) {
+            str += "the " + recent + " newest and every " + every + "th older state, ";
+        }
+        return str.substring(0, str.length() - 2);
+    }
+}
@@ -1,20 +1,37 @@
 package onelanetraffic;
 
-import java.util.Random;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.random.RandomGenerator;
 import exceptionclasses.*;
 
 /**
  * Represents a one-lane road containing vehicles (cars and buses).
  * Manages vehicle movement, collisions, and road state in the traffic simulation.
- * The road is implemented as an array where each index represents a position on the road.
+ * The road is implemented as a RoadStorage where each index represents a position on the road.
  *
  * @author Lehan Zhang
  */
 public class Road {
-    private Vehicle[] vehicles; // an array that stores vehicle objects
+    /**  Placement passed to replayMove when the caller adds the repaired vehicle itself. */
+    static final int DEFERRED_PLACEMENT = -2;
+
+    private RoadStorage vehicles; // stores the vehicle objects, one slot per position
     private int numVehicles; // The number of vehicles on the road
     private int current; // the array index of the current vehicle to be processed with command
-    private ReusePool reusePool = new ReusePool(); // use a linkedQueue to store the crashed vehicles for later reuse
+    private ReusePool reusePool = new PersistentReusePool(); // use a linkedQueue to store the crashed vehicles for later reuse
+    private RandomGenerator rand; // the single random source of this road and the vehicles it creates
+    private SlotIndex slots; // occupied and free positions, built when first needed and copied with the road
+    private RoadRecorder recorder; // records changes for the history store in use, otherwise null
+    private SimulationEventListener events = SimulationEventListener.NONE; // receives what happens on the road
+    private boolean reporting; // false when events would be dropped anyway, so none are built
+    private boolean withVehicles; // false when the listener ignores the vehicles of events, so none are built for them
+    private boolean replaying; // true while a recorded move is repeated, which reports nothing
+    private int replayPlacement; // index a repaired vehicle is placed at while replaying
+    private int lastPlacement = -1; // index the last move placed a repaired vehicle at, -1 if none
+    private boolean[] changed; // true for positions written since the changes were cleared, null if not tracked
+    private int[] changes; // the array indexes marked in changed, in the order they first changed
+    private int changeCount; // number of entries in changes
 
     /**
      * initialize an empty road with a given size
@@ -23,10 +40,21 @@ public class Road {
      * @param size the size of the vehicles array
      */
     public Road(int size) {
+        this(new ArrayRoadStorage(size));
+    }
+
+    /**
+     * initialize an empty road that keeps its vehicles in the given storage
+     * set numVehicles, current, and reusePool to intial value
+     *
+     * @param storage an empty road storage; its size is the size of the road
+     */
+    public Road(RoadStorage storage) {
         numVehicles = 0;
-        vehicles = new Vehicle[size];
+        vehicles = storage;
         current = 0;
-        reusePool = new ReusePool();
+        reusePool = new PersistentReusePool();
+        rand = new SplittableRandom();
     }
 
     /**
@@ -37,19 +65,62 @@ public class Road {
      * @param numVehicles number of vehicles on the road
      */
     public Road(int size, int numVehicles) {
-        vehicles = new Vehicle[size];
+        this(new ArrayRoadStorage(size), numVehicles);
+    }
+
+    /**
+     * Constructs a new road on top of the given storage and populates it with a
+     * certain number of vehicles.
+     *
+     * @param storage an empty road storage; its size is the size of the road
+     * @param numVehicles number of vehicles on the road
+     */
+    public Road(RoadStorage storage, int numVehicles) {
+        this(storage, numVehicles, new SplittableRandom());
+    }
+
+    /**
+     * Constructs a new road on top of the given storage and populates it with a
+     * certain number of vehicles. Every random choice of the road, including the
+     * properties of the vehicles it creates, is drawn from rand, so a seeded
+     * source (e.g. new SplittableRandom(seed)) makes the whole run reproducible.
+     *
+     * @param storage an empty road storage; its size is the size of the road
+     * @param numVehicles number of vehicles on the road
+     * @param rand the random source of the road
+     */
+    public Road(RoadStorage storage, int numVehicles, RandomGenerator rand) {
+        vehicles = storage;
         this.numVehicles = numVehicles;
+        this.rand = rand;
         populateRoad();
         setCurrent();
     }
 
     /**
-     * Retrieves the array of vehicles currently on the road.
+     * Wraps a storage that already holds its vehicles, e.g. one filled by a
+     * TickSimulation. No random choice is made, so rand is left untouched.
      *
-     * @return an array of Vehicle objects representing the vehicles on the road
+     * @param storage a filled road storage
+     * @param numVehicles number of vehicles in the storage
+     * @param reusePool the reuse pool of the road
+     * @param rand the random source of the road
      */
-    public Vehicle[] getVehicles() {
-        return vehicles;
+    Road(RoadStorage storage, int numVehicles, ReusePool reusePool, RandomGenerator rand) {
+        vehicles = storage;
+        this.numVehicles = numVehicles;
+        this.reusePool = reusePool;
+        this.rand = rand;
+    }
+
+    /**
+     * Retrieves the vehicle stored at an array index of the road.
+     *
+     * @param index the 0-based index on the road
+     * @return the vehicle at that index, or null if the position is empty
+     */
+    public Vehicle getVehicle(int index) {
+        return vehicles.get(index);
     }
 
     /**
@@ -72,35 +143,48 @@ public class Road {
 
     /**
      * Updates the current vehicle's position on the road.
-     * Attempts to randomly select a non-null vehicle to set as the current vehicle.
-     * If no vehicle can be randomly selected within the specified number of attempts (maxTries),
-     * a linear search is performed to find the first non-null vehicle.
+     * Picks a vehicle uniformly at random from the occupied positions, using the slot index.
+     * If the road is empty, the current position is left unchanged.
      */
     public void setCurrent() {
-        // limited loops try to find a random index for movement
-        Random rand = new Random();
-        int randomIndex = -1;
-        int maxTries = vehicles.length;
-        for (int i = 0; i < maxTries; i++) {
-            randomIndex = rand.nextInt(vehicles.length);
-            if (vehicles[randomIndex] != null) {
-                current = randomIndex;
-                break;
-            } else {
-                randomIndex = -1;
-            }
-        }
-        // use a linear approach if fail to randomly find one
-        if (randomIndex == -1) {
-            for (int i = 0; i < vehicles.length; i++) {
-                if (vehicles[i] != null) {
-                    current = i;
-                    break;
-                }
-            }
+        int randomIndex = slotIndex().randomOccupied(rand);
+        if (randomIndex != -1) {
+            current = randomIndex;
         }
     }
 
+    /**
+     * Sets the listener that receives the moves, collisions and reuse pool changes of this road.
+     * With SimulationEventListener.NONE (the default) no event objects or messages are built, and
+     * for a listener whose needsVehicles returns false the events get null instead of vehicles
+     * built only for them.
+     *
+     * @param listener the event listener, or SimulationEventListener.NONE
+     */
+    public void setEventListener(SimulationEventListener listener) {
+        this.events = listener;
+        this.reporting = listener != SimulationEventListener.NONE;
+        this.withVehicles = reporting && listener.needsVehicles();
+    }
+
+    /**
+     * Retrieves the event listener of the road.
+     *
+     * @return the listener that receives the events of this road
+     */
+    public SimulationEventListener getEventListener() {
+        return events;
+    }
+
+    /**
+     * Retrieves the random source of the road.
+     *
+     * @return the random generator all random choices of this road are drawn from
+     */
+    public RandomGenerator getRandom() {
+        return rand;
+    }
+
     /**
      * Retrieves the reuse pool associated with the road.
      *
@@ -120,12 +204,302 @@ public class Road {
     }
 
     /**
-     * Retrieves the size of the vehicles array on the road.
+     * Creates a deep copy of this road with all its fields (except current).
+     * Vehicles are immutable, so the copy shares them with this road; how much
+     * of the storage itself is shared depends on the RoadStorage implementation.
      *
-     * @return the size of the vehicles array
+     * @return a new Road with the same vehicles, vehicle count and reuse pool
+     */
+    public Road copy() {
+        Road clone = new Road(vehicles.copy());
+        clone.numVehicles = numVehicles;
+        clone.reusePool = reusePool.copy(); // shares the vehicles of the reusePool
+        if (slots != null) {
+            clone.slots = slots.copy(); // O(1) for the default index, so a restored road need not rebuild it
+        }
+        clone.rand = rand; // keep drawing from the same sequence after an undo
+        clone.setEventListener(events);
+        return clone;
+    }
+
+    /**
+     * Returns an estimate of the bytes a copy made by copy() adds: what the
+     * storage copy takes plus the road object itself. The reuse pool of a copy
+     * is shared, so it costs next to nothing.
+     *
+     * @return the estimated size of a copy in bytes
+     */
+    public long estimatedCopyBytes() {
+        return 64 + vehicles.estimatedCopyBytes();
+    }
+
+    /**
+     * Starts tracking which positions change, so that a renderer can show only
+     * those instead of the whole road. Copies of the road do not track changes.
+     */
+    public void trackChanges() {
+        if (changed == null) {
+            changed = new boolean[vehicles.size()];
+            changes = new int[vehicles.size()];
+            changeCount = 0;
+        }
+    }
+
+    /**
+     * Stops tracking changed positions and releases the tracking arrays.
+     */
+    public void stopTrackingChanges() {
+        changed = null;
+        changes = null;
+        changeCount = 0;
+    }
+
+    /**
+     * Checks whether the road tracks its changed positions.
+     *
+     * @return true if trackChanges() was called and tracking was not stopped since
+     */
+    public boolean isTrackingChanges() {
+        return changed != null;
+    }
+
+    /**
+     * Retrieves the number of positions that changed since the changes were last cleared.
+     *
+     * @return the number of changed positions, 0 if changes are not tracked
+     */
+    public int getChangeCount() {
+        return changeCount;
+    }
+
+    /**
+     * Retrieves the array index of a changed position. Each position is listed
+     * once, in the order it first changed.
+     *
+     * @param i which changed position, 0 to getChangeCount() - 1
+     * @return the array index of that position
+     */
+    public int getChange(int i) {
+        return changes[i];
+    }
+
+    /**
+     * Sorts the changed positions by array index.
+     */
+    public void sortChanges() {
+        Arrays.sort(changes, 0, changeCount);
+    }
+
+    /**
+     * Forgets the changed positions; changes are tracked from here on.
+     * Takes time proportional to the number of changed positions, not to the road size.
+     */
+    public void clearChanges() {
+        for (int i = 0; i < changeCount; i++) {
+            changed[changes[i]] = false;
+        }
+        changeCount = 0;
+    }
+
+    /**
+     * Appends the line of one position, e.g. "Position 3: [Empty]", to a string builder.
+     *
+     * @param str the builder to append to
+     * @param index the array index of the position
+     */
+    void appendPosition(StringBuilder str, int index) {
+        Vehicle vehicle = vehicles.get(index);
+        str.append("Position ").append(index + 1).append(": ");
+        if (vehicle != null) {
+            str.append(vehicle.toString()).append("\n");
+        } else {
+            str.append("[Empty]\n");
+        }
+    }
+
+    /**
+     * Marks a position as changed if changes are tracked.
+     *
+     * @param index the array index of the position
+     */
+    private void markChanged(int index) {
+        if (changed != null && !changed[index]) {
+            changed[index] = true;
+            changes[changeCount] = index;
+            changeCount++;
+        }
+    }
+
+    /**
+     * Attaches the recorder that records the changes of this road, or detaches it with null.
+     *
+     * @param recorder the recorder to report changes to
+     */
+    void setRecorder(RoadRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Repeats a move whose random outcomes are already known, without reporting any events.
+     * Used to rebuild a road state from a checkpoint.
+     *
+     * @param index the array index of the vehicle that moved
+     * @param direction the direction it moved in
+     * @param placement the array index a repaired vehicle was added at, -1 if none was added,
+     *                  or DEFERRED_PLACEMENT to leave adding it (and counting it) to the caller
+     */
+    void replayMove(int index, int direction, int placement) {
+        current = index;
+        replayPlacement = placement;
+        replaying = true;
+        boolean wasReporting = reporting;
+        boolean hadVehicles = withVehicles;
+        reporting = false;
+        withVehicles = false;
+        moveVehicle(direction);
+        reporting = wasReporting;
+        withVehicles = hadVehicles;
+        replaying = false;
+    }
+
+    /**
+     * Retrieves where the most recent move placed a repaired vehicle, so the move
+     * can be logged and checked when a recovery repeats it.
+     *
+     * @return the array index of the placed vehicle, or -1 if the move placed none
+     */
+    int getLastPlacement() {
+        return lastPlacement;
+    }
+
+    /**
+     * Retrieves the storage the vehicles of this road are kept in.
+     *
+     * @return the road storage
+     */
+    RoadStorage getStorage() {
+        return vehicles;
+    }
+
+    /**
+     * Checks whether a recorder is attached to the road.
+     *
+     * @return true if changes of this road are being recorded
+     */
+    boolean hasRecorder() {
+        return recorder != null;
+    }
+
+    /**
+     * Brings the slot index in line with a slot whose storage was written
+     * behind the road's back, e.g. by the segments of a SegmentedReplay.
+     *
+     * @param index the array index of the slot
+     */
+    void syncSlot(int index) {
+        updateSlotIndex(index, vehicles.type(index) != RoadStorage.EMPTY);
+    }
+
+    /**
+     * Puts a vehicle back into a slot while a journal step is being undone.
+     *
+     * @param index the array index of the slot
+     * @param vehicle the vehicle the slot held before, may be null
+     */
+    void restoreSlot(int index, Vehicle vehicle) {
+        vehicles.set(index, vehicle);
+        updateSlotIndex(index, vehicle != null);
+        markChanged(index);
+    }
+
+    /**
+     * Stores a vehicle in a slot, reporting the old occupant to the recorder if there is one.
+     *
+     * @param index the array index of the slot
+     * @param vehicle the vehicle to store, or null to empty the slot
+     */
+    private void setSlot(int index, Vehicle vehicle) {
+        if (recorder != null) {
+            recorder.recordSlot(index, vehicles.get(index));
+        }
+        vehicles.set(index, vehicle);
+        updateSlotIndex(index, vehicle != null);
+        markChanged(index);
+    }
+
+    /**
+     * Moves the vehicle in one slot to another (empty or overwritten) slot,
+     * reporting both old occupants to the recorder if there is one.
+     *
+     * @param from the array index of the vehicle to move
+     * @param to the array index it moves to
+     */
+    private void moveSlot(int from, int to) {
+        if (recorder != null) {
+            recorder.recordSlot(to, vehicles.get(to));
+            recorder.recordSlot(from, vehicles.get(from));
+        }
+        vehicles.move(from, to);
+        updateSlotIndex(to, true);
+        updateSlotIndex(from, false);
+        markChanged(to);
+        markChanged(from);
+    }
+
+    /**
+     * Returns the index of occupied and free positions, having the storage
+     * build it if this road does not have one yet.
+     *
+     * @return the slot index of this road
+     */
+    private SlotIndex slotIndex() {
+        if (slots == null) {
+            slots = vehicles.createSlotIndex();
+        }
+        return slots;
+    }
+
+    /**
+     * Keeps the slot index in step with a slot that was just written.
+     * Nothing is done while there is no index; it will be built from the storage later.
+     *
+     * @param index the array index of the slot
+     * @param occupied true if the slot now holds a vehicle
+     */
+    private void updateSlotIndex(int index, boolean occupied) {
+        if (slots == null) {
+            return;
+        }
+        if (occupied) {
+            slots.occupy(index);
+        } else {
+            slots.vacate(index);
+        }
+    }
+
+    /**
+     * Adds a crashed vehicle to the reuse pool, reporting it to the recorder if there is one.
+     *
+     * @param crashedVehicle the vehicle to recycle
+     * @param index the array index the vehicle crashed at
+     */
+    private void recycle(Vehicle crashedVehicle, int index) {
+        reusePool.recycleVehicle(crashedVehicle);
+        if (recorder != null) {
+            recorder.recordRecycle();
+        }
+        if (reporting) {
+            events.vehicleRecycled(crashedVehicle, index, reusePool);
+        }
+    }
+
+    /**
+     * Retrieves the size of the road.
+     *
+     * @return the number of positions on the road
      */
     public int getSize() {
-        return vehicles.length;
+        return vehicles.size();
     }
 
     /**
@@ -148,25 +522,34 @@ public class Road {
      *                  1 indicates a move to the right
      */
     public void moveVehicle(int direction) {
+        lastPlacement = -1;
+        if (recorder != null) {
+            recorder.recordMove(current, direction);
+        }
         if (direction == 0) {
-            System.out.println(vehicles[current] + "remain at current location");
+            if (reporting) {
+                events.vehicleStayed(withVehicles ? vehicles.get(current) : null, current);
+            }
             return;
         }
         // The first and last vehicle on the road should not move if out of bound.
         boolean atLeftEdge = current == 0 && direction == -1;
-        boolean atRightEdge = current == vehicles.length - 1 && direction == 1;
+        boolean atRightEdge = current == vehicles.size() - 1 && direction == 1;
         if (atLeftEdge || atRightEdge) {
-            System.out.println("\nTarget location out of range, invalid move instruction.");
+            if (reporting) {
+                events.moveOutOfRange(current, direction);
+            }
             return;
         }
 
         int target = current + direction; // target index after movement
 
         // move current vehicle to target location
-        if (vehicles[target] == null) {
-            System.out.println(vehicles[current] + " moved to position " + (target + 1));
-            vehicles[target] = vehicles[current];
-            vehicles[current] = null;
+        if (vehicles.type(target) == RoadStorage.EMPTY) {
+            if (reporting) {
+                events.vehicleMoved(withVehicles ? vehicles.get(current) : null, current, target);
+            }
+            moveSlot(current, target);
         } else {
             collision(target);
         }
@@ -175,27 +558,35 @@ public class Road {
     /**
      * Adds a new vehicle to the road by reusing an existing vehicle from the reuse pool.
      * The method attempts to retrieve a vehicle from the reuse pool. If the pool is empty,
-     * an EmptyQueueException is caught, and an error message is printed. Once a vehicle is retrieved,
+     * an EmptyQueueException is caught and reported. Once a vehicle is retrieved,
      * it is placed in a random empty position on the road.
      */
     private void addVehicle() {
+        if (replaying && replayPlacement == DEFERRED_PLACEMENT) {
+            return; // the replaying caller takes the vehicle from the pool and places it
+        }
         Vehicle vehicleToAdd = null;
         try {
             vehicleToAdd = reusePool.reuseVehicle();
+            if (recorder != null) {
+                recorder.recordReuse(vehicleToAdd);
+            }
         } catch (EmptyQueueException ex) {
-            System.out.println(ex.getMessage());
+            if (reporting) {
+                events.poolEmpty();
+            }
         }
 
-        Random rand = new Random();
-        int indexToAdd = rand.nextInt(vehicles.length);
-
-        while (vehicles[indexToAdd] != null) {
-            indexToAdd = rand.nextInt(vehicles.length);
+        int indexToAdd = replaying ? replayPlacement : slotIndex().randomFree(rand);
+        if (recorder != null) {
+            recorder.recordPlacement(indexToAdd); // a replayed move may be recorded too, e.g. during recovery
         }
-        vehicles[indexToAdd] = vehicleToAdd;
+        setSlot(indexToAdd, vehicleToAdd);
+        lastPlacement = indexToAdd;
         numVehicles++;
-        System.out.println("\nA repaired vehicle, " + vehicleToAdd + ", added to position " + (indexToAdd + 1));
-        System.out.println(reusePool);
+        if (reporting) {
+            events.vehicleReused(vehicleToAdd, indexToAdd, reusePool);
+        }
     }
 
     /**
@@ -206,20 +597,20 @@ public class Road {
      * @param target the index of the target vehicle in the vehicles array
      */
     private void collision(int target) {
-        Vehicle currentVehicle = vehicles[current];
-        Vehicle otherVehicle = vehicles[target];
+        byte currentType = vehicles.type(current);
+        byte otherType = vehicles.type(target);
 
         // Determines the collision type and handles accordingly
-        if (currentVehicle.isCar() && otherVehicle.isCar()) {
+        if (currentType == RoadStorage.CAR && otherType == RoadStorage.CAR) {
             carVsCar(target);
         }
-        else if (currentVehicle.isBus() && otherVehicle.isBus()) {
+        else if (currentType == RoadStorage.BUS && otherType == RoadStorage.BUS) {
             busVsBus(target);
         }
-        else if (currentVehicle.isCar() && otherVehicle.isBus()) {
+        else if (currentType == RoadStorage.CAR && otherType == RoadStorage.BUS) {
             carVsBus(target, true); // Car moves into bus
         }
-        else if (currentVehicle.isBus() && otherVehicle.isCar()) {
+        else if (currentType == RoadStorage.BUS && otherType == RoadStorage.CAR) {
             carVsBus(target,false); // Bus moves into a car
         }
     }
@@ -233,36 +624,38 @@ public class Road {
      * @param target the index of the target location
      */
     private void carVsCar(int target) {
-        // Cast vehicles to Car for access to car-specific methods
-        Car currentCar = (Car) vehicles[current];
-        Car otherCar = (Car) vehicles[target];
-
-        if (!currentCar.sameColor(otherCar)) {
-            System.out.println("\n" + currentCar + " vs " + otherCar
-                    + "\nCars of different colors crashed! Removing both.");
+        // compare the primitive car fields; vehicle objects are only needed for the pool and the events
+        if (vehicles.colorIndex(current) != vehicles.colorIndex(target)) {
+            Vehicle currentCar = vehicles.get(current);
+            Vehicle otherCar = vehicles.get(target);
             // add crashed vehicles to reuse pool
-            reusePool.recycleVehicle(currentCar);
-            reusePool.recycleVehicle(otherCar);
-            System.out.print(reusePool);
+            recycle(currentCar, current);
+            recycle(otherCar, target);
+            if (reporting) {
+                events.collision(CollisionType.CARS_DIFFERENT_COLOR, currentCar, current, otherCar, target,
+                        true, true, reusePool);
+            }
 
-            vehicles[current] = null;
-            vehicles[target] = null;
+            setSlot(current, null);
+            setSlot(target, null);
             numVehicles -= 2;
             addVehicle();// Add a vehicle from the reuse pool to the road
         } else {
-            if (currentCar.getHorsePower() > otherCar.getHorsePower()) {
-                System.out.println("\n" + currentCar + " vs " + otherCar + "\nCar at position " +
-                        getPosition() + " has greater HP, Car at position " + (target + 1) + " is removed.");
-                reusePool.recycleVehicle(otherCar);
-                vehicles[target] = null;
+            boolean currentWins = vehicles.horsePower(current) > vehicles.horsePower(target);
+            Vehicle currentCar = withVehicles || !currentWins ? vehicles.get(current) : null;
+            Vehicle otherCar = withVehicles || currentWins ? vehicles.get(target) : null;
+            if (currentWins) {
+                recycle(otherCar, target);
+                setSlot(target, null);
             } else {
-                System.out.println("\n" + currentCar + " vs " + otherCar + "\nCar at position " +
-                        (target +1) + " has greater HP, Car at position " + getPosition() + " is removed.");
-                reusePool.recycleVehicle(currentCar);
-                vehicles[current] = null;
+                recycle(currentCar, current);
+                setSlot(current, null);
             }
             numVehicles--;
-            System.out.print(reusePool);
+            if (reporting) {
+                events.collision(CollisionType.CARS_SAME_COLOR, currentCar, current, otherCar, target,
+                        !currentWins, currentWins, reusePool);
+            }
         }
     }
 
@@ -279,19 +672,21 @@ public class Road {
     private void carVsBus(int target, boolean type) {
         if (type) {
             // Car tries to move into Bus's space
-            System.out.println("\n" + vehicles[current] + " vs " + vehicles[target] + "\nCar at position "
-                    + getPosition() + " stops. Cannot move into Bus's space.");
+            if (reporting) {
+                events.collision(CollisionType.CAR_INTO_BUS, withVehicles ? vehicles.get(current) : null, current,
+                        withVehicles ? vehicles.get(target) : null, target, false, false, reusePool);
+            }
         } else {
             // Bus moves into Car's space, Bus pushes the Car out
-            System.out.println("\n" + vehicles[current] + " vs " + vehicles[target] + "\nBus at position "
-                    + getPosition() + " pushes Car at position " + (target + 1) + " out.");
-
-            reusePool.recycleVehicle(vehicles[target]);
-            System.out.print(reusePool);
+            Vehicle bus = withVehicles ? vehicles.get(current) : null;
+            Vehicle car = vehicles.get(target);
+            recycle(car, target);
+            if (reporting) {
+                events.collision(CollisionType.BUS_INTO_CAR, bus, current, car, target, false, true, reusePool);
+            }
 
             // Move bus to the car's location, the car is removed
-            vehicles[target] = vehicles[current];
-            vehicles[current] = null;
+            moveSlot(current, target);
             numVehicles--;
         }
     }
@@ -306,30 +701,27 @@ public class Road {
      * @param target the index of the target location
      */
     private void busVsBus(int target) {
-        // Cast vehicles to Bus for access to bus-specific methods
-        Bus currentBus = (Bus) vehicles[current];
-        Bus otherBus = (Bus) vehicles[target];
-
-        if (currentBus.getWeight() > otherBus.getWeight()) {
-            System.out.println("\n" + currentBus + " vs " + otherBus + "\nBus at position "
-                    + getPosition() + " has more weight, Bus at position " + (target + 1) + " is removed.");
-            reusePool.recycleVehicle(otherBus);
-            System.out.print(reusePool);
-
-            vehicles[target] = null;
+        // compare the primitive bus weights; vehicle objects are only needed for the pool and the events
+        int currentWeight = vehicles.weight(current);
+        int otherWeight = vehicles.weight(target);
+        boolean currentRemoved = currentWeight < otherWeight;
+        boolean otherRemoved = currentWeight > otherWeight;
+        Vehicle currentBus = withVehicles || currentRemoved ? vehicles.get(current) : null;
+        Vehicle otherBus = withVehicles || otherRemoved ? vehicles.get(target) : null;
+
+        if (otherRemoved) {
+            recycle(otherBus, target);
+            setSlot(target, null);
             numVehicles--;
-        } else if (currentBus.getWeight() < otherBus.getWeight()) {
-            System.out.println("\n" + currentBus + " vs " + otherBus + "\nBus at position "
-                    + (target +1) + " has more weight, Bus at position " + getPosition() + " is removed.");
-            reusePool.recycleVehicle(currentBus);
-            System.out.print(reusePool);
-
-            vehicles[current] = null;
+        } else if (currentRemoved) {
+            recycle(currentBus, current);
+            setSlot(current, null);
             numVehicles--;
-        } else {
-            // Equal weight → both buses remain
-            System.out.println("\n" + currentBus + " vs " + otherBus
-                    + "\nBuses of same weight, both remain in place.");
+        }
+        // Equal weight → both buses remain
+        if (reporting) {
+            events.collision(CollisionType.BUS_VS_BUS, currentBus, current, otherBus, target,
+                    currentRemoved, otherRemoved, reusePool);
         }
     }
 
@@ -339,21 +731,18 @@ public class Road {
      * chance of being a bus.
      */
     private void populateRoad() {
-        Random rand = new Random();
+        SlotIndex free = slotIndex();
 
         for (int i = 0; i < numVehicles; i++) {
-            int index = rand.nextInt(vehicles.length); // generate random index to assign a vehicle
-
-            while (vehicles[index] != null) {
-                index = new Random().nextInt(vehicles.length);
-            }
+            int index = free.randomFree(rand); // pick a random empty index to assign a vehicle
 
-            double type = new Random().nextDouble(1.0); // generate 0 or 1 to randomly choose Car (0) or Bus (1)
+            double type = rand.nextDouble(1.0); // generate 0 or 1 to randomly choose Car (0) or Bus (1)
             if (type < 0.7) {
-                vehicles[index] = new Car();
+                vehicles.set(index, new Car(rand));
             } else {
-                vehicles[index] = new Bus();
+                vehicles.set(index, new Bus(rand));
             }
+            free.occupy(index);
         }
     }
 
@@ -365,13 +754,8 @@ public class Road {
      */
     public String toString() {
         StringBuilder str = new StringBuilder();
-        for (int i = 0; i < vehicles.length; i++) {
-            if (vehicles[i] != null) {
-                str.append("Position ").append(i + 1).append(": ").
-                        append(vehicles[i].toString()).append("\n");
-            } else {
-                str.append("Position ").append(i + 1).append(": [Empty]\n");
-            }
+        for (int i = 0; i < vehicles.size(); i++) {
+            appendPosition(str, i);
         }
         return str.toString();
     }
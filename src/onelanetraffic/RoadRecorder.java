@@ -0,0 +1,30 @@
+package onelanetraffic;
+
+/**
+ * Defines what a road reports about its own changes while a history store is
+ * attached to it. A store only overrides the reports it needs.
+ *
+ * @author Lehan Zhang
+ */
+public interface RoadRecorder {
+
+    /**  The vehicle at index is about to move in direction. */
+    public default void recordMove(int index, int direction) {
+    }
+
+    /**  The slot at index is about to be overwritten; oldVehicle is its current content. */
+    public default void recordSlot(int index, Vehicle oldVehicle) {
+    }
+
+    /**  A crashed vehicle was added to the rear of the reuse pool. */
+    public default void recordRecycle() {
+    }
+
+    /**  A vehicle was taken from the front of the reuse pool. */
+    public default void recordReuse(Vehicle reused) {
+    }
+
+    /**  A repaired vehicle was placed at the randomly chosen index. */
+    public default void recordPlacement(int index) {
+    }
+}
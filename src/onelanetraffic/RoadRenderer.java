@@ -0,0 +1,96 @@
+package onelanetraffic;
+
+/**
+ * Renders the state of a road as text, one "Position i: ..." line per position.
+ *
+ * A full frame lists every position, which takes time proportional to the size
+ * of the road. In diff mode only the first frame of a road is full; after that
+ * the renderer lists just the positions the road reports as changed since the
+ * previous frame, so the cost of a frame depends on how much changed rather
+ * than on how long the road is.
+ *
+ * A road object the renderer has not seen before (e.g. a snapshot brought back
+ * by an undo) always gets a full frame, since its changes were not tracked.
+ *
+ * @author Lehan Zhang
+ */
+public class RoadRenderer {
+    private final boolean diff; // true to render only changed positions after the first frame
+    private Road tracked; // the road whose changes are tracked, null before the first frame
+
+    /**
+     * Creates a renderer.
+     *
+     * @param diff true to render only changed positions; false to always render full frames
+     */
+    public RoadRenderer(boolean diff) {
+        this.diff = diff;
+    }
+
+    /**
+     * Checks whether this renderer renders only changed positions.
+     *
+     * @return true in diff mode; false in full-frame mode
+     */
+    public boolean isDiff() {
+        return diff;
+    }
+
+    /**
+     * Appends a frame of the road: the changed positions in diff mode, otherwise every position.
+     *
+     * @param road the road to render
+     * @param str the builder to append the frame to
+     * @return true if a full frame was appended; false if only changed positions were
+     */
+    public boolean render(Road road, StringBuilder str) {
+        if (needsFullFrame(road)) {
+            renderFull(road, str);
+            return true;
+        }
+        road.sortChanges();
+        for (int i = 0; i < road.getChangeCount(); i++) {
+            road.appendPosition(str, road.getChange(i));
+        }
+        road.clearChanges();
+        return false;
+    }
+
+    /**
+     * Checks whether the next frame of the road will list every position.
+     *
+     * @param road the road to render
+     * @return true in full-frame mode or if the changes of road are not tracked by this renderer
+     */
+    public boolean needsFullFrame(Road road) {
+        return !diff || road != tracked || !road.isTrackingChanges();
+    }
+
+    /**
+     * Appends every position of the road. In diff mode the next frame of this
+     * road lists the positions changed after this one.
+     *
+     * @param road the road to render
+     * @param str the builder to append the frame to
+     */
+    public void renderFull(Road road, StringBuilder str) {
+        for (int i = 0; i < road.getSize(); i++) {
+            road.appendPosition(str, i);
+        }
+        if (diff) {
+            track(road);
+        }
+    }
+
+    /**
+     * Tracks the changes of road from now on, and stops tracking the previous road.
+     */
+    private void track(Road road) {
+        if (tracked != null && tracked != road) {
+            tracked.stopTrackingChanges();
+        }
+        tracked = road;
+        road.trackChanges();
+        road.clearChanges();
+    }
+}
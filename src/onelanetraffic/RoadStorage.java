@@ -0,0 +1,89 @@
+package onelanetraffic;
+
+/**
+ * Defines the behaviors of the storage behind a Road: a fixed number of
+ * slots indexed from 0, each holding a vehicle or null for an empty position.
+ *
+ * The primitive accessors let the road decide moves and collisions without
+ * needing vehicle objects. Storages that keep vehicle objects can rely on the
+ * default implementations; storages that keep primitive fields override them.
+ *
+ * @author Lehan Zhang
+ */
+public interface RoadStorage {
+    /**  Type code of an empty slot. */
+    public static final byte EMPTY = 0;
+    /**  Type code of a slot holding a car. */
+    public static final byte CAR = 1;
+    /**  Type code of a slot holding a bus. */
+    public static final byte BUS = 2;
+
+    /**  Returns the vehicle at the given index, or null if the slot is empty. */
+    public Vehicle get(int index);
+
+    /**  Stores a vehicle (or null) at the given index. */
+    public void set(int index, Vehicle vehicle);
+
+    /**  Returns the number of slots. */
+    public int size();
+
+    /**  Returns an independent copy; later changes to either one do not show in the other. */
+    public RoadStorage copy();
+
+    /**  Returns EMPTY, CAR or BUS for the slot at the given index. */
+    public default byte type(int index) {
+        Vehicle vehicle = get(index);
+        if (vehicle == null) {
+            return EMPTY;
+        }
+        return vehicle.isCar() ? CAR : BUS;
+    }
+
+    /**  Returns the horsepower of the vehicle at the given index. */
+    public default int horsePower(int index) {
+        return get(index).getHorsePower();
+    }
+
+    /**  Returns the weight of the bus at the given index. */
+    public default int weight(int index) {
+        return ((Bus) get(index)).getWeight();
+    }
+
+    /**  Returns the color index of the car at the given index. */
+    public default int colorIndex(int index) {
+        return ((Car) get(index)).getColorIndex();
+    }
+
+    /**
+     * Returns an estimate of the bytes a copy made by copy() adds, which a
+     * RetentionPolicy uses to bound the memory of a history. By default, the
+     * array of references of a storage that keeps vehicle objects; the vehicles
+     * themselves are shared with the copy.
+     */
+    public default long estimatedCopyBytes() {
+        return 16 + 4L * size();
+    }
+
+    /**
+     * Returns true if set and move calls on different indexes may run on
+     * different threads at the same time. False by default.
+     */
+    public default boolean isSegmentable() {
+        return false;
+    }
+
+    /**
+     * Builds the index of occupied and free positions a Road picks vehicles
+     * and empty positions from, for the current content of this storage. By
+     * default a PersistentSlotIndex, which a road copy shares in O(1).
+     */
+    public default SlotIndex createSlotIndex() {
+        return new PersistentSlotIndex(this);
+    }
+
+    /**  Moves the vehicle at from to to, leaving from empty. */
+    public default void move(int from, int to) {
+        set(to, get(from));
+        set(from, null);
+    }
+}
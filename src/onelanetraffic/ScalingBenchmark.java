@@ -0,0 +1,434 @@
+package onelanetraffic;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Measures how the whole simulation scales with the size of the road and the
+ * density of vehicles. For every combination of road size and density it builds
+ * the road, runs a script of commands through CommandReader and Simulation like
+ * BatchRunner does, and reports the throughput, the latency percentiles per
+ * command, the peak heap and the allocation rate:
+ *
+ * <pre>
+ * java -Xmx8g onelanetraffic.ScalingBenchmark --sizes 1000,1000000,100000000 --densities 1,50,100 --commands 1000000
+ * </pre>
+ *
+ * Unless --input is given, one script of random commands is generated and shared
+ * by all points, so runs with the same options are comparable. The first point
+ * is preceded by a warm-up run on a small road that is not reported. The latency
+ * of a command is the time from reading it to the end of its execute(), events
+ * included; the initial and final road are not reported to the event listener,
+ * since rendering a road of 10^8 positions would dominate the run. A point that
+ * runs out of memory is reported as such and the next one is tried.
+ *
+ * Options:
+ * <ul>
+ * <li>--sizes LIST: comma-separated road sizes, 10^3 to 10^8 in powers of ten by default</li>
+ * <li>--densities LIST: comma-separated vehicle densities in percent, 1,10,50,100 by default</li>
+ * <li>--commands N: commands of the generated script, 1000000 by default</li>
+ * <li>--undo-percent P: share of undo commands in the generated script, each undoing
+ * 1 to 3 moves; 15 by default</li>
+ * <li>--input PATH: text or binary command file to run instead of a generated script</li>
+ * <li>--seed S: seed of the roads and the generated script, 1 by default</li>
+ * <li>--warmup N: commands of the warm-up run, 100000 by default, 0 for none</li>
+ * <li>--storage array|persistent|primitive|offheap: road storage, array by default</li>
+ * <li>--pool persistent|ring: reuse pool, persistent by default</li>
+ * <li>--history snapshot|journal|checkpoint|indexed: history store, journal by default</li>
+ * <li>--checkpoint-interval K: commands between checkpoints for checkpoint history, 64 by default</li>
+ * <li>--events none|text|binary: event listener, whose output is discarded; none by default</li>
+ * <li>--csv PATH: also write the results to PATH as comma-separated values</li>
+ * </ul>
+ * Peak heap is the sum of the peak usage of the heap memory pools during a point,
+ * road construction included. Allocation is counted for the simulation thread
+ * only, so the background thread of text events is not included, and is reported
+ * as n/a on JVMs that cannot count it.
+ * The exit status is 0 on success, 1 if a file cannot be read or written and 2
+ * for invalid arguments.
+ *
+ * @author Lehan Zhang
+ */
+public class ScalingBenchmark {
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private int[] sizes = {1000, 10000, 100000, 1000000, 10000000, 100000000}; // road sizes to run
+    private int[] densities = {1, 10, 50, 100}; // vehicle densities in percent
+    private int commandCount = 1000000; // commands of a generated script
+    private int undoPercent = 15; // share of undo commands in a generated script
+    private String inputFile; // command file, null to generate one
+    private long seed = 1; // seed of the roads and the generated script
+    private int warmup = 100000; // commands of the warm-up run
+    private String storage = "array"; // road storage kind
+    private boolean ringPool; // true to use a ConcurrentReusePool instead of a PersistentReusePool
+    private String history = "journal"; // history store kind
+    private int checkpointInterval = 64; // commands between checkpoints
+    private String events = "none"; // event listener kind
+    private String csvFile; // file of the comma-separated results, null for none
+
+    /**
+     * The measurements of one road size and density.
+     */
+    private static class Point {
+        private final int size;
+        private final int density; // in percent
+        private final int numVehicles;
+        private final LatencyHistogram all = new LatencyHistogram(); // every command
+        private final LatencyHistogram moves = new LatencyHistogram();
+        private final LatencyHistogram undos = new LatencyHistogram(); // undo and redo commands
+        private long commands; // commands read, invalid ones included
+        private double setupSeconds; // time to build the road
+        private double runSeconds; // time to run the commands
+        private long peakHeap; // peak heap usage in bytes
+        private long allocated = -1; // bytes allocated by the simulation thread, -1 if unknown
+        private boolean outOfMemory;
+
+        private Point(int size, int density) {
+            this.size = size;
+            this.density = density;
+            this.numVehicles = (int) Math.max(1, (long) size * density / 100);
+        }
+    }
+
+    public static void main(String[] args) {
+        ScalingBenchmark benchmark = new ScalingBenchmark();
+        try {
+            benchmark.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: java onelanetraffic.ScalingBenchmark [--sizes LIST] [--densities LIST]"
+                    + " [--commands N] [--undo-percent P] [--input PATH] [--seed S] [--warmup N]"
+                    + " [--storage array|persistent|primitive|offheap] [--pool persistent|ring]"
+                    + " [--history snapshot|journal|checkpoint|indexed] [--checkpoint-interval K]"
+                    + " [--events none|text|binary] [--csv PATH]");
+            System.exit(2);
+        }
+        System.exit(benchmark.run());
+    }
+
+    /**
+     * Reads the command line options into this benchmark.
+     *
+     * @param args the command line arguments
+     * @throws IllegalArgumentException if an option is unknown, missing its value or invalid
+     */
+    public void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--sizes":
+                    sizes = parseList(option, value);
+                    break;
+                case "--densities":
+                    densities = parseList(option, value);
+                    for (int density : densities) {
+                        if (density > 100) {
+                            throw new IllegalArgumentException("Densities are percentages from 1 to 100: " + density);
+                        }
+                    }
+                    break;
+                case "--commands":
+                    commandCount = BatchRunner.parsePositive(option, value);
+                    break;
+                case "--undo-percent":
+                    try {
+                        undoPercent = Integer.parseInt(value);
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("Invalid number for " + option + ": " + value);
+                    }
+                    if (undoPercent < 0 || undoPercent > 100) {
+                        throw new IllegalArgumentException(option + " must be from 0 to 100: " + value);
+                    }
+                    break;
+                case "--input":
+                    inputFile = value;
+                    break;
+                case "--seed":
+                    try {
+                        seed = Long.parseLong(value);
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("Invalid seed: " + value);
+                    }
+                    break;
+                case "--warmup":
+                    try {
+                        warmup = Integer.parseInt(value);
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("Invalid number for " + option + ": " + value);
+                    }
+                    if (warmup < 0) {
+                        throw new IllegalArgumentException(option + " cannot be negative: " + value);
+                    }
+                    break;
+                case "--storage":
+                    storage = value;
+                    break;
+                case "--pool":
+                    if (!value.equals("persistent") && !value.equals("ring")) {
+                        throw new IllegalArgumentException("Unknown pool: " + value);
+                    }
+                    ringPool = value.equals("ring");
+                    break;
+                case "--history":
+                    history = value;
+                    break;
+                case "--checkpoint-interval":
+                    checkpointInterval = BatchRunner.parsePositive(option, value);
+                    break;
+                case "--events":
+                    if (!value.equals("none") && !value.equals("text") && !value.equals("binary")) {
+                        throw new IllegalArgumentException("Unknown events: " + value);
+                    }
+                    events = value;
+                    break;
+                case "--csv":
+                    csvFile = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        BatchRunner.checkStorageKind(storage); // validate the names up front, without creating anything
+        BatchRunner.checkHistoryKind(history);
+    }
+
+    /**
+     * Runs every point and prints the report.
+     *
+     * @return the exit status of the run
+     */
+    public int run() {
+        Path commands;
+        Path generated = null; // the generated script, deleted at the end
+        try {
+            if (inputFile != null) {
+                commands = Path.of(inputFile);
+            } else {
+                generated = Files.createTempFile("scaling-commands", ".bin");
+                writeScript(generated, commandCount, seed);
+                commands = generated;
+            }
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            return 1;
+        }
+
+        PrintStream csv = null;
+        try {
+            if (csvFile != null) {
+                csv = new PrintStream(Files.newOutputStream(Path.of(csvFile)), false);
+                csv.println("size,density_percent,vehicles,commands,status,setup_s,run_s,commands_per_s,mean_ns,"
+                        + "p50_ns,p90_ns,p99_ns,p99.9_ns,max_ns,move_p99_ns,undo_p99_ns,peak_heap_bytes,"
+                        + "allocated_bytes,allocated_bytes_per_s");
+            }
+            if (warmup > 0) {
+                Path script = Files.createTempFile("scaling-warmup", ".bin");
+                try {
+                    writeScript(script, warmup, ~seed);
+                    measure(new Point(1000, 50), script);
+                } finally {
+                    Files.deleteIfExists(script);
+                }
+            }
+
+            System.out.printf("Storage %s, pool %s, history %s, events %s, seed %d%n",
+                    storage, ringPool ? "ring" : "persistent", history, events, seed);
+            System.out.printf("%11s %7s %11s %10s %8s %12s %9s %9s %9s %9s %9s %10s %10s%n",
+                    "size", "density", "vehicles", "commands", "setup s", "commands/s",
+                    "p50 us", "p90 us", "p99 us", "p99.9 us", "max us", "peak MB", "alloc MB/s");
+            for (int size : sizes) {
+                for (int density : densities) {
+                    Point point = new Point(size, density);
+                    measure(point, commands);
+                    print(point);
+                    if (csv != null) {
+                        printCsv(csv, point);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            return 1;
+        } finally {
+            if (csv != null) {
+                csv.close();
+            }
+            if (generated != null) {
+                try {
+                    Files.deleteIfExists(generated);
+                } catch (IOException ex) {
+                    System.err.println(ex.getMessage());
+                }
+            }
+        }
+        if (csv != null && csv.checkError()) {
+            System.err.println("Cannot write to " + "\"" + csvFile + "\"");
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Builds the road of a point, runs the commands on it and records the measurements.
+     *
+     * @throws IOException if the command file cannot be read
+     */
+    private void measure(Point point, Path commands) throws IOException {
+        System.gc(); // leave the garbage of the previous point out of this one
+        List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocation = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = allocation != null ? allocation.getThreadAllocatedBytes(threadId) : -1;
+
+        SimulationEventListener listener = createEventListener();
+        try (CommandReader reader = new CommandReader(commands)) {
+            long start = System.nanoTime();
+            Road aRoad = new Road(BatchRunner.createStorage(storage, point.size), point.numVehicles,
+                    new SplittableRandom(seed));
+            if (ringPool) {
+                aRoad.setReusePool(new ConcurrentReusePool(point.numVehicles));
+            }
+            Simulation simulation = new Simulation(aRoad,
+                    BatchRunner.createHistory(history, checkpointInterval, null), listener);
+            long runStart = System.nanoTime();
+            point.setupSeconds = (runStart - start) / 1e9;
+            long last = runStart;
+
+            long count = 0;
+            while (reader.next()) {
+                char action = reader.action();
+                if (!simulation.execute(action, reader.step())) {
+                    reader.skipLine();
+                }
+                long now = System.nanoTime();
+                long latency = now - last;
+                last = now;
+                point.all.record(latency);
+                if (action == CommandReader.MOVE) {
+                    point.moves.record(latency);
+                } else if (action == CommandReader.UNDO || action == CommandReader.REDO) {
+                    point.undos.record(latency);
+                }
+                count++;
+            }
+            point.commands = count;
+            point.runSeconds = (last - runStart) / 1e9;
+        } catch (OutOfMemoryError ex) {
+            point.outOfMemory = true; // the road and its history are unreachable again once we get here
+        } finally {
+            if (listener instanceof TextEventWriter) {
+                ((TextEventWriter) listener).close();
+            }
+        }
+
+        if (allocation != null) {
+            point.allocated = allocation.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        }
+        for (MemoryPoolMXBean pool : pools) {
+            if (pool.getType() == MemoryType.HEAP) {
+                point.peakHeap += pool.getPeakUsage().getUsed();
+            }
+        }
+    }
+
+    /**
+     * Creates the event listener given by --events, writing to a stream that discards everything.
+     */
+    private SimulationEventListener createEventListener() {
+        if (events.equals("binary")) {
+            return new BinaryEventLog(OutputStream.nullOutputStream());
+        }
+        if (events.equals("text")) {
+            return new TextEventWriter(new PrintStream(OutputStream.nullOutputStream(), false), true,
+                    new RoadRenderer(true));
+        }
+        return SimulationEventListener.NONE;
+    }
+
+    /**
+     * Prints the results of a point as a row of the report table.
+     */
+    private static void print(Point point) {
+        if (point.outOfMemory) {
+            System.out.printf("%11d %6d%% %11d   out of memory, peak %.1f MB%n",
+                    point.size, point.density, point.numVehicles, point.peakHeap / 1e6);
+            return;
+        }
+        System.out.printf("%11d %6d%% %11d %10d %8.3f %12.0f", point.size, point.density, point.numVehicles,
+                point.commands, point.setupSeconds, point.commands / point.runSeconds);
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" %9.2f", point.all.getValueAtPercentile(percentile) / 1e3);
+        }
+        System.out.printf(" %9.1f %10.1f", point.all.getMax() / 1e3, point.peakHeap / 1e6);
+        if (point.allocated >= 0) {
+            System.out.printf(" %10.1f%n", point.allocated / 1e6 / (point.setupSeconds + point.runSeconds));
+        } else {
+            System.out.printf(" %10s%n", "n/a");
+        }
+    }
+
+    /**
+     * Writes the results of a point as one line of comma-separated values.
+     */
+    private static void printCsv(PrintStream csv, Point point) {
+        double seconds = point.setupSeconds + point.runSeconds;
+        csv.print(point.size + "," + point.density + "," + point.numVehicles + "," + point.commands + ","
+                + (point.outOfMemory ? "out_of_memory" : "ok") + "," + point.setupSeconds + ","
+                + point.runSeconds + "," + (point.outOfMemory ? "" : point.commands / point.runSeconds) + ","
+                + point.all.getMean());
+        for (double percentile : PERCENTILES) {
+            csv.print("," + point.all.getValueAtPercentile(percentile));
+        }
+        csv.println("," + point.all.getMax() + "," + point.moves.getValueAtPercentile(99) + ","
+                + point.undos.getValueAtPercentile(99) + "," + point.peakHeap + ","
+                + (point.allocated >= 0 ? point.allocated : "") + ","
+                + (point.allocated >= 0 && !point.outOfMemory ? point.allocated / seconds : ""));
+    }
+
+    /**
+     * Writes a binary script of random commands: moves, and undos of 1 to 3 moves.
+     */
+    private void writeScript(Path path, int count, long scriptSeed) throws IOException {
+        SplittableRandom rand = new SplittableRandom(scriptSeed);
+        try (CommandWriter writer = new CommandWriter(path, true)) {
+            for (int i = 0; i < count; i++) {
+                if (rand.nextInt(100) >= undoPercent) {
+                    writer.write(CommandReader.MOVE, rand.nextInt(3) - 1);
+                } else {
+                    writer.write(CommandReader.UNDO, 1 + rand.nextInt(3));
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a comma-separated list of positive integers.
+     */
+    private static int[] parseList(String option, String value) {
+        String[] items = value.split(",");
+        int[] numbers = new int[items.length];
+        for (int i = 0; i < items.length; i++) {
+            numbers[i] = BatchRunner.parsePositive(option, items[i].trim());
+        }
+        return numbers;
+    }
+}
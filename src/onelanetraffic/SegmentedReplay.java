@@ -0,0 +1,391 @@
+package onelanetraffic;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import exceptionclasses.EmptyQueueException;
+
+/**
+ * Replays a log of moves whose random outcomes are already known (which vehicle
+ * moved, in which direction, where a repaired vehicle was placed) on a road
+ * split into contiguous segments, running the segments in parallel with
+ * fork-join. The result is identical to calling Road.replayMove for every move
+ * in order.
+ *
+ * A move only touches its own position and the one next to it, so moves of
+ * different segments are independent, except for:
+ * <ul>
+ * <li>moves that cross a segment boundary; these are replayed alone on the
+ * whole road, in order, between two parallel batches</li>
+ * <li>the reuse pool, which is first-in first-out: vehicles a batch recycles are
+ * appended to the pool after the batch in the order of the moves that recycled
+ * them. A repaired vehicle placed during a batch is taken from the pool before
+ * the batch starts, which is the vehicle the sequential replay would take as long
+ * as the pool holds enough vehicles; a batch ends at the first placement it cannot
+ * cover that way.</li>
+ * <li>placing a repaired vehicle, which writes a position that may belong to any
+ * segment; the segment owning that position applies it at the right point of its
+ * own sequence of moves.</li>
+ * </ul>
+ * Short batches and roads that cannot be split (a storage that is not
+ * segmentable, a recorder attached, changes being tracked) are replayed
+ * sequentially. CheckpointHistory replays fewer than K moves per undo, so
+ * minBatch has to be well below its checkpoint interval K for any batch to be
+ * replayed in parallel.
+ *
+ * Live commands are not run this way: each one picks its vehicle at random among
+ * all vehicles on the road, so a command cannot start before the previous one
+ * has finished. Replaying a recorded log has no such dependency, and is what
+ * CheckpointHistory does on every undo.
+ *
+ * @author Lehan Zhang
+ */
+public class SegmentedReplay {
+    private final ForkJoinPool pool; // runs the segments
+    private final int segments; // number of segments a road is split into
+    private final int minBatch; // moves below which a batch is replayed sequentially
+
+    /**
+     * Creates a replayer on the common fork-join pool with four segments per
+     * worker thread, replaying batches of fewer than 1024 moves sequentially.
+     */
+    public SegmentedReplay() {
+        this(ForkJoinPool.commonPool(), 4 * ForkJoinPool.getCommonPoolParallelism(), 1024);
+    }
+
+    /**
+     * Creates a replayer.
+     *
+     * @param pool the fork-join pool to run the segments in
+     * @param segments the number of segments to split a road into, at least 1
+     * @param minBatch the number of moves below which a batch is replayed sequentially
+     */
+    public SegmentedReplay(ForkJoinPool pool, int segments, int minBatch) {
+        if (segments < 1) {
+            throw new IllegalArgumentException("Number of segments must be at least 1: " + segments);
+        }
+        this.pool = pool;
+        this.segments = segments;
+        this.minBatch = minBatch;
+    }
+
+    /**
+     * Replays the logged moves from (inclusive) to to (exclusive) on the road.
+     *
+     * @param road the road to replay the moves on
+     * @param index the array index of the vehicle that moved, per move
+     * @param direction the direction it moved in, per move
+     * @param placement the array index a repaired vehicle was added at, or -1 if none was, per move
+     * @param from the first move to replay
+     * @param to one past the last move to replay
+     */
+    public void replay(Road road, int[] index, int[] direction, int[] placement, int from, int to) {
+        if (to - from < minBatch || segments == 1 || !canSplit(road)) {
+            replaySequential(road, index, direction, placement, from, to);
+            return;
+        }
+        int segmentLength = (road.getSize() + segments - 1) / segments;
+        Vehicle[] placed = new Vehicle[16]; // repaired vehicles of the batch, in order of placement
+
+        int start = from;
+        while (start < to) {
+            // grow the batch up to the first move that has to be replayed alone
+            int end = start;
+            int placedCount = 0;
+            boolean alone = false;
+            while (end < to && !alone) {
+                int target = index[end] + direction[end];
+                boolean crosses = target >= 0 && target < road.getSize()
+                        && target / segmentLength != index[end] / segmentLength;
+                if (crosses) {
+                    alone = true;
+                } else if (placement[end] >= 0) {
+                    try {
+                        Vehicle vehicle = road.getReusePool().reuseVehicle();
+                        if (placedCount == placed.length) {
+                            placed = Arrays.copyOf(placed, placedCount * 2);
+                        }
+                        placed[placedCount] = vehicle;
+                        placedCount++;
+                        end++;
+                    } catch (EmptyQueueException ex) {
+                        alone = true; // the vehicle will come from this batch's recycles
+                    }
+                } else {
+                    end++;
+                }
+            }
+
+            if (end - start < minBatch) {
+                // too short to pay for the tasks: put the taken vehicles back and go sequentially
+                for (int i = placedCount - 1; i >= 0; i--) {
+                    road.getReusePool().undoReuse(placed[i]);
+                }
+                replaySequential(road, index, direction, placement, start, end);
+            } else {
+                replayBatch(road, index, direction, placement, start, end, segmentLength, placed);
+                syncSlots(road, index, direction, placement, start, end);
+            }
+            Arrays.fill(placed, 0, placedCount, null);
+
+            if (alone) {
+                road.replayMove(index[end], direction[end], placement[end]);
+                end++;
+            }
+            start = end;
+        }
+    }
+
+    /**
+     * Checks whether the road may be written from several threads at once.
+     */
+    private static boolean canSplit(Road road) {
+        return road.getStorage().isSegmentable() && !road.hasRecorder() && !road.isTrackingChanges();
+    }
+
+    /**
+     * Replays the moves one after another on the whole road.
+     */
+    private static void replaySequential(Road road, int[] index, int[] direction, int[] placement,
+                                         int from, int to) {
+        for (int i = from; i < to; i++) {
+            road.replayMove(index[i], direction[i], placement[i]);
+        }
+    }
+
+    /**
+     * Updates the slot index of the road for the positions a batch wrote to the
+     * storage directly: the position and target of each move and its placement.
+     */
+    private static void syncSlots(Road road, int[] index, int[] direction, int[] placement, int from, int to) {
+        for (int i = from; i < to; i++) {
+            road.syncSlot(index[i]);
+            int target = index[i] + direction[i];
+            if (target >= 0 && target < road.getSize()) {
+                road.syncSlot(target);
+            }
+            if (placement[i] >= 0) {
+                road.syncSlot(placement[i]);
+            }
+        }
+    }
+
+    /**
+     * Replays a batch of moves none of which crosses a segment boundary, with
+     * the repaired vehicles of the batch already taken from the pool.
+     */
+    private void replayBatch(Road road, int[] index, int[] direction, int[] placement, int from, int to,
+                             int segmentLength, Vehicle[] placed) {
+        Batch batch = new Batch(road, index, direction, placement, segmentLength, placed);
+        int count = (road.getSize() + segmentLength - 1) / segmentLength;
+
+        // hand each segment its moves and placements, in order: a move i as i, its placement as -(i + 1)
+        int[] eventStart = new int[count + 1];
+        for (int i = from; i < to; i++) {
+            eventStart[index[i] / segmentLength + 1]++;
+            if (placement[i] >= 0) {
+                eventStart[placement[i] / segmentLength + 1]++;
+            }
+        }
+        for (int segment = 0; segment < count; segment++) {
+            eventStart[segment + 1] += eventStart[segment];
+        }
+        int[] events = new int[eventStart[count]];
+        int[] next = Arrays.copyOf(eventStart, count);
+        int[] placedNumber = new int[to - from];
+        int placedCount = 0;
+        for (int i = from; i < to; i++) {
+            events[next[index[i] / segmentLength]++] = i;
+            if (placement[i] >= 0) {
+                events[next[placement[i] / segmentLength]++] = -(i + 1);
+                placedNumber[i - from] = placedCount;
+                placedCount++;
+            }
+        }
+        batch.from = from;
+        batch.placedNumber = placedNumber;
+        batch.events = events;
+        batch.eventStart = eventStart;
+        batch.recycled = new SegmentPool[count];
+        batch.vehicleChange = new int[count];
+        pool.invoke(new SegmentTask(batch, 0, count));
+
+        // append the recycled vehicles in the order of the moves that recycled them
+        ReusePool reusePool = road.getReusePool();
+        for (int i = from; i < to; i++) {
+            SegmentPool segmentPool = batch.recycled[index[i] / segmentLength];
+            while (segmentPool.hasNext(i)) {
+                reusePool.recycleVehicle(segmentPool.next());
+            }
+        }
+        int numVehicles = road.getNumVehicles();
+        for (int change : batch.vehicleChange) {
+            numVehicles += change;
+        }
+        road.setNumVehicles(numVehicles);
+    }
+
+    /**
+     * What the segment tasks of one batch share.
+     */
+    private static class Batch {
+        final Road road;
+        final int[] index;
+        final int[] direction;
+        final int[] placement;
+        final int segmentLength;
+        final Vehicle[] placed; // repaired vehicles of the batch, in order of placement
+        int from; // first move of the batch
+        int[] placedNumber; // for a move that placed a repaired vehicle, its index in placed
+        int[] events; // the moves and placements of each segment, see replayBatch
+        int[] eventStart; // where the events of each segment start in events
+        SegmentPool[] recycled; // per segment, the vehicles it recycled
+        int[] vehicleChange; // per segment, the change in the number of vehicles
+
+        Batch(Road road, int[] index, int[] direction, int[] placement, int segmentLength, Vehicle[] placed) {
+            this.road = road;
+            this.index = index;
+            this.direction = direction;
+            this.placement = placement;
+            this.segmentLength = segmentLength;
+            this.placed = placed;
+        }
+    }
+
+    /**
+     * Replays the events of a range of segments, splitting the range in half
+     * until it is a single segment.
+     */
+    private static class SegmentTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Batch batch;
+        private final int first; // first segment of the range
+        private final int last; // one past the last segment of the range
+
+        SegmentTask(Batch batch, int first, int last) {
+            this.batch = batch;
+            this.first = first;
+            this.last = last;
+        }
+
+        protected void compute() {
+            if (last - first > 1) {
+                int middle = (first + last) >>> 1;
+                invokeAll(new SegmentTask(batch, first, middle), new SegmentTask(batch, middle, last));
+                return;
+            }
+            int segment = first;
+            RoadStorage storage = batch.road.getStorage();
+            SegmentPool segmentPool = new SegmentPool();
+
+            // a road without a slot index over the shared storage, sending its recycles to segmentPool
+            Road view = new Road(storage);
+            view.setReusePool(segmentPool);
+
+            int change = 0;
+            for (int e = batch.eventStart[segment]; e < batch.eventStart[segment + 1]; e++) {
+                int event = batch.events[e];
+                if (event >= 0) {
+                    segmentPool.setMove(event);
+                    view.replayMove(batch.index[event], batch.direction[event], Road.DEFERRED_PLACEMENT);
+                } else {
+                    int move = -event - 1;
+                    storage.set(batch.placement[move], batch.placed[batch.placedNumber[move - batch.from]]);
+                    change++;
+                }
+            }
+            batch.recycled[segment] = segmentPool;
+            batch.vehicleChange[segment] = change + view.getNumVehicles();
+        }
+    }
+
+    /**
+     * A reuse pool that only collects the vehicles recycled by one segment,
+     * remembering which move recycled each of them.
+     */
+    private static class SegmentPool implements ReusePool {
+        private Vehicle[] vehicles = new Vehicle[16];
+        private int[] moves = new int[16];
+        private int count;
+        private int move; // the move being replayed
+        private int nextIndex; // the next vehicle to hand out
+
+        void setMove(int move) {
+            this.move = move;
+        }
+
+        public void recycleVehicle(Vehicle crashedVehicle) {
+            if (count == vehicles.length) {
+                vehicles = Arrays.copyOf(vehicles, count * 2);
+                moves = Arrays.copyOf(moves, count * 2);
+            }
+            vehicles[count] = crashedVehicle;
+            moves[count] = move;
+            count++;
+        }
+
+        /**
+         * Checks whether the next collected vehicle was recycled by the given move.
+         */
+        boolean hasNext(int move) {
+            return nextIndex < count && moves[nextIndex] == move;
+        }
+
+        Vehicle next() {
+            Vehicle vehicle = vehicles[nextIndex];
+            nextIndex++;
+            return vehicle;
+        }
+
+        public int size() {
+            return count - nextIndex;
+        }
+
+        /**
+         * A segment places no repaired vehicles, so the pool never hands one out.
+         *
+         * @throws EmptyQueueException always
+         */
+        public Vehicle reuseVehicle() throws EmptyQueueException {
+            throw new EmptyQueueException("A segment pool hands out no vehicles.");
+        }
+
+        /**
+         * Drops the vehicle collected last, together with the move that recycled it.
+         *
+         * @throws EmptyQueueException if no collected vehicle is left
+         */
+        public void undoRecycle() throws EmptyQueueException {
+            if (count == nextIndex) {
+                throw new EmptyQueueException("The segment pool is empty.");
+            }
+            count--;
+            vehicles[count] = null;
+        }
+
+        /**
+         * A segment pool hands out no vehicles, so there is no reuse to undo.
+         *
+         * @throws IllegalStateException always
+         */
+        public void undoReuse(Vehicle reusedVehicle) {
+            throw new IllegalStateException("A segment pool hands out no vehicles.");
+        }
+
+        /**
+         * Copies the collected vehicles and the moves that recycled them.
+         *
+         * @return a new SegmentPool with the same content
+         */
+        public ReusePool copy() {
+            SegmentPool clone = new SegmentPool();
+            clone.vehicles = vehicles.clone();
+            clone.moves = moves.clone();
+            clone.count = count;
+            clone.move = move;
+            clone.nextIndex = nextIndex;
+            return clone;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package onelanetraffic;
+
+/**
+ * Runs the commands of the one-lane traffic simulation against a road and its
+ * history. An "m" command moves a randomly selected vehicle by -1, 0 or 1
+ * positions; a "u" command restores the road to its state a number of moves ago,
+ * and an "r" command goes forward again over moves that were undone.
+ *
+ * Everything that happens is reported to a SimulationEventListener, which decides
+ * whether it is printed, logged in binary form or dropped. This class holds no
+ * user interface code, so it can be used both by the interactive MainApp and by
+ * the headless BatchRunner.
+ *
+ * @author Lehan Zhang
+ */
+public class Simulation {
+    private Road road; // the current state of the road
+    private HistoryTracking history; // previous states of the road
+    private SimulationEventListener events; // receives the events of the simulation
+
+    /**
+     * Creates a simulation of the given road that reports nothing.
+     *
+     * @param road the initial state of the road
+     * @param history the history used to undo moves
+     */
+    public Simulation(Road road, HistoryTracking history) {
+        this(road, history, SimulationEventListener.NONE);
+    }
+
+    /**
+     * Creates a simulation of the given road that reports to the given listener.
+     *
+     * @param road the initial state of the road
+     * @param history the history used to undo moves
+     * @param events the listener for the simulation, road and history events
+     */
+    public Simulation(Road road, HistoryTracking history, SimulationEventListener events) {
+        this.road = road;
+        this.history = history;
+        this.events = events;
+        road.setEventListener(events);
+        history.setEventListener(events);
+    }
+
+    /**
+     * Executes every command of the reader, reporting the state of the road
+     * at the start, after each command and at the end.
+     *
+     * @param commands reader over the commands, one action and one integer per command
+     * @return the number of commands read, invalid ones included
+     */
+    public long run(CommandReader commands) {
+        events.simulationStarted(road);
+
+        long count = 0;
+        while (commands.next()) {
+            count++;
+            if (!execute(commands.action(), commands.step())) {
+                commands.skipLine(); // ignores and consumes the rest of the invalid line
+            }
+        }
+
+        events.simulationFinished(road);
+        return count;
+    }
+
+    /**
+     * Executes a single command and reports the state of the road afterwards.
+     *
+     * @param action CommandReader.MOVE to move a vehicle, CommandReader.UNDO to undo moves,
+     *               CommandReader.REDO to redo undone moves
+     * @param step the direction of a move, or the number of moves to undo or redo
+     * @return false if the action is not a valid command; true otherwise
+     */
+    public boolean execute(char action, int step) {
+        road.setCurrent(); // set a current vehicle to perform movement
+
+        if (action == CommandReader.MOVE) {
+            // validate movement command
+            if ( !(step == 0 || step == 1 || step == -1) ) {
+                events.invalidDirection(step);
+                return true;
+            }
+            events.moveCommand(road.getPosition() - 1, step);
+            history.addHistory(road); // add the current road state to history
+            road.moveVehicle(step);
+        } else if (action == CommandReader.UNDO) {
+            events.undoCommand(step);
+            // restore the current road to its earlier state, or the oldest one if the history runs out
+            Road prev = history.undo(step);
+            if (prev != null) {
+                road = prev; // reassign road to its previous state
+            }
+            road.setEventListener(events);
+        } else if (action == CommandReader.REDO) {
+            events.redoCommand(step);
+            Road next = history.redo(step);
+            if (next != null) {
+                road = next;
+            }
+            road.setEventListener(events);
+        } else {
+            events.invalidCommand();
+            return false;
+        }
+        events.commandFinished(road);
+        return true;
+    }
+
+    /**
+     * Retrieves the current state of the road.
+     *
+     * @return the road as it is after the commands executed so far
+     */
+    public Road getRoad() {
+        return road;
+    }
+
+    /**
+     * Retrieves the history of the simulation.
+     *
+     * @return the history tracker used to undo moves
+     */
+    public HistoryTracking getHistory() {
+        return history;
+    }
+}
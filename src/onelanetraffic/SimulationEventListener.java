@@ -0,0 +1,112 @@
+package onelanetraffic;
+
+/**
+ * Receives what happens during a simulation: the commands being executed, the
+ * moves and collisions on the road, the vehicles going into and out of the
+ * reuse pool, and undo and redo requests the history cannot satisfy.
+ *
+ * Positions are 0-based array indexes. Every method does nothing by default, so
+ * a listener only overrides the events it cares about. Road and HistoryTracking
+ * skip building events entirely when their listener is NONE, and Road does not
+ * build vehicle objects for a listener whose needsVehicles returns false.
+ *
+ * @author Lehan Zhang
+ */
+public interface SimulationEventListener {
+    /**  A listener that ignores every event. */
+    public static final SimulationEventListener NONE = new NoOpEventListener();
+
+    /**  The simulation is about to execute its first command on road. */
+    public default void simulationStarted(Road road) {
+    }
+
+    /**  A move command selected the vehicle at position to move by step. */
+    public default void moveCommand(int position, int step) {
+    }
+
+    /**  An undo command asked to go back the given number of moves. */
+    public default void undoCommand(int steps) {
+    }
+
+    /**  A redo command asked to go forward again the given number of undone moves. */
+    public default void redoCommand(int steps) {
+    }
+
+    /**  A move command had a step other than -1, 0 or 1 and was skipped. */
+    public default void invalidDirection(int step) {
+    }
+
+    /**  A command had an unknown action and was skipped. */
+    public default void invalidCommand() {
+    }
+
+    /**  A command finished; road is the current state of the road. */
+    public default void commandFinished(Road road) {
+    }
+
+    /**  All commands were executed; road is the final state of the road. */
+    public default void simulationFinished(Road road) {
+    }
+
+    /**  A vehicle was told to move by 0 and stayed at position. */
+    public default void vehicleStayed(Vehicle vehicle, int position) {
+    }
+
+    /**  The vehicle at position would have left the road and did not move. */
+    public default void moveOutOfRange(int position, int direction) {
+    }
+
+    /**  A vehicle moved into the empty position to. */
+    public default void vehicleMoved(Vehicle vehicle, int from, int to) {
+    }
+
+    /**
+     * The vehicle at position moved into the vehicle at target. Reported after
+     * the removed vehicles went into the pool.
+     *
+     * @param type the kind of collision
+     * @param mover the vehicle that moved
+     * @param position the position of the mover
+     * @param other the vehicle that was hit
+     * @param target the position of the vehicle that was hit
+     * @param moverRemoved true if the mover was removed from the road
+     * @param otherRemoved true if the vehicle that was hit was removed from the road
+     * @param pool the reuse pool after the collision
+     */
+    public default void collision(CollisionType type, Vehicle mover, int position, Vehicle other, int target,
+                                  boolean moverRemoved, boolean otherRemoved, ReusePool pool) {
+    }
+
+    /**  A crashed vehicle at position was added to the reuse pool; pool is the pool afterwards. */
+    public default void vehicleRecycled(Vehicle vehicle, int position, ReusePool pool) {
+    }
+
+    /**  A vehicle from the reuse pool was repaired and placed at position; pool is what is left. */
+    public default void vehicleReused(Vehicle vehicle, int position, ReusePool pool) {
+    }
+
+    /**  A vehicle was needed from the reuse pool but the pool was empty. */
+    public default void poolEmpty() {
+    }
+
+    /**  An undo was requested but there was no history left. */
+    public default void historyEmpty() {
+    }
+
+    /**  A redo was requested but there was no undone move left to redo. */
+    public default void redoEmpty() {
+    }
+
+    /**
+     * Returns whether this listener looks at the vehicles passed to vehicleStayed,
+     * vehicleMoved and collision. If it does not, Road passes null for the ones
+     * it would otherwise have to build from a primitive or off-heap storage just
+     * for the event; recycled and reused vehicles are passed either way. Asked
+     * when the listener is set on a road.
+     *
+     * @return true by default
+     */
+    public default boolean needsVehicles() {
+        return true;
+    }
+}
@@ -0,0 +1,331 @@
+package onelanetraffic;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs many independent simulations in one process, each with its own road,
+ * history, seed, command reader and output sink, and reports the throughput:
+ *
+ * <pre>
+ * java onelanetraffic.SimulationFarm --simulations 10000 --size 200 --vehicles 120 --commands 5000 --seed 1
+ * </pre>
+ *
+ * Simulations run on virtual threads when the runtime has them (Java 21 or
+ * later), otherwise on a fixed pool of platform threads, one per core. Either
+ * way at most --max-active simulations hold a road at the same time, so memory
+ * stays bounded however many are queued.
+ *
+ * Options:
+ * <ul>
+ * <li>--simulations N: number of simulations to run (required)</li>
+ * <li>--size N: number of positions on each road (required)</li>
+ * <li>--vehicles N: number of vehicles on each road, 1 to size (required)</li>
+ * <li>--seed S: seed the per-simulation seeds are drawn from; random if omitted</li>
+ * <li>--input PATH: text or binary command file every simulation reads with its own reader</li>
+ * <li>--commands N: instead of --input, generate a script of N random commands
+ * shared by all simulations; 1000 by default</li>
+ * <li>--output DIR: write the events of simulation i to DIR/sim-i.txt (or .bin);
+ * events are dropped by default</li>
+ * <li>--events text|binary: format of the files in --output, text by default</li>
+ * <li>--frames diff|full: road frames of the text files, diff by default</li>
+ * <li>--storage array|persistent|primitive|offheap: road storage, array by default</li>
+ * <li>--history snapshot|journal|checkpoint|indexed: history store, journal by default</li>
+ * <li>--checkpoint-interval K: commands between checkpoints for checkpoint history, 64 by default</li>
+ * <li>--threads N: use a fixed pool of N platform threads instead of virtual threads</li>
+ * <li>--max-active N: simulations running at the same time, 4 per core by default</li>
+ * </ul>
+ * The exit status is 0 if every simulation finished, 1 if any failed and 2 for invalid arguments.
+ *
+ * @author Lehan Zhang
+ */
+public class SimulationFarm {
+    private int simulations; // number of simulations to run
+    private int size; // size of each road
+    private int numVehicles; // num of vehicles to place on each road
+    private Long seed; // seed of the per-simulation seeds, null for a random seed
+    private String inputFile; // command file, null to generate one
+    private int commandCount = 1000; // commands of a generated script
+    private String outputDir; // directory of the per-simulation output, null to drop events
+    private boolean binaryEvents; // true to write BinaryEventLog files instead of text
+    private boolean fullFrames; // true to show the whole road after every command
+    private String storage = "array"; // road storage kind
+    private String history = "journal"; // history store kind
+    private int checkpointInterval = 64; // commands between checkpoints
+    private int threads; // size of the platform thread pool, 0 for virtual threads
+    private int maxActive = 4 * Runtime.getRuntime().availableProcessors(); // simulations running at once
+
+    public static void main(String[] args) {
+        SimulationFarm farm = new SimulationFarm();
+        try {
+            farm.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println("Usage: java onelanetraffic.SimulationFarm --simulations N --size N --vehicles N"
+                    + " [--seed S] [--input PATH | --commands N] [--output DIR] [--events text|binary]"
+                    + " [--frames diff|full] [--storage array|persistent|primitive|offheap]"
+                    + " [--history snapshot|journal|checkpoint|indexed] [--checkpoint-interval K]"
+                    + " [--threads N] [--max-active N]");
+            System.exit(2);
+        }
+        System.exit(farm.run());
+    }
+
+    /**
+     * Reads the command line options into this farm.
+     *
+     * @param args the command line arguments
+     * @throws IllegalArgumentException if an option is unknown, missing its value or invalid
+     */
+    public void parse(String[] args) {
+        boolean hasSimulations = false;
+        boolean hasSize = false;
+        boolean hasVehicles = false;
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "--simulations":
+                    simulations = BatchRunner.parsePositive(option, value);
+                    hasSimulations = true;
+                    break;
+                case "--size":
+                    size = BatchRunner.parsePositive(option, value);
+                    hasSize = true;
+                    break;
+                case "--vehicles":
+                    numVehicles = BatchRunner.parsePositive(option, value);
+                    hasVehicles = true;
+                    break;
+                case "--seed":
+                    try {
+                        seed = Long.parseLong(value);
+                    } catch (NumberFormatException ex) {
+                        throw new IllegalArgumentException("Invalid seed: " + value);
+                    }
+                    break;
+                case "--input":
+                    inputFile = value;
+                    break;
+                case "--commands":
+                    commandCount = BatchRunner.parsePositive(option, value);
+                    break;
+                case "--output":
+                    outputDir = value;
+                    break;
+                case "--events":
+                    if (!value.equals("text") && !value.equals("binary")) {
+                        throw new IllegalArgumentException("Unknown events: " + value);
+                    }
+                    binaryEvents = value.equals("binary");
+                    break;
+                case "--frames":
+                    if (!value.equals("diff") && !value.equals("full")) {
+                        throw new IllegalArgumentException("Unknown frames: " + value);
+                    }
+                    fullFrames = value.equals("full");
+                    break;
+                case "--storage":
+                    storage = value;
+                    break;
+                case "--history":
+                    history = value;
+                    break;
+                case "--checkpoint-interval":
+                    checkpointInterval = BatchRunner.parsePositive(option, value);
+                    break;
+                case "--threads":
+                    threads = BatchRunner.parsePositive(option, value);
+                    break;
+                case "--max-active":
+                    maxActive = BatchRunner.parsePositive(option, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+        if (!hasSimulations || !hasSize || !hasVehicles) {
+            throw new IllegalArgumentException("--simulations, --size and --vehicles are required.");
+        }
+        if (numVehicles > size) {
+            throw new IllegalArgumentException("Total number of vehicles need to be less than road size");
+        }
+        BatchRunner.checkStorageKind(storage); // validate the names up front, without creating anything
+        BatchRunner.checkHistoryKind(history);
+    }
+
+    /**
+     * Runs all simulations and prints the throughput report.
+     *
+     * @return the exit status of the run
+     */
+    public int run() {
+        Path commands;
+        Path generated = null; // the generated script, deleted at the end
+        try {
+            if (inputFile != null) {
+                commands = Path.of(inputFile);
+            } else {
+                generated = Files.createTempFile("farm-commands", ".bin");
+                writeScript(generated);
+                commands = generated;
+            }
+            if (outputDir != null) {
+                Files.createDirectories(Path.of(outputDir));
+            }
+        } catch (IOException ex) {
+            System.err.println(ex.getMessage());
+            return 1;
+        }
+
+        ExecutorService executor = threads > 0 ? null : newVirtualThreadExecutor();
+        String threadKind = "virtual threads";
+        if (executor == null) {
+            int poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+            executor = Executors.newFixedThreadPool(poolSize);
+            threadKind = poolSize + (poolSize == 1 ? " platform thread" : " platform threads");
+        }
+        Semaphore active = new Semaphore(maxActive);
+
+        SplittableRandom seeds = seed == null ? new SplittableRandom() : new SplittableRandom(seed);
+        List<Future<Long>> results = new ArrayList<>(simulations);
+        long start = System.nanoTime();
+        for (int i = 0; i < simulations; i++) {
+            int number = i;
+            long simulationSeed = seeds.nextLong();
+            results.add(executor.submit(() -> {
+                active.acquire();
+                try {
+                    return runSimulation(number, simulationSeed, commands);
+                } finally {
+                    active.release();
+                }
+            }));
+        }
+
+        long commandTotal = 0;
+        int failed = 0;
+        for (Future<Long> result : results) {
+            try {
+                commandTotal += result.get();
+            } catch (ExecutionException ex) {
+                if (failed == 0) {
+                    System.err.println("A simulation failed: " + ex.getCause());
+                }
+                failed++;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                failed++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        executor.shutdown();
+        if (generated != null) {
+            try {
+                Files.deleteIfExists(generated);
+            } catch (IOException ex) {
+                System.err.println(ex.getMessage());
+            }
+        }
+
+        System.out.println("Simulations: " + (simulations - failed) + " finished, " + failed + " failed");
+        System.out.println("Commands: " + commandTotal);
+        System.out.printf("Elapsed: %.3f s on %s, at most %d active%n", seconds, threadKind, maxActive);
+        System.out.printf("Throughput: %.1f simulations/s, %.0f commands/s%n",
+                (simulations - failed) / seconds, commandTotal / seconds);
+        return failed == 0 ? 0 : 1;
+    }
+
+    /**
+     * Runs one simulation to the end of the command file.
+     *
+     * @param number the number of the simulation, used to name its output file
+     * @param simulationSeed the seed of its road
+     * @param commands the command file
+     * @return the number of commands it read
+     * @throws IOException if the command file cannot be read or the output cannot be written
+     */
+    private long runSimulation(int number, long simulationSeed, Path commands) throws IOException {
+        Road aRoad = new Road(BatchRunner.createStorage(storage, size), numVehicles,
+                new SplittableRandom(simulationSeed));
+        HistoryTracking roadHistory = BatchRunner.createHistory(history, checkpointInterval, null);
+
+        if (outputDir == null) {
+            return run(aRoad, roadHistory, SimulationEventListener.NONE, commands);
+        }
+        String name = String.format("sim-%06d", number) + (binaryEvents ? ".bin" : ".txt");
+        try (OutputStream file = new BufferedOutputStream(
+                new FileOutputStream(Path.of(outputDir, name).toFile()), 1 << 16)) {
+            if (binaryEvents) {
+                try (BinaryEventLog events = new BinaryEventLog(file)) {
+                    return run(aRoad, roadHistory, events, commands);
+                }
+            }
+            try (TextEventWriter events = new TextEventWriter(new PrintStream(file, false), false,
+                    new RoadRenderer(!fullFrames))) {
+                return run(aRoad, roadHistory, events, commands);
+            }
+        }
+    }
+
+    /**
+     * Runs a simulation of the road over the command file.
+     *
+     * @return the number of commands it read
+     * @throws IOException if the command file cannot be read
+     */
+    private static long run(Road aRoad, HistoryTracking roadHistory, SimulationEventListener events,
+                            Path commands) throws IOException {
+        try (CommandReader reader = new CommandReader(commands)) {
+            return new Simulation(aRoad, roadHistory, events).run(reader);
+        }
+    }
+
+    /**
+     * Writes a binary script of random commands: mostly moves, some undos of 1 to 3 moves.
+     */
+    private void writeScript(Path path) throws IOException {
+        SplittableRandom rand = seed == null ? new SplittableRandom() : new SplittableRandom(~seed);
+        try (CommandWriter writer = new CommandWriter(path, true)) {
+            for (int i = 0; i < commandCount; i++) {
+                if (rand.nextInt(100) < 85) {
+                    writer.write(CommandReader.MOVE, rand.nextInt(3) - 1);
+                } else {
+                    writer.write(CommandReader.UNDO, 1 + rand.nextInt(3));
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates an executor that starts a virtual thread per task, if the runtime has virtual threads.
+     * Looked up reflectively so that the code still compiles and runs on Java 17.
+     *
+     * @return the executor, or null if virtual threads are not available
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            return null; // before Java 21, or preview features disabled
+        }
+    }
+}
@@ -0,0 +1,443 @@
+package onelanetraffic;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * An event listener that counts what happens in a simulation and measures how
+ * long each command takes, and passes every event on to another listener:
+ *
+ * <pre>
+ * SimulationMetrics metrics = new SimulationMetrics(output);
+ * metrics.watch(history);
+ * metrics.register("batch");
+ * new Simulation(road, history, metrics).run(commands);
+ * </pre>
+ *
+ * The simulation thread only increments counters and records latencies in a
+ * LatencyHistogram, without any locking. Every 100 ms, and when the simulation
+ * finishes, it publishes a copy of them, which is what the JMX attributes
+ * (see SimulationMetricsMXBean), format() and MetricsReporter show. Reading
+ * the metrics from other threads therefore never slows the simulation down.
+ *
+ * Counting never looks at a vehicle, so metrics over a primitive or off-heap
+ * storage do not make the road build vehicle objects for the events unless the
+ * next listener needs them (see needsVehicles).
+ *
+ * The latency of a command runs from its command event to commandFinished, so
+ * it covers the move, collisions, history and events of the command but not
+ * reading it or selecting the vehicle to move.
+ *
+ * @author Lehan Zhang
+ */
+public class SimulationMetrics implements SimulationEventListener, SimulationMetricsMXBean {
+    private static final long PUBLISH_NANOS = 100_000_000L; // most time between two published copies
+
+    // indexes of the counters; collisions follow, one per CollisionType
+    private static final int COMMANDS = 0;
+    private static final int MOVE_COMMANDS = 1;
+    private static final int UNDO_COMMANDS = 2;
+    private static final int REDO_COMMANDS = 3;
+    private static final int INVALID_COMMANDS = 4;
+    private static final int VEHICLES_MOVED = 5;
+    private static final int VEHICLES_STAYED = 6;
+    private static final int OUT_OF_RANGE = 7;
+    private static final int RECYCLED = 8;
+    private static final int REUSED = 9;
+    private static final int POOL_EMPTY = 10;
+    private static final int COLLISIONS = 11;
+    private static final int COUNTERS = COLLISIONS + CollisionType.values().length;
+
+    private final SimulationEventListener next; // receives every event after it was counted
+    private final long[] counters = new long[COUNTERS]; // written by the simulation thread only
+    private final LatencyHistogram commandLatency = new LatencyHistogram(); // move, undo and redo commands
+    private final LatencyHistogram moveLatency = new LatencyHistogram();
+    private final LatencyHistogram undoLatency = new LatencyHistogram(); // undo and redo commands
+    private LatencyHistogram currentLatency; // histogram of the command being executed, null if none
+    private long commandStart; // System.nanoTime() at the event of the command being executed
+    private long lastPublished = System.nanoTime(); // System.nanoTime() of the latest published copy
+    private Road road; // the road after the latest command
+    private HistoryTracking history; // the history whose depth is reported, null if not watched
+    private volatile Snapshot published = new Snapshot(this); // the copy other threads read
+    private ObjectName name; // the name the metrics are registered under, null if not registered
+
+    /**
+     * A copy of the metrics at one point in time.
+     */
+    private static final class Snapshot {
+        private final long[] counters;
+        private final LatencyHistogram commandLatency;
+        private final LatencyHistogram moveLatency;
+        private final LatencyHistogram undoLatency;
+        private final int poolSize;
+        private final int historyDepth;
+
+        private Snapshot(SimulationMetrics metrics) {
+            counters = metrics.counters.clone();
+            commandLatency = metrics.commandLatency.copy();
+            moveLatency = metrics.moveLatency.copy();
+            undoLatency = metrics.undoLatency.copy();
+            poolSize = metrics.road == null ? 0 : metrics.road.getReusePool().size();
+            historyDepth = metrics.history == null ? -1 : metrics.history.size();
+        }
+    }
+
+    /**
+     * Creates metrics that only count.
+     */
+    public SimulationMetrics() {
+        this(SimulationEventListener.NONE);
+    }
+
+    /**
+     * Creates metrics that count every event and then pass it on.
+     *
+     * @param next the listener that receives the events, e.g. a TextEventWriter
+     */
+    public SimulationMetrics(SimulationEventListener next) {
+        this.next = next;
+    }
+
+    /**
+     * Reports the depth of the given history from now on. Must be called before
+     * the simulation starts, or from the simulation thread.
+     *
+     * @param history the history of the simulation
+     */
+    public void watch(HistoryTracking history) {
+        this.history = history;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server as
+     * onelanetraffic:type=SimulationMetrics,name=NAME.
+     *
+     * @param instance the name that tells simulations in the same process apart
+     * @return the name the metrics were registered under
+     * @throws JMException if the metrics cannot be registered, e.g. because the name is taken
+     */
+    public ObjectName register(String instance) throws JMException {
+        ObjectName objectName = new ObjectName("onelanetraffic:type=SimulationMetrics,name="
+                + ObjectName.quote(instance));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        name = objectName;
+        return objectName;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if they were registered.
+     *
+     * @throws JMException if the metrics cannot be unregistered
+     */
+    public void unregister() throws JMException {
+        if (name != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            name = null;
+        }
+    }
+
+    public void simulationStarted(Road road) {
+        this.road = road;
+        next.simulationStarted(road);
+    }
+
+    public void moveCommand(int position, int step) {
+        counters[COMMANDS]++;
+        counters[MOVE_COMMANDS]++;
+        start(moveLatency);
+        next.moveCommand(position, step);
+    }
+
+    public void undoCommand(int steps) {
+        counters[COMMANDS]++;
+        counters[UNDO_COMMANDS]++;
+        start(undoLatency);
+        next.undoCommand(steps);
+    }
+
+    public void redoCommand(int steps) {
+        counters[COMMANDS]++;
+        counters[REDO_COMMANDS]++;
+        start(undoLatency);
+        next.redoCommand(steps);
+    }
+
+    public void invalidDirection(int step) {
+        counters[COMMANDS]++;
+        counters[INVALID_COMMANDS]++;
+        next.invalidDirection(step);
+    }
+
+    public void invalidCommand() {
+        counters[COMMANDS]++;
+        counters[INVALID_COMMANDS]++;
+        next.invalidCommand();
+    }
+
+    public void commandFinished(Road road) {
+        next.commandFinished(road);
+        long now = System.nanoTime();
+        if (currentLatency != null) {
+            long latency = now - commandStart;
+            commandLatency.record(latency);
+            currentLatency.record(latency);
+            currentLatency = null;
+        }
+        this.road = road;
+        if (now - lastPublished >= PUBLISH_NANOS) {
+            publish(now);
+        }
+    }
+
+    public void simulationFinished(Road road) {
+        next.simulationFinished(road);
+        this.road = road;
+        publish(System.nanoTime());
+    }
+
+    public void vehicleStayed(Vehicle vehicle, int position) {
+        counters[VEHICLES_STAYED]++;
+        next.vehicleStayed(vehicle, position);
+    }
+
+    public void moveOutOfRange(int position, int direction) {
+        counters[OUT_OF_RANGE]++;
+        next.moveOutOfRange(position, direction);
+    }
+
+    public void vehicleMoved(Vehicle vehicle, int from, int to) {
+        counters[VEHICLES_MOVED]++;
+        next.vehicleMoved(vehicle, from, to);
+    }
+
+    public void collision(CollisionType type, Vehicle mover, int position, Vehicle other, int target,
+                          boolean moverRemoved, boolean otherRemoved, ReusePool pool) {
+        counters[COLLISIONS + type.ordinal()]++;
+        next.collision(type, mover, position, other, target, moverRemoved, otherRemoved, pool);
+    }
+
+    public void vehicleRecycled(Vehicle vehicle, int position, ReusePool pool) {
+        counters[RECYCLED]++;
+        next.vehicleRecycled(vehicle, position, pool);
+    }
+
+    public void vehicleReused(Vehicle vehicle, int position, ReusePool pool) {
+        counters[REUSED]++;
+        next.vehicleReused(vehicle, position, pool);
+    }
+
+    public void poolEmpty() {
+        counters[POOL_EMPTY]++;
+        next.poolEmpty();
+    }
+
+    public void historyEmpty() {
+        next.historyEmpty();
+    }
+
+    public void redoEmpty() {
+        next.redoEmpty();
+    }
+
+    /**
+     * Counts from the event types and positions only, so the road builds vehicle
+     * objects for the events only if the next listener needs them.
+     *
+     * @return whether the next listener needs the vehicles
+     */
+    public boolean needsVehicles() {
+        return next.needsVehicles();
+    }
+
+    public long getCommands() {
+        return published.counters[COMMANDS];
+    }
+
+    public long getMoveCommands() {
+        return published.counters[MOVE_COMMANDS];
+    }
+
+    public long getUndoCommands() {
+        return published.counters[UNDO_COMMANDS];
+    }
+
+    public long getRedoCommands() {
+        return published.counters[REDO_COMMANDS];
+    }
+
+    public long getInvalidCommands() {
+        return published.counters[INVALID_COMMANDS];
+    }
+
+    public long getVehiclesMoved() {
+        return published.counters[VEHICLES_MOVED];
+    }
+
+    public long getVehiclesStayed() {
+        return published.counters[VEHICLES_STAYED];
+    }
+
+    public long getMovesOutOfRange() {
+        return published.counters[OUT_OF_RANGE];
+    }
+
+    public long getCollisions() {
+        return totalCollisions(published.counters);
+    }
+
+    public long getCarsSameColorCollisions() {
+        return getCollisions(CollisionType.CARS_SAME_COLOR);
+    }
+
+    public long getCarsDifferentColorCollisions() {
+        return getCollisions(CollisionType.CARS_DIFFERENT_COLOR);
+    }
+
+    public long getBusVsBusCollisions() {
+        return getCollisions(CollisionType.BUS_VS_BUS);
+    }
+
+    public long getCarIntoBusCollisions() {
+        return getCollisions(CollisionType.CAR_INTO_BUS);
+    }
+
+    public long getBusIntoCarCollisions() {
+        return getCollisions(CollisionType.BUS_INTO_CAR);
+    }
+
+    /**
+     * Returns the number of collisions of one type.
+     *
+     * @param type the kind of collision
+     * @return the published count of collisions of that type
+     */
+    public long getCollisions(CollisionType type) {
+        return published.counters[COLLISIONS + type.ordinal()];
+    }
+
+    public long getVehiclesRecycled() {
+        return published.counters[RECYCLED];
+    }
+
+    public long getVehiclesReused() {
+        return published.counters[REUSED];
+    }
+
+    public long getPoolEmptyCount() {
+        return published.counters[POOL_EMPTY];
+    }
+
+    public int getReusePoolSize() {
+        return published.poolSize;
+    }
+
+    public int getHistoryDepth() {
+        return published.historyDepth;
+    }
+
+    public double getCommandLatencyMean() {
+        return published.commandLatency.getMean();
+    }
+
+    public long getCommandLatencyP50() {
+        return published.commandLatency.getValueAtPercentile(50);
+    }
+
+    public long getCommandLatencyP90() {
+        return published.commandLatency.getValueAtPercentile(90);
+    }
+
+    public long getCommandLatencyP99() {
+        return published.commandLatency.getValueAtPercentile(99);
+    }
+
+    public long getCommandLatencyP999() {
+        return published.commandLatency.getValueAtPercentile(99.9);
+    }
+
+    public long getCommandLatencyMax() {
+        return published.commandLatency.getMax();
+    }
+
+    public long getMoveLatencyP99() {
+        return published.moveLatency.getValueAtPercentile(99);
+    }
+
+    public long getUndoLatencyP99() {
+        return published.undoLatency.getValueAtPercentile(99);
+    }
+
+    /**
+     * Formats the published metrics as a few lines of text.
+     *
+     * @return the text dump of the metrics
+     */
+    public String format() {
+        Snapshot snapshot = published;
+        long[] count = snapshot.counters;
+        LatencyHistogram latency = snapshot.commandLatency;
+        StringBuilder text = new StringBuilder();
+        text.append("Simulation metrics:\n");
+        text.append("  commands: ").append(count[COMMANDS])
+                .append(" (moves ").append(count[MOVE_COMMANDS])
+                .append(", undos ").append(count[UNDO_COMMANDS])
+                .append(", redos ").append(count[REDO_COMMANDS])
+                .append(", invalid ").append(count[INVALID_COMMANDS]).append(")\n");
+        text.append("  vehicles: moved ").append(count[VEHICLES_MOVED])
+                .append(", stayed ").append(count[VEHICLES_STAYED])
+                .append(", out of range ").append(count[OUT_OF_RANGE])
+                .append(", recycled ").append(count[RECYCLED])
+                .append(", reused ").append(count[REUSED])
+                .append(", pool empty ").append(count[POOL_EMPTY]).append('\n');
+        text.append("  collisions: ").append(totalCollisions(count)).append(" (");
+        for (CollisionType type : CollisionType.values()) {
+            if (type.ordinal() > 0) {
+                text.append(", ");
+            }
+            text.append(type.name().toLowerCase().replace('_', ' ')).append(' ')
+                    .append(count[COLLISIONS + type.ordinal()]);
+        }
+        text.append(")\n");
+        text.append("  reuse pool size: ").append(snapshot.poolSize);
+        if (snapshot.historyDepth >= 0) {
+            text.append(", history depth: ").append(snapshot.historyDepth);
+        }
+        text.append('\n');
+        text.append(String.format("  command latency (us): mean %.2f, p50 %.2f, p90 %.2f, p99 %.2f,"
+                        + " p99.9 %.2f, max %.2f; move p99 %.2f, undo p99 %.2f%n",
+                latency.getMean() / 1e3, latency.getValueAtPercentile(50) / 1e3,
+                latency.getValueAtPercentile(90) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+                latency.getValueAtPercentile(99.9) / 1e3, latency.getMax() / 1e3,
+                snapshot.moveLatency.getValueAtPercentile(99) / 1e3,
+                snapshot.undoLatency.getValueAtPercentile(99) / 1e3));
+        return text.toString();
+    }
+
+    /**
+     * Adds up the collision counters of a copy of the counters.
+     */
+    private static long totalCollisions(long[] count) {
+        long total = 0;
+        for (int i = COLLISIONS; i < COUNTERS; i++) {
+            total += count[i];
+        }
+        return total;
+    }
+
+    /**
+     * Starts timing a command.
+     */
+    private void start(LatencyHistogram histogram) {
+        currentLatency = histogram;
+        commandStart = System.nanoTime();
+    }
+
+    /**
+     * Makes a copy of the metrics visible to other threads.
+     */
+    private void publish(long now) {
+        published = new Snapshot(this);
+        lastPublished = now;
+    }
+}
@@ -0,0 +1,95 @@
+package onelanetraffic;
+
+/**
+ * The management interface of SimulationMetrics, as seen in JConsole, VisualVM
+ * or any other JMX client under onelanetraffic:type=SimulationMetrics.
+ *
+ * Counts are totals since the metrics were created. Latencies are in
+ * nanoseconds and cover the move, undo and redo commands executed so far.
+ * Values are published by the simulation thread at most every 100 ms and at
+ * the end of the simulation, so they may lag behind it by that much.
+ *
+ * @author Lehan Zhang
+ */
+public interface SimulationMetricsMXBean {
+    /**  Commands executed, invalid ones included. */
+    public long getCommands();
+
+    /**  Move commands executed. */
+    public long getMoveCommands();
+
+    /**  Undo commands executed. */
+    public long getUndoCommands();
+
+    /**  Redo commands executed. */
+    public long getRedoCommands();
+
+    /**  Commands skipped for an unknown action or an invalid direction. */
+    public long getInvalidCommands();
+
+    /**  Vehicles that moved into an empty position. */
+    public long getVehiclesMoved();
+
+    /**  Vehicles that were told to move by 0. */
+    public long getVehiclesStayed();
+
+    /**  Moves that would have left the road. */
+    public long getMovesOutOfRange();
+
+    /**  Collisions of every type. */
+    public long getCollisions();
+
+    /**  Collisions of two cars of the same color. */
+    public long getCarsSameColorCollisions();
+
+    /**  Collisions of two cars of different colors. */
+    public long getCarsDifferentColorCollisions();
+
+    /**  Collisions of two buses. */
+    public long getBusVsBusCollisions();
+
+    /**  Collisions of a car moving into a bus. */
+    public long getCarIntoBusCollisions();
+
+    /**  Collisions of a bus moving into a car. */
+    public long getBusIntoCarCollisions();
+
+    /**  Crashed vehicles added to the reuse pool. */
+    public long getVehiclesRecycled();
+
+    /**  Vehicles taken from the reuse pool and placed on the road. */
+    public long getVehiclesReused();
+
+    /**  Times a vehicle was needed from the reuse pool but it was empty. */
+    public long getPoolEmptyCount();
+
+    /**  Vehicles in the reuse pool of the current road. */
+    public int getReusePoolSize();
+
+    /**  Moves that can be undone, or -1 if the history is not watched. */
+    public int getHistoryDepth();
+
+    /**  Mean latency of a command in nanoseconds. */
+    public double getCommandLatencyMean();
+
+    /**  Median latency of a command in nanoseconds. */
+    public long getCommandLatencyP50();
+
+    /**  90th percentile of the latency of a command in nanoseconds. */
+    public long getCommandLatencyP90();
+
+    /**  99th percentile of the latency of a command in nanoseconds. */
+    public long getCommandLatencyP99();
+
+    /**  99.9th percentile of the latency of a command in nanoseconds. */
+    public long getCommandLatencyP999();
+
+    /**  Largest latency of a command in nanoseconds. */
+    public long getCommandLatencyMax();
+
+    /**  99th percentile of the latency of a move command in nanoseconds. */
+    public long getMoveLatencyP99();
+
+    /**  99th percentile of the latency of an undo or redo command in nanoseconds. */
+    public long getUndoLatencyP99();
+}
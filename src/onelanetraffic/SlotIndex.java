@@ -0,0 +1,41 @@
+package onelanetraffic;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Keeps track of which positions of a road are occupied and which are free,
+ * so that a random vehicle or a random empty position can be picked without
+ * scanning the road, no matter how full it is.
+ *
+ * Picks are made in position order: randomOccupied draws k uniformly and
+ * returns the k-th occupied position counted from the start of the road, and
+ * randomFree the k-th free one. What is picked therefore only depends on the
+ * vehicles on the road and the random source, not on the order in which the
+ * road was changed, so a road restored by any history store picks the same
+ * positions as the road it was saved from.
+ *
+ * Each road storage builds the index that suits it (see
+ * RoadStorage.createSlotIndex), and a road copy takes a copy of the index
+ * along with the copy of its storage.
+ *
+ * @author Lehan Zhang
+ */
+public interface SlotIndex {
+    /**  Marks a free position as occupied. Does nothing if it is already occupied. */
+    public void occupy(int position);
+
+    /**  Marks an occupied position as free. Does nothing if it is already free. */
+    public void vacate(int position);
+
+    /**  Picks an occupied position uniformly at random, or returns -1 if there is none. */
+    public int randomOccupied(RandomGenerator rand);
+
+    /**  Picks a free position uniformly at random, or returns -1 if there is none. */
+    public int randomFree(RandomGenerator rand);
+
+    /**  Returns the number of occupied positions. */
+    public int getOccupiedCount();
+
+    /**  Returns an independent copy; later changes to either one do not show in the other. */
+    public SlotIndex copy();
+}
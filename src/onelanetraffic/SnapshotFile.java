@@ -0,0 +1,243 @@
+package onelanetraffic;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import exceptionclasses.EmptyQueueException;
+
+/**
+ * A compact binary image of a road and its reuse pool, together with how far
+ * the simulation had got in its command file when the image was taken.
+ *
+ * The file starts with the four bytes "OLTS", a format version, the number of
+ * commands executed, the offset in the command file to resume reading at, the
+ * seed the random source of the road was reseeded with, the road size, its vehicle count, and the number of occupied positions and of
+ * vehicles in the pool. Then comes one record per occupied position (its array
+ * index as an int and the vehicle packed into a long as in OffHeapRoadStorage)
+ * and one packed long per vehicle in the pool, front first. Empty positions
+ * take no space, so a sparse road gives a small file.
+ *
+ * A snapshot is written to a temporary file, forced to disk and renamed over
+ * the previous one, so a crash while writing leaves the previous snapshot in
+ * place. It is read back through memory-mapped windows.
+ *
+ * @author Lehan Zhang
+ */
+public class SnapshotFile {
+    private static final byte[] MAGIC = {'O', 'L', 'T', 'S'};
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 48;
+    private static final long WINDOW_SIZE = 1L << 30; // bytes mapped at a time when reading
+
+    private final long commandNumber; // commands executed when the snapshot was taken
+    private final long inputOffset; // where the next command starts in the command file
+    private final long seed; // seed of the random source of the road when the snapshot was taken
+    private final Road road; // the road read back, with its reuse pool
+
+    private SnapshotFile(long commandNumber, long inputOffset, long seed, Road road) {
+        this.commandNumber = commandNumber;
+        this.inputOffset = inputOffset;
+        this.seed = seed;
+        this.road = road;
+    }
+
+    /**
+     * Writes a snapshot of the road, replacing the file atomically.
+     *
+     * @param file the snapshot file
+     * @param road the road to save, with its reuse pool
+     * @param commandNumber the number of commands executed so far
+     * @param inputOffset the offset in the command file of the next command
+     * @param seed the seed the random source of the road was just reseeded with
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, Road road, long commandNumber, long inputOffset, long seed)
+            throws IOException {
+        RoadStorage storage = road.getStorage();
+        int occupied = 0;
+        for (int i = 0; i < storage.size(); i++) {
+            if (storage.type(i) != RoadStorage.EMPTY) {
+                occupied++;
+            }
+        }
+        // a copy of a persistent pool is free, and taking from it leaves the road's pool alone
+        ReusePool pool = road.getReusePool().copy();
+        List<Vehicle> pooled = new ArrayList<>();
+        try {
+            while (true) {
+                pooled.add(pool.reuseVehicle());
+            }
+        } catch (EmptyQueueException ex) {
+            // every vehicle of the pool was taken
+        }
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(commandNumber);
+            out.writeLong(inputOffset);
+            out.writeLong(seed);
+            out.writeInt(storage.size());
+            out.writeInt(road.getNumVehicles());
+            out.writeInt(occupied);
+            out.writeInt(pooled.size());
+            for (int i = 0; i < storage.size(); i++) {
+                if (storage.type(i) != RoadStorage.EMPTY) {
+                    out.writeInt(i);
+                    out.writeLong(OffHeapRoadStorage.pack(storage.get(i)));
+                }
+            }
+            for (Vehicle vehicle : pooled) {
+                out.writeLong(OffHeapRoadStorage.pack(vehicle));
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a snapshot into a new road, whose random source starts from the saved seed.
+     *
+     * @param file the snapshot file
+     * @param storageFactory creates an empty storage of the given size for the road
+     * @param pool an empty reuse pool to put the saved pool into
+     * @return the snapshot, whose road holds the saved vehicles and pool
+     * @throws IOException if the file cannot be read or is not a valid snapshot
+     */
+    public static SnapshotFile read(Path file, IntFunction<RoadStorage> storageFactory, ReusePool pool)
+            throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Reader in = new Reader(channel);
+            for (byte b : MAGIC) {
+                if (in.getByte() != b) {
+                    throw new IOException("Not a snapshot file: " + file);
+                }
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + file);
+            }
+            long commandNumber = in.getLong();
+            long inputOffset = in.getLong();
+            long seed = in.getLong();
+            int size = in.getInt();
+            int numVehicles = in.getInt();
+            int occupied = in.getInt();
+            int pooled = in.getInt();
+            if (channel.size() != HEADER_BYTES + 12L * occupied + 8L * pooled) {
+                throw new IOException("Truncated snapshot file: " + file);
+            }
+
+            RoadStorage storage = storageFactory.apply(size);
+            for (int i = 0; i < occupied; i++) {
+                int index = in.getInt();
+                storage.set(index, OffHeapRoadStorage.unpack(in.getLong()));
+            }
+            for (int i = 0; i < pooled; i++) {
+                pool.recycleVehicle(OffHeapRoadStorage.unpack(in.getLong()));
+            }
+            return new SnapshotFile(commandNumber, inputOffset, seed,
+                    new Road(storage, numVehicles, pool, new ReseedableRandom(seed)));
+        }
+    }
+
+    /**
+     * Returns the number of commands the simulation had executed when the snapshot was taken.
+     *
+     * @return the command number of the snapshot
+     */
+    public long getCommandNumber() {
+        return commandNumber;
+    }
+
+    /**
+     * Returns the offset in the command file of the first command after the snapshot.
+     *
+     * @return the offset to pass to CommandReader.seek
+     */
+    public long getInputOffset() {
+        return inputOffset;
+    }
+
+    /**
+     * Returns the seed the random source of the road was reseeded with when the snapshot was taken.
+     *
+     * @return the seed the random source of the road read back starts from
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the road read from the snapshot.
+     *
+     * @return the road, with its reuse pool
+     */
+    public Road getRoad() {
+        return road;
+    }
+
+    /**
+     * Reads big-endian values from a file through mapped windows, so files
+     * larger than a single 2 GiB mapping can be read.
+     */
+    private static class Reader {
+        private final FileChannel channel;
+        private MappedByteBuffer window;
+        private long windowStart; // file offset of the first byte of window
+
+        Reader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            map(0);
+        }
+
+        byte getByte() throws IOException {
+            ensure(1);
+            return window.get();
+        }
+
+        int getInt() throws IOException {
+            ensure(4);
+            return window.getInt();
+        }
+
+        long getLong() throws IOException {
+            ensure(8);
+            return window.getLong();
+        }
+
+        /**
+         * Maps the next window if fewer than count bytes are left in the current one.
+         */
+        private void ensure(int count) throws IOException {
+            if (window.remaining() < count) {
+                long position = windowStart + window.position();
+                if (channel.size() - position < count) {
+                    throw new IOException("Unexpected end of snapshot file at byte " + position);
+                }
+                map(position);
+            }
+        }
+
+        private void map(long start) throws IOException {
+            long size = Math.min(WINDOW_SIZE, channel.size() - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+            windowStart = start;
+        }
+    }
+}
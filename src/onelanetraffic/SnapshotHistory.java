@@ -0,0 +1,160 @@
+package onelanetraffic;
+
+import stacks.RingStack;
+
+/**
+ * A history store that pushes a full copy of the road onto a stack
+ * for every move command. Restoring a state simply pops that copy.
+ *
+ * How many copies are kept is decided by a RetentionPolicy. The copies are
+ * kept on RingStacks, so the oldest one is evicted in constant time whenever
+ * the policy's depth or byte limit is exceeded, and memory use stays within
+ * what the policy allows. When the policy decimates, copies that fall out of
+ * the recent window move to a second stack, or are dropped if their move
+ * number is not a multiple of k.
+ *
+ * @author Lehan Zhang
+ */
+public class SnapshotHistory implements HistoryStore {
+    private final RetentionPolicy policy; // how many states are kept
+    private RingStack<Saved> recent; // the newest states, each kept
+    private RingStack<Saved> older; // the states that left recent and survived decimation
+    private long step; // number of moves the road has made, counted from the first saved state
+    private long bytes; // estimated size of the kept states
+    private long evicted; // number of states dropped by the policy
+
+    /**
+     * A road copy and what the policy needs to know about it.
+     */
+    private static class Saved {
+        private final Road road;
+        private final long step; // number of moves before this state
+        private final long bytes; // estimated size of the copy
+
+        private Saved(Road road, long step, long bytes) {
+            this.road = road;
+            this.step = step;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Constructs an empty snapshot history that keeps every state.
+     */
+    public SnapshotHistory() {
+        this(RetentionPolicy.unlimited());
+    }
+
+    /**
+     * Constructs an empty snapshot history that keeps the states the given policy allows.
+     *
+     * @param policy the retention policy
+     */
+    public SnapshotHistory(RetentionPolicy policy) {
+        this.policy = policy;
+        int capacity = policy.getMaxDepth() > 0 ? Math.min(policy.getMaxDepth() + 1, 1 << 16) : 16;
+        recent = new RingStack<>(capacity);
+        older = new RingStack<>();
+    }
+
+    /**
+     * create a deep copy of the current road with all its fields (except current)
+     * and push the copy into the history, evicting the oldest states the policy
+     * no longer allows.
+     *
+     * @param currentRoad the road needed to be stored into roadHistory
+     */
+    public void save(Road currentRoad) {
+        Road copy = currentRoad.copy();
+        Saved saved = new Saved(copy, step, copy.estimatedCopyBytes());
+        step++;
+        recent.push(saved);
+        bytes += saved.bytes;
+
+        if (policy.getEvery() > 1 && recent.size() > policy.getRecent()) {
+            Saved old = recent.removeBottom();
+            if (policy.keepsOld(old.step)) {
+                older.push(old);
+            } else {
+                drop(old);
+            }
+        }
+        int maxDepth = policy.getMaxDepth();
+        long maxBytes = policy.getMaxBytes();
+        while (!isEmpty() && ((maxDepth > 0 && size() > maxDepth) || (maxBytes > 0 && bytes > maxBytes))) {
+            drop(older.isEmpty() ? recent.removeBottom() : older.removeBottom());
+        }
+    }
+
+    /**
+     * Removes and returns the most recently saved road.
+     *
+     * @return the previous state of the road, or null if the history is empty
+     */
+    public Road restore() {
+        Saved saved;
+        if (!recent.isEmpty()) {
+            saved = recent.pop();
+        } else if (!older.isEmpty()) {
+            saved = older.pop();
+        } else {
+            return null;
+        }
+        step = saved.step;
+        bytes -= saved.bytes;
+        return saved.road;
+    }
+
+    /**
+     * Checks whether the history is empty.
+     *
+     * @return true if no state is kept; false otherwise
+     */
+    public boolean isEmpty() {
+        return recent.isEmpty() && older.isEmpty();
+    }
+
+    /**
+     * Returns the number of saved road states.
+     *
+     * @return the number of road states kept
+     */
+    public int size() {
+        return recent.size() + older.size();
+    }
+
+    /**
+     * Returns the policy that decides which states are kept.
+     *
+     * @return the retention policy
+     */
+    public RetentionPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the estimated size of the kept road copies, as the policy's byte limit counts them.
+     *
+     * @return the estimated bytes of the kept road copies
+     */
+    public long retainedBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of states the policy has dropped so far.
+     *
+     * @return the number of evicted or decimated states
+     */
+    public long getEvictedCount() {
+        return evicted;
+    }
+
+    /**
+     * Forgets a state that the policy no longer allows.
+     */
+    private void drop(Saved saved) {
+        bytes -= saved.bytes;
+        evicted++;
+    }
+}
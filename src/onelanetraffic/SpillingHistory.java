@@ -0,0 +1,267 @@
+package onelanetraffic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.random.RandomGenerator;
+import exceptionclasses.EmptyQueueException;
+import stacks.LongArrayStack;
+
+/**
+ * A history store that keeps full copies of the most recent road states in
+ * memory, like SnapshotHistory, but at most a fixed number of them. When one
+ * more is saved, the oldest copy in memory is written to a memory-mapped file
+ * and dropped, so the heap holds a bounded number of roads however long the
+ * script is. Deep undos read the older states back from the file.
+ *
+ * A spilled state takes only its occupied positions: the vehicle count and the
+ * number of occupied positions and of pooled vehicles, then an array index and
+ * a packed vehicle (see OffHeapRoadStorage.pack) per occupied position and a
+ * packed vehicle per pooled one. Every value is written as 4-byte ints, so no
+ * value crosses the boundary between two mapped windows of the file.
+ *
+ * The file is used as a stack: a state read back is the last one in the file,
+ * and the next spilled state overwrites it. It is deleted when the store is
+ * closed or, at the latest, when the JVM exits.
+ *
+ * @author Lehan Zhang
+ */
+public class SpillingHistory implements HistoryStore, Closeable {
+    private static final int WINDOW_SHIFT = 26; // bytes mapped at a time, as a power of two (64 MiB)
+    private static final int WINDOW_MASK = (1 << WINDOW_SHIFT) - 1;
+
+    private final Road[] recent; // the newest states, a ring starting at head
+    private int head; // index in recent of the oldest state in memory
+    private int count; // number of states in memory
+
+    private final IntFunction<RoadStorage> storageFactory; // creates the storage of a state read back
+    private final Supplier<ReusePool> poolFactory; // creates the reuse pool of a state read back
+    private RandomGenerator rand; // random source of the tracked road, given to the states read back
+    private int roadSize; // size of the tracked road, the same for every saved state
+    private long stateBytes; // estimated size of one state in memory; every state has the same size
+
+    private final FileChannel channel; // the spill file
+    private final List<MappedByteBuffer> windows = new ArrayList<>(); // window i maps bytes i << WINDOW_SHIFT on
+    private final LongArrayStack spilled; // file offset of each spilled state, newest on top
+    private long end; // file offset after the newest spilled state
+
+    /**
+     * Creates an empty history that keeps up to inMemory states on the heap
+     * and spills older ones to a new file in the given directory.
+     *
+     * @param inMemory the number of states kept in memory, at least 1
+     * @param directory the directory of the spill file
+     * @param storageFactory creates an empty storage of the given size for a state read back from the file
+     * @param poolFactory creates an empty reuse pool for a state read back from the file
+     * @throws IOException if the spill file cannot be created
+     */
+    public SpillingHistory(int inMemory, Path directory, IntFunction<RoadStorage> storageFactory,
+                           Supplier<ReusePool> poolFactory) throws IOException {
+        if (inMemory < 1) {
+            throw new IllegalArgumentException("States kept in memory must be at least 1: " + inMemory);
+        }
+        recent = new Road[inMemory];
+        this.storageFactory = storageFactory;
+        this.poolFactory = poolFactory;
+        spilled = new LongArrayStack(16);
+        Path file = Files.createTempFile(directory, "history", ".spill");
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Pushes a copy of the road, spilling the oldest state in memory to the file if memory is full.
+     *
+     * @param currentRoad the road needed to be stored into the history
+     * @throws UncheckedIOException if the spill file cannot be written
+     */
+    public void save(Road currentRoad) {
+        rand = currentRoad.getRandom();
+        if (count == recent.length) {
+            spill(recent[head]);
+            recent[head] = null;
+            head = (head + 1) % recent.length;
+            count--;
+        }
+        Road copy = currentRoad.copy();
+        stateBytes = copy.estimatedCopyBytes();
+        recent[(head + count) % recent.length] = copy;
+        count++;
+    }
+
+    /**
+     * Removes and returns the most recently saved road, from memory if it is
+     * there and from the spill file otherwise.
+     *
+     * @return the previous state of the road, or null if there is none
+     * @throws UncheckedIOException if the spill file cannot be read
+     */
+    public Road restore() {
+        if (count > 0) {
+            count--;
+            int index = (head + count) % recent.length;
+            Road previous = recent[index];
+            recent[index] = null;
+            return previous;
+        }
+        if (spilled.isEmpty()) {
+            return null;
+        }
+        end = spilled.pop();
+        return readState(end);
+    }
+
+    /**
+     * Checks whether any state can still be restored.
+     *
+     * @return true if neither memory nor the spill file holds a state; false otherwise
+     */
+    public boolean isEmpty() {
+        return count == 0 && spilled.isEmpty();
+    }
+
+    /**
+     * Returns the number of saved road states, in memory and in the spill file.
+     *
+     * @return the number of states that can be restored
+     */
+    public int size() {
+        return count + spilled.size();
+    }
+
+    /**
+     * Returns the number of saved road states in the spill file.
+     *
+     * @return the number of states that are read back from disk when restored
+     */
+    public int spilledSize() {
+        return spilled.size();
+    }
+
+    /**
+     * Returns the estimated size of the states in memory. Spilled states are
+     * in the file, not in memory, so spilling one releases its copy.
+     *
+     * @return the estimated bytes of the states kept in memory
+     */
+    public long retainedBytes() {
+        return stateBytes * count;
+    }
+
+    /**
+     * Closes and deletes the spill file. The states in it are lost.
+     *
+     * @throws IOException if the file cannot be closed
+     */
+    public void close() throws IOException {
+        windows.clear(); // the mappings themselves go away when the buffers are collected
+        channel.close();
+    }
+
+    /**
+     * Appends a state to the spill file.
+     */
+    private void spill(Road road) {
+        RoadStorage storage = road.getStorage();
+        int occupied = 0;
+        for (int i = 0; i < storage.size(); i++) {
+            if (storage.type(i) != RoadStorage.EMPTY) {
+                occupied++;
+            }
+        }
+        // a copy of the pool can be emptied without touching the saved road
+        ReusePool pool = road.getReusePool().copy();
+        List<Vehicle> pooled = new ArrayList<>();
+        try {
+            while (true) {
+                pooled.add(pool.reuseVehicle());
+            }
+        } catch (EmptyQueueException ex) {
+            // every vehicle of the pool was taken
+        }
+
+        roadSize = storage.size();
+        spilled.push(end);
+        long position = end;
+        position = putInt(position, road.getNumVehicles());
+        position = putInt(position, occupied);
+        position = putInt(position, pooled.size());
+        for (int i = 0; i < storage.size(); i++) {
+            if (storage.type(i) != RoadStorage.EMPTY) {
+                position = putInt(position, i);
+                position = putLong(position, OffHeapRoadStorage.pack(storage.get(i)));
+            }
+        }
+        for (Vehicle vehicle : pooled) {
+            position = putLong(position, OffHeapRoadStorage.pack(vehicle));
+        }
+        end = position;
+    }
+
+    /**
+     * Reads the state spilled at the given offset into a new road of the same size as the saved ones.
+     */
+    private Road readState(long position) {
+        int numVehicles = getInt(position);
+        int occupied = getInt(position + 4);
+        int pooled = getInt(position + 8);
+        position += 12;
+
+        RoadStorage storage = storageFactory.apply(roadSize);
+        for (int i = 0; i < occupied; i++) {
+            int index = getInt(position);
+            storage.set(index, OffHeapRoadStorage.unpack(getLong(position + 4)));
+            position += 12;
+        }
+        ReusePool pool = poolFactory.get();
+        for (int i = 0; i < pooled; i++) {
+            pool.recycleVehicle(OffHeapRoadStorage.unpack(getLong(position)));
+            position += 8;
+        }
+        return new Road(storage, numVehicles, pool, rand);
+    }
+
+    private long putLong(long position, long value) {
+        position = putInt(position, (int) (value >>> 32));
+        return putInt(position, (int) value);
+    }
+
+    private long getLong(long position) {
+        return (long) getInt(position) << 32 | getInt(position + 4) & 0xFFFFFFFFL;
+    }
+
+    private long putInt(long position, int value) {
+        window(position).putInt((int) position & WINDOW_MASK, value);
+        return position + 4;
+    }
+
+    private int getInt(long position) {
+        return window(position).getInt((int) position & WINDOW_MASK);
+    }
+
+    /**
+     * Returns the mapped window holding the given file offset, mapping new
+     * windows (and so growing the file) as needed.
+     */
+    private MappedByteBuffer window(long position) {
+        int index = (int) (position >>> WINDOW_SHIFT);
+        try {
+            while (windows.size() <= index) {
+                long start = (long) windows.size() << WINDOW_SHIFT;
+                windows.add(channel.map(FileChannel.MapMode.READ_WRITE, start, 1L << WINDOW_SHIFT));
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return windows.get(index);
+    }
+}
@@ -0,0 +1,276 @@
+package onelanetraffic;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An event listener that writes the simulation as the familiar text narrative
+ * ("Executing command - ...", collision messages, road states).
+ *
+ * Text is collected in a buffer and written in large chunks instead of one
+ * println per message. In asynchronous mode the chunks are handed to a
+ * background thread, so the simulation does not wait for the output at all
+ * unless it gets more than a few chunks ahead.
+ *
+ * The road is shown in full at the start and the end. After each command it is
+ * shown by a RoadRenderer, either in full or, in diff mode, as just the
+ * positions that changed.
+ *
+ * Call close() (or at least flush()) when the simulation is done.
+ *
+ * @author Lehan Zhang
+ */
+public class TextEventWriter implements SimulationEventListener, Closeable {
+    private static final int FLUSH_THRESHOLD = 1 << 16; // characters buffered before a chunk is written
+    private static final String END = new String("end"); // tells the writer thread to stop
+
+    private static final String NL = System.lineSeparator();
+
+    private final PrintStream out; // where the text goes
+    private final StringBuilder buffer; // text not yet handed over
+    private final BlockingQueue<String> chunks; // chunks waiting for the writer thread, null if synchronous
+    private final Thread writer; // the writer thread, null if synchronous
+    private final RoadRenderer renderer; // renders the road after each command
+
+    /**
+     * Creates a synchronous writer that shows the full road after each command:
+     * chunks are written by the simulation thread.
+     *
+     * @param out the stream to write the text to
+     */
+    public TextEventWriter(PrintStream out) {
+        this(out, false);
+    }
+
+    /**
+     * Creates a writer that shows the full road after each command.
+     *
+     * @param out the stream to write the text to
+     * @param async true to write chunks on a background thread
+     */
+    public TextEventWriter(PrintStream out, boolean async) {
+        this(out, async, new RoadRenderer(false));
+    }
+
+    /**
+     * Creates a writer.
+     *
+     * @param out the stream to write the text to
+     * @param async true to write chunks on a background thread
+     * @param renderer renders the road after each command
+     */
+    public TextEventWriter(PrintStream out, boolean async, RoadRenderer renderer) {
+        this.out = out;
+        this.renderer = renderer;
+        this.buffer = new StringBuilder(FLUSH_THRESHOLD + 1024);
+        if (async) {
+            chunks = new ArrayBlockingQueue<>(8);
+            writer = new Thread(this::drain, "text-event-writer");
+            writer.setDaemon(true);
+            writer.start();
+        } else {
+            chunks = null;
+            writer = null;
+        }
+    }
+
+    public void simulationStarted(Road road) {
+        buffer.append("Initial state of the road:\n");
+        renderer.renderFull(road, buffer);
+        buffer.append(NL);
+        flushIfFull();
+    }
+
+    public void moveCommand(int position, int step) {
+        buffer.append("Executing command - moving vehicle at position ").append(position + 1)
+                .append(" to position ").append(position + 1 + step).append('.').append(NL);
+        flushIfFull();
+    }
+
+    public void undoCommand(int steps) {
+        buffer.append("Executing command - restoring the road to its state ").append(steps)
+                .append(" steps ago.").append(NL);
+        flushIfFull();
+    }
+
+    public void redoCommand(int steps) {
+        buffer.append("Executing command - redoing ").append(steps)
+                .append(" undone steps.").append(NL);
+        flushIfFull();
+    }
+
+    public void invalidDirection(int step) {
+        line("Invalid direction. Proceeding to the next command.");
+    }
+
+    public void invalidCommand() {
+        line("Invalid command. Proceeding to the next step.\n");
+    }
+
+    public void commandFinished(Road road) {
+        if (renderer.needsFullFrame(road)) {
+            buffer.append("\nCurrent state of the road:\n");
+        } else if (road.getChangeCount() == 0) {
+            buffer.append("\nNo positions changed.\n");
+        } else {
+            buffer.append("\nChanged positions of the road:\n");
+        }
+        renderer.render(road, buffer);
+        buffer.append(NL);
+        flushIfFull();
+    }
+
+    public void simulationFinished(Road road) {
+        line("Simulation finished.");
+        buffer.append("\nFinal state of the road:\n");
+        renderer.renderFull(road, buffer);
+        buffer.append(NL);
+        flush();
+    }
+
+    public void vehicleStayed(Vehicle vehicle, int position) {
+        line(vehicle + "remain at current location");
+    }
+
+    public void moveOutOfRange(int position, int direction) {
+        line("\nTarget location out of range, invalid move instruction.");
+    }
+
+    public void vehicleMoved(Vehicle vehicle, int from, int to) {
+        buffer.append(vehicle).append(" moved to position ").append(to + 1).append(NL);
+        flushIfFull();
+    }
+
+    public void collision(CollisionType type, Vehicle mover, int position, Vehicle other, int target,
+                          boolean moverRemoved, boolean otherRemoved, ReusePool pool) {
+        buffer.append('\n').append(mover).append(" vs ").append(other).append('\n');
+        switch (type) {
+            case CARS_DIFFERENT_COLOR:
+                buffer.append("Cars of different colors crashed! Removing both.");
+                break;
+            case CARS_SAME_COLOR:
+                buffer.append("Car at position ").append(otherRemoved ? position + 1 : target + 1)
+                        .append(" has greater HP, Car at position ").append(otherRemoved ? target + 1 : position + 1)
+                        .append(" is removed.");
+                break;
+            case BUS_VS_BUS:
+                if (moverRemoved || otherRemoved) {
+                    buffer.append("Bus at position ").append(otherRemoved ? position + 1 : target + 1)
+                            .append(" has more weight, Bus at position ").append(otherRemoved ? target + 1 : position + 1)
+                            .append(" is removed.");
+                } else {
+                    buffer.append("Buses of same weight, both remain in place.");
+                }
+                break;
+            case CAR_INTO_BUS:
+                buffer.append("Car at position ").append(position + 1).append(" stops. Cannot move into Bus's space.");
+                break;
+            case BUS_INTO_CAR:
+                buffer.append("Bus at position ").append(position + 1).append(" pushes Car at position ")
+                        .append(target + 1).append(" out.");
+                break;
+        }
+        buffer.append(NL);
+        if (moverRemoved || otherRemoved) {
+            buffer.append(pool); // the pool is printed without a line break after a collision
+        }
+        flushIfFull();
+    }
+
+    public void vehicleReused(Vehicle vehicle, int position, ReusePool pool) {
+        buffer.append("\nA repaired vehicle, ").append(vehicle).append(", added to position ")
+                .append(position + 1).append(NL);
+        buffer.append(pool).append(NL);
+        flushIfFull();
+    }
+
+    public void poolEmpty() {
+        line("The pool is empty, there is no vehicle to reuse.");
+    }
+
+    public void historyEmpty() {
+        line("No more steps to undo. History is empty.");
+    }
+
+    public void redoEmpty() {
+        line("No more steps to redo.");
+    }
+
+    /**
+     * Hands all buffered text to the output.
+     */
+    public void flush() {
+        if (buffer.length() == 0) {
+            return;
+        }
+        String chunk = buffer.toString();
+        buffer.setLength(0);
+        if (writer == null) {
+            out.print(chunk);
+            out.flush();
+        } else {
+            put(chunk);
+        }
+    }
+
+    /**
+     * Writes all buffered text and waits for the background thread to finish.
+     * The output stream itself is flushed but left open.
+     */
+    public void close() {
+        flush();
+        if (writer != null) {
+            put(END);
+            try {
+                writer.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Appends a message followed by a line break.
+     */
+    private void line(String message) {
+        buffer.append(message).append(NL);
+        flushIfFull();
+    }
+
+    private void flushIfFull() {
+        if (buffer.length() >= FLUSH_THRESHOLD) {
+            flush();
+        }
+    }
+
+    /**
+     * Queues a chunk for the writer thread, waiting if it is too far behind.
+     */
+    private void put(String chunk) {
+        try {
+            chunks.put(chunk);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            out.print(chunk); // write it ourselves rather than lose it
+        }
+    }
+
+    /**
+     * Body of the writer thread: writes chunks until END arrives.
+     */
+    private void drain() {
+        try {
+            String chunk = chunks.take();
+            while (chunk != END) {
+                out.print(chunk);
+                chunk = chunks.take();
+            }
+            out.flush();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
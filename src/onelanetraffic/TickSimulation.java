@@ -0,0 +1,638 @@
+package onelanetraffic;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.random.RandomGenerator;
+import exceptionclasses.EmptyQueueException;
+
+/**
+ * Runs a road in synchronous ticks: in every tick each vehicle gets a move
+ * intention of -1, 0 or 1, and all vehicles move at the same time, like a
+ * cellular automaton. Command mode moves one randomly selected vehicle per
+ * command instead.
+ *
+ * The road is kept in primitive arrays, twice: a tick reads the current arrays
+ * and writes the next ones, then the two are swapped. Every phase of a tick
+ * except the reuse pool bookkeeping is a loop over independent positions, run
+ * in parallel chunks on a fork-join pool:
+ * <ol>
+ * <li>Intentions. A vehicle's direction is a hash of the tick seed, the tick
+ * number and its position, so it does not depend on how the road is split.</li>
+ * <li>Classification. A vehicle that wants to enter an empty cell nobody else
+ * wants moves. Two vehicles heading for the same empty cell, or for each other's
+ * cell, collide, the left one counting as the mover. A vehicle heading for a
+ * vehicle that stays collides with it; if a stationary vehicle is approached
+ * from both sides only the left one collides and the right one waits. A vehicle
+ * heading for a vehicle that moves on in the same direction follows it.</li>
+ * <li>Blocking. A follower moves only if the vehicle ahead of it really leaves.
+ * This is settled by repeating a sweep that only ever marks more followers as
+ * blocked, until nothing changes; within a chunk each sweep runs against the
+ * direction of travel, so only queues that span chunks need more than one.</li>
+ * <li>Collisions, decided by the same rules as Road.moveVehicle: cars of different
+ * colors are both removed, otherwise the car with more horsepower or the heavier
+ * bus survives, a car stops in front of a bus and a bus pushes a car out.
+ * A vehicle that loses a collision is removed; a bus that pushes a car out
+ * takes the position it was heading for; everyone else stays put.</li>
+ * <li>The next arrays are written: each position takes the vehicle that stays on
+ * it or the one that enters it, and there is never more than one.</li>
+ * </ol>
+ * Finally, sequentially: the removed vehicles go into the reuse pool in position
+ * order, and for every crash of two differently colored cars (again in position
+ * order) a repaired vehicle is taken from the pool and placed at a random empty
+ * position, drawn from the road's random source. Like SlotIndex, the k-th empty
+ * position in road order is taken for a uniform k: a tick with repairs marks the
+ * empty positions in a bitmap (in parallel) and counts them in a Fenwick tree over
+ * its words, so each placement takes O(log n) however full the road is.
+ *
+ * @author Lehan Zhang
+ */
+public class TickSimulation {
+    // what a position holds and what its vehicle is about to do
+    private static final byte EMPTY_CELL = 0;
+    private static final byte STATIONARY = 1; // does not want to move
+    private static final byte FREE = 2; // enters an empty cell nobody else wants
+    private static final byte FOLLOW = 3; // enters a cell whose vehicle moves on in the same direction
+    private static final byte SWAP = 4; // heads for a vehicle that heads for it
+    private static final byte MERGE = 5; // heads for an empty cell another vehicle also heads for
+    private static final byte HIT = 6; // heads for a stationary vehicle
+    private static final byte WAIT = 7; // heads for a stationary vehicle another vehicle hits first
+
+    // what happens to the vehicle at a position
+    private static final byte NOTHING = 0; // the position is empty
+    private static final byte STAY = 1;
+    private static final byte ADVANCE = 2;
+    private static final byte REMOVED = 3;
+
+    // outcome flags of a collision
+    private static final int MOVER_REMOVED = 1;
+    private static final int OTHER_REMOVED = 2;
+    private static final int MOVER_ADVANCES = 4;
+    private static final int REPAIR = 8; // two cars of different colors crashed
+
+    private final ForkJoinPool pool; // runs the chunks of each phase
+    private final int chunkSize; // positions per parallel chunk
+    private final int size; // number of positions
+    private final RandomGenerator rand; // the random source of the road, for placing repaired vehicles
+    private final long seed; // seed of the move intentions
+    private ReusePool reusePool;
+    private int numVehicles;
+    private long ticks; // number of ticks run so far
+
+    // the current road, read during a tick
+    private byte[] types;
+    private short[] horsePowers;
+    private int[] weights;
+    private byte[] colors;
+    // the next road, written during a tick
+    private byte[] nextTypes;
+    private short[] nextHorsePowers;
+    private int[] nextWeights;
+    private byte[] nextColors;
+
+    // per position scratch data of a tick
+    private final byte[] direction;
+    private final byte[] kind;
+    private final byte[] blocked; // 1 for a follower that cannot move
+    private final byte[] outcome;
+    private final int[] removed; // per chunk, from its first position on: the positions of removed vehicles
+    private final int[] repairs; // per chunk, from its first position on: the positions of crashes to repair
+    private final int[] removedCount; // per chunk
+    private final int[] repairCount; // per chunk
+    private final boolean[] chunkChanged; // per chunk, whether the last blocking sweep marked anything
+    private final long[] emptyBits; // per 64 positions, a bit set for each empty position of the next road
+    private final int[] emptyTree; // Fenwick tree (1-based) of the number of bits set per word of emptyBits
+
+    /**
+     * Creates a tick simulation of the road on the common fork-join pool.
+     *
+     * @param road the road to start from; it is copied, not changed
+     */
+    public TickSimulation(Road road) {
+        this(road, ForkJoinPool.commonPool(), 1 << 16);
+    }
+
+    /**
+     * Creates a tick simulation of the road. The vehicles and the reuse pool are
+     * copied; the random source is shared with the road.
+     *
+     * @param road the road to start from; it is copied, not changed
+     * @param pool the fork-join pool to run the phases of a tick in
+     * @param chunkSize the number of positions each parallel task handles, at least 1
+     */
+    public TickSimulation(Road road, ForkJoinPool pool, int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1: " + chunkSize);
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        size = road.getSize();
+        rand = road.getRandom();
+        seed = rand.nextLong();
+        reusePool = road.getReusePool().copy();
+        numVehicles = road.getNumVehicles();
+
+        types = new byte[size];
+        horsePowers = new short[size];
+        weights = new int[size];
+        colors = new byte[size];
+        nextTypes = new byte[size];
+        nextHorsePowers = new short[size];
+        nextWeights = new int[size];
+        nextColors = new byte[size];
+        RoadStorage storage = road.getStorage();
+        for (int i = 0; i < size; i++) {
+            byte type = storage.type(i);
+            types[i] = type;
+            if (type != RoadStorage.EMPTY) {
+                horsePowers[i] = (short) storage.horsePower(i);
+                if (type == RoadStorage.CAR) {
+                    colors[i] = (byte) storage.colorIndex(i);
+                } else {
+                    weights[i] = storage.weight(i);
+                }
+            }
+        }
+
+        direction = new byte[size];
+        kind = new byte[size];
+        blocked = new byte[size];
+        outcome = new byte[size];
+        removed = new int[size];
+        repairs = new int[size];
+        int chunks = (size + chunkSize - 1) / chunkSize;
+        removedCount = new int[chunks];
+        repairCount = new int[chunks];
+        chunkChanged = new boolean[chunks];
+        emptyBits = new long[(int) (((long) size + 63) >>> 6)];
+        emptyTree = new int[emptyBits.length + 1];
+    }
+
+    /**
+     * Runs the given number of ticks.
+     *
+     * @param count the number of ticks to run
+     */
+    public void run(long count) {
+        for (long i = 0; i < count; i++) {
+            tick();
+        }
+    }
+
+    /**
+     * Moves every vehicle at once by its intention for this tick.
+     */
+    public void tick() {
+        parallel(this::intend);
+        parallel(this::classify);
+        do {
+            parallel(this::block);
+        } while (anyChunkChanged());
+        parallel(this::decide);
+        parallel(this::write);
+        recycleAndRepair();
+
+        byte[] oldTypes = types;
+        short[] oldHorsePowers = horsePowers;
+        int[] oldWeights = weights;
+        byte[] oldColors = colors;
+        types = nextTypes;
+        horsePowers = nextHorsePowers;
+        weights = nextWeights;
+        colors = nextColors;
+        nextTypes = oldTypes;
+        nextHorsePowers = oldHorsePowers;
+        nextWeights = oldWeights;
+        nextColors = oldColors;
+        ticks++;
+    }
+
+    /**
+     * Retrieves the number of ticks run so far.
+     *
+     * @return the number of ticks
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Retrieves the number of vehicles currently on the road.
+     *
+     * @return the number of vehicles
+     */
+    public int getNumVehicles() {
+        return numVehicles;
+    }
+
+    /**
+     * Builds a road in the current state, kept in a PrimitiveRoadStorage.
+     *
+     * @return a new road with the vehicles, reuse pool and random source of this simulation
+     */
+    public Road toRoad() {
+        return toRoad(new PrimitiveRoadStorage(size));
+    }
+
+    /**
+     * Builds a road in the current state on top of the given storage.
+     *
+     * @param storage an empty storage with as many positions as this road
+     * @return a new road with the vehicles, reuse pool and random source of this simulation
+     */
+    public Road toRoad(RoadStorage storage) {
+        for (int i = 0; i < size; i++) {
+            storage.set(i, vehicleAt(i));
+        }
+        return new Road(storage, numVehicles, reusePool.copy(), rand);
+    }
+
+    /**
+     * Phase 1: draws the direction of every vehicle; moves off the road become 0.
+     */
+    private void intend(int from, int to) {
+        long tickSeed = mix64(seed + ticks * 0x9E3779B97F4A7C15L);
+        for (int i = from; i < to; i++) {
+            int d = 0;
+            if (types[i] != RoadStorage.EMPTY) {
+                d = (int) ((mix64(tickSeed + i) >>> 1) % 3) - 1;
+                if (i + d < 0 || i + d >= size) {
+                    d = 0;
+                }
+            }
+            direction[i] = (byte) d;
+        }
+    }
+
+    /**
+     * Phase 2: classifies every vehicle by its own and its neighbors' intentions.
+     */
+    private void classify(int from, int to) {
+        for (int i = from; i < to; i++) {
+            blocked[i] = 0;
+            if (types[i] == RoadStorage.EMPTY) {
+                kind[i] = EMPTY_CELL;
+                continue;
+            }
+            int d = direction[i];
+            if (d == 0) {
+                kind[i] = STATIONARY;
+                continue;
+            }
+            int target = i + d;
+            if (types[target] == RoadStorage.EMPTY) {
+                int beyond = target + d; // the vehicle on the other side of the target
+                boolean contested = beyond >= 0 && beyond < size
+                        && types[beyond] != RoadStorage.EMPTY && direction[beyond] == -d;
+                kind[i] = contested ? MERGE : FREE;
+            } else if (direction[target] == -d) {
+                kind[i] = SWAP;
+            } else if (direction[target] == d) {
+                kind[i] = FOLLOW;
+            } else if (d == 1 || !hitsFromLeft(target)) {
+                kind[i] = HIT;
+            } else {
+                kind[i] = WAIT;
+            }
+        }
+    }
+
+    /**
+     * Phase 3: one sweep that marks followers whose vehicle ahead does not leave.
+     * Right-moving queues are swept from the right, left-moving ones from the left.
+     */
+    private void block(int from, int to) {
+        boolean changed = false;
+        for (int i = to - 1; i >= from; i--) {
+            if (kind[i] == FOLLOW && direction[i] == 1 && blocked[i] == 0 && !leaves(i + 1)) {
+                blocked[i] = 1;
+                changed = true;
+            }
+        }
+        for (int i = from; i < to; i++) {
+            if (kind[i] == FOLLOW && direction[i] == -1 && blocked[i] == 0 && !leaves(i - 1)) {
+                blocked[i] = 1;
+                changed = true;
+            }
+        }
+        chunkChanged[from / chunkSize] = changed;
+    }
+
+    /**
+     * Phase 4: decides what happens to every vehicle, and lists the removed ones
+     * and the crashes that bring in a repaired vehicle.
+     */
+    private void decide(int from, int to) {
+        int chunk = from / chunkSize;
+        int removedAt = from;
+        int repairAt = from;
+        for (int i = from; i < to; i++) {
+            byte result;
+            switch (kind[i]) {
+                case EMPTY_CELL:
+                    result = NOTHING;
+                    break;
+                case FREE:
+                    result = ADVANCE;
+                    break;
+                case FOLLOW:
+                    result = blocked[i] == 0 ? ADVANCE : STAY;
+                    break;
+                case WAIT:
+                    result = STAY;
+                    break;
+                case STATIONARY: {
+                    int hitter = -1;
+                    if (hitsFromLeft(i)) {
+                        hitter = i - 1;
+                    } else if (i + 1 < size && kind[i + 1] == HIT && direction[i + 1] == -1) {
+                        hitter = i + 1;
+                    }
+                    result = hitter == -1 ? STAY : otherResult(collide(hitter, i));
+                    break;
+                }
+                case HIT: {
+                    int flags = collide(i, i + direction[i]);
+                    result = moverResult(flags);
+                    if ((flags & REPAIR) != 0) {
+                        repairs[repairAt++] = i;
+                    }
+                    break;
+                }
+                default: {
+                    // SWAP or MERGE: the left vehicle is the mover
+                    int d = direction[i];
+                    int partner = kind[i] == SWAP ? i + d : i + 2 * d;
+                    if (d == 1) {
+                        int flags = collide(i, partner);
+                        result = moverResult(flags);
+                        if ((flags & REPAIR) != 0) {
+                            repairs[repairAt++] = i;
+                        }
+                    } else {
+                        result = otherResult(collide(partner, i));
+                    }
+                    break;
+                }
+            }
+            outcome[i] = result;
+            if (result == REMOVED) {
+                removed[removedAt++] = i;
+            }
+        }
+        removedCount[chunk] = removedAt - from;
+        repairCount[chunk] = repairAt - from;
+    }
+
+    /**
+     * Phase 5: writes the next road; each position takes the vehicle that stays
+     * on it or the one that enters it.
+     */
+    private void write(int from, int to) {
+        for (int t = from; t < to; t++) {
+            int source = -1;
+            if (outcome[t] == STAY) {
+                source = t;
+            } else if (t > 0 && outcome[t - 1] == ADVANCE && direction[t - 1] == 1) {
+                source = t - 1;
+            } else if (t + 1 < size && outcome[t + 1] == ADVANCE && direction[t + 1] == -1) {
+                source = t + 1;
+            }
+            if (source == -1) {
+                nextTypes[t] = RoadStorage.EMPTY;
+            } else {
+                nextTypes[t] = types[source];
+                nextHorsePowers[t] = horsePowers[source];
+                nextWeights[t] = weights[source];
+                nextColors[t] = colors[source];
+            }
+        }
+    }
+
+    /**
+     * Phase 6, only in a tick with repairs: marks the empty positions of the
+     * next road in emptyBits, for the words that start in this chunk.
+     */
+    private void findEmpty(int from, int to) {
+        for (long start = (from + 63L) & ~63L; start < to; start += 64) {
+            int end = (int) Math.min(size, start + 64);
+            long bits = 0;
+            for (int i = (int) start; i < end; i++) {
+                if (nextTypes[i] == RoadStorage.EMPTY) {
+                    bits |= 1L << i;
+                }
+            }
+            emptyBits[(int) (start >>> 6)] = bits;
+        }
+    }
+
+    /**
+     * Puts the removed vehicles into the reuse pool in position order, then
+     * places a repaired vehicle at a random empty position for every crash of
+     * two differently colored cars.
+     */
+    private void recycleAndRepair() {
+        int repairTotal = 0;
+        for (int chunk = 0; chunk < removedCount.length; chunk++) {
+            int start = chunk * chunkSize;
+            for (int k = start; k < start + removedCount[chunk]; k++) {
+                reusePool.recycleVehicle(vehicleAt(removed[k]));
+                numVehicles--;
+            }
+            repairTotal += repairCount[chunk];
+        }
+        if (repairTotal == 0) {
+            return;
+        }
+        parallel(this::findEmpty);
+        buildEmptyTree();
+        for (int chunk = 0; chunk < repairCount.length; chunk++) {
+            int start = chunk * chunkSize;
+            for (int k = start; k < start + repairCount[chunk]; k++) {
+                Vehicle repaired;
+                try {
+                    repaired = reusePool.reuseVehicle();
+                } catch (EmptyQueueException ex) {
+                    continue; // cannot happen, the crash itself filled the pool
+                }
+                int index = takeEmpty(rand.nextInt(size - numVehicles)); // the crash freed two positions
+                nextHorsePowers[index] = (short) repaired.getHorsePower();
+                if (repaired.isCar()) {
+                    nextTypes[index] = RoadStorage.CAR;
+                    nextColors[index] = (byte) ((Car) repaired).getColorIndex();
+                } else {
+                    nextTypes[index] = RoadStorage.BUS;
+                    nextWeights[index] = ((Bus) repaired).getWeight();
+                }
+                numVehicles++;
+            }
+        }
+    }
+
+    /**
+     * Counts the empty positions marked in emptyBits into emptyTree, in O(words).
+     */
+    private void buildEmptyTree() {
+        int words = emptyBits.length;
+        for (int i = 1; i <= words; i++) {
+            emptyTree[i] = Long.bitCount(emptyBits[i - 1]);
+        }
+        for (int i = 1; i <= words; i++) {
+            int parent = i + (i & -i);
+            if (parent <= words) {
+                emptyTree[parent] += emptyTree[i];
+            }
+        }
+    }
+
+    /**
+     * Finds the k-th empty position of the next road (in road order, from 0)
+     * and removes it from emptyBits and emptyTree, as a vehicle is placed there.
+     *
+     * @return the position
+     */
+    private int takeEmpty(int k) {
+        int words = emptyBits.length;
+        int word = 0; // words wholly before the position, as the tree is walked down
+        for (int step = Integer.highestOneBit(words); step > 0; step >>>= 1) {
+            int next = word + step;
+            if (next <= words && emptyTree[next] <= k) {
+                word = next;
+                k -= emptyTree[next];
+            }
+        }
+        int bit = PersistentSlotIndex.selectBit(emptyBits[word], k);
+        emptyBits[word] &= ~(1L << bit);
+        for (int i = word + 1; i <= words; i += i & -i) {
+            emptyTree[i]--;
+        }
+        return (word << 6) + bit;
+    }
+
+    /**
+     * Checks whether the stationary vehicle at index is hit by a vehicle from its left.
+     */
+    private boolean hitsFromLeft(int index) {
+        return index > 0 && types[index - 1] != RoadStorage.EMPTY && direction[index - 1] == 1
+                && types[index] != RoadStorage.EMPTY && direction[index] == 0;
+    }
+
+    /**
+     * Checks whether the vehicle at index leaves its position (as far as is known so far).
+     */
+    private boolean leaves(int index) {
+        return kind[index] == FREE || (kind[index] == FOLLOW && blocked[index] == 0);
+    }
+
+    /**
+     * Applies the collision rules of Road to a mover and the vehicle it runs into.
+     *
+     * @return MOVER_REMOVED, OTHER_REMOVED, MOVER_ADVANCES and REPAIR flags
+     */
+    private int collide(int mover, int other) {
+        byte moverType = types[mover];
+        byte otherType = types[other];
+        if (moverType == RoadStorage.CAR && otherType == RoadStorage.CAR) {
+            if (colors[mover] != colors[other]) {
+                return MOVER_REMOVED | OTHER_REMOVED | REPAIR;
+            }
+            return horsePowers[mover] > horsePowers[other] ? OTHER_REMOVED : MOVER_REMOVED;
+        }
+        if (moverType == RoadStorage.BUS && otherType == RoadStorage.BUS) {
+            if (weights[mover] < weights[other]) {
+                return MOVER_REMOVED;
+            }
+            return weights[mover] > weights[other] ? OTHER_REMOVED : 0;
+        }
+        if (moverType == RoadStorage.CAR) {
+            return 0; // a car stops in front of a bus
+        }
+        return OTHER_REMOVED | MOVER_ADVANCES; // a bus pushes a car out
+    }
+
+    private static byte moverResult(int flags) {
+        if ((flags & MOVER_REMOVED) != 0) {
+            return REMOVED;
+        }
+        return (flags & MOVER_ADVANCES) != 0 ? ADVANCE : STAY;
+    }
+
+    private static byte otherResult(int flags) {
+        return (flags & OTHER_REMOVED) != 0 ? REMOVED : STAY;
+    }
+
+    /**
+     * Builds the vehicle at the given position of the current road.
+     */
+    private Vehicle vehicleAt(int index) {
+        switch (types[index]) {
+            case RoadStorage.CAR:
+                return new Car(horsePowers[index], colors[index]);
+            case RoadStorage.BUS:
+                return new Bus(horsePowers[index], weights[index]);
+            default:
+                return null;
+        }
+    }
+
+    private boolean anyChunkChanged() {
+        for (boolean changed : chunkChanged) {
+            if (changed) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The mixing function of SplittableRandom: spreads the bits of z over a 64-bit value.
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Runs a phase over all positions, in parallel chunks.
+     */
+    private void parallel(Phase phase) {
+        if (size <= chunkSize) {
+            phase.run(0, size);
+        } else {
+            pool.invoke(new ChunkTask(phase, 0, removedCount.length));
+        }
+    }
+
+    /**
+     * One phase of a tick over the positions from (inclusive) to to (exclusive).
+     */
+    private interface Phase {
+        public void run(int from, int to);
+    }
+
+    /**
+     * Runs a phase over a range of chunks, splitting the range in half until it is a single chunk.
+     */
+    private class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Phase phase;
+        private final int first; // first chunk of the range
+        private final int last; // one past the last chunk of the range
+
+        ChunkTask(Phase phase, int first, int last) {
+            this.phase = phase;
+            this.first = first;
+            this.last = last;
+        }
+
+        protected void compute() {
+            if (last - first > 1) {
+                int middle = (first + last) >>> 1;
+                invokeAll(new ChunkTask(phase, first, middle), new ChunkTask(phase, middle, last));
+            } else {
+                phase.run(first * chunkSize, Math.min(size, (first + 1) * chunkSize));
+            }
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package onelanetraffic;
 
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.random.RandomGenerator;
 
 /**
  * This is a super class representing vehicles
@@ -16,10 +17,27 @@ public class Vehicle {
      * is randomly generated between 100 and 399.
      */
     public Vehicle() {
-        Random rand = new Random();
+        this(ThreadLocalRandom.current());
+    }
+
+    /**
+     * Constructs a new Vehicle whose horsepower is drawn from the given random source.
+     *
+     * @param rand the random source of the simulation
+     */
+    public Vehicle(RandomGenerator rand) {
         this.horsePower = rand.nextInt(300) + 100;  // Random horsepower between 100-399
     }
 
+    /**
+     * Constructs a new Vehicle with the given horsepower.
+     *
+     * @param horsePower the horsepower of the vehicle
+     */
+    protected Vehicle(int horsePower) {
+        this.horsePower = horsePower;
+    }
+
     /**
      * Gets the horsepower
      * 
@@ -0,0 +1,191 @@
+package onelanetraffic;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only log of the commands a simulation executed since its latest
+ * snapshot, with their random outcomes: which vehicle a move picked and where
+ * a repaired vehicle was placed. Recovery repeats the commands and checks
+ * that they draw the same outcomes.
+ *
+ * The file starts with the four bytes "OLTW" and the command number of the
+ * snapshot the log follows. Each command is a 13-byte record: the action byte,
+ * the step, the array index of the vehicle that moved and the array index a
+ * repaired vehicle was placed at, both -1 when they do not apply.
+ *
+ * Records are collected in a buffer and handed to the operating system when it
+ * is full and on flush, so a killed process loses at most the buffered records;
+ * a partly written record at the end of the file is ignored when reading.
+ *
+ * @author Lehan Zhang
+ */
+public class WriteAheadLog implements Closeable {
+    /**  Size of one command record in bytes. */
+    public static final int RECORD_BYTES = 13;
+
+    private static final byte[] MAGIC = {'O', 'L', 'T', 'W'};
+    private static final int HEADER_BYTES = 12;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer; // records not yet written to the file
+    private long baseCommand; // command number of the snapshot the records follow
+
+    // the records of an existing file, while it is being read
+    private ByteBuffer records;
+    private int recordCount;
+
+    /**
+     * Opens a log file, creating it if needed. Existing records stay readable
+     * with getRecordCount and the record getters until reset is called;
+     * appending starts after reset.
+     *
+     * @param file the log file
+     * @param bufferedRecords the number of records kept in memory before they are written out
+     * @throws IOException if the file cannot be opened, or exists but is not a log file
+     */
+    public WriteAheadLog(Path file, int bufferedRecords) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        buffer = ByteBuffer.allocate(RECORD_BYTES * Math.max(bufferedRecords, 1));
+        long length = channel.size();
+        if (length >= HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            for (byte b : MAGIC) {
+                if (header.get() != b) {
+                    channel.close();
+                    throw new IOException("Not a command log: " + file);
+                }
+            }
+            baseCommand = header.getLong();
+            long count = (length - HEADER_BYTES) / RECORD_BYTES; // a partial last record is dropped
+            if (count * RECORD_BYTES > Integer.MAX_VALUE) {
+                channel.close();
+                throw new IOException("Command log too long: " + file);
+            }
+            recordCount = (int) count;
+            records = ByteBuffer.allocate((int) count * RECORD_BYTES);
+            while (records.hasRemaining() && channel.read(records, HEADER_BYTES + records.position()) >= 0) {
+                // read until the buffer holds every complete record
+            }
+        }
+    }
+
+    /**
+     * Returns the command number of the snapshot the records follow.
+     *
+     * @return the number of commands executed before the first record
+     */
+    public long getBaseCommand() {
+        return baseCommand;
+    }
+
+    /**
+     * Returns the number of complete records the file held when it was opened.
+     *
+     * @return the number of records that can be read
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**  Returns the action of record i. */
+    public char action(int i) {
+        return (char) records.get(i * RECORD_BYTES);
+    }
+
+    /**  Returns the step of record i. */
+    public int step(int i) {
+        return records.getInt(i * RECORD_BYTES + 1);
+    }
+
+    /**  Returns the array index of the vehicle record i moved, or -1. */
+    public int index(int i) {
+        return records.getInt(i * RECORD_BYTES + 5);
+    }
+
+    /**  Returns the array index record i placed a repaired vehicle at, or -1. */
+    public int placement(int i) {
+        return records.getInt(i * RECORD_BYTES + 9);
+    }
+
+    /**
+     * Empties the log, to follow a snapshot taken after baseCommand commands.
+     * The new header is forced to disk.
+     *
+     * @param baseCommand the command number of the new snapshot
+     * @throws IOException if the file cannot be written
+     */
+    public void reset(long baseCommand) throws IOException {
+        buffer.clear();
+        records = null;
+        recordCount = 0;
+        this.baseCommand = baseCommand;
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.put(MAGIC).putLong(baseCommand).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+        channel.position(HEADER_BYTES);
+        channel.force(true);
+    }
+
+    /**
+     * Appends the record of an executed command.
+     *
+     * @param action the action of the command
+     * @param step its step
+     * @param index the array index of the vehicle that moved, or -1
+     * @param placement the array index a repaired vehicle was placed at, or -1
+     * @throws IOException if the buffer was full and could not be written
+     */
+    public void append(char action, int step, int index, int placement) throws IOException {
+        if (buffer.remaining() < RECORD_BYTES) {
+            flush();
+        }
+        buffer.put((byte) action).putInt(step).putInt(index).putInt(placement);
+    }
+
+    /**
+     * Writes the buffered records to the file, where they survive the process being killed.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered records and forces the file to disk, where they also survive a power loss.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    public void force() throws IOException {
+        flush();
+        channel.force(false);
+    }
+
+    /**
+     * Writes the buffered records and closes the file.
+     *
+     * @throws IOException if the file cannot be written or closed
+     */
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package queues;
+import exceptionclasses.*;
+
+/**
+ * <p>Title: IntCircularArrayQueue Class</p>
+ *
+ * <p>Description: A CircularArrayQueue of int values. It behaves like
+ * CircularArrayQueue, but stores the items in an int array, so enqueuing and
+ * dequeuing positions, ids or command codes never boxes them into Integer
+ * objects.</p>
+ *
+ * @author Lehan Zhang
+ */
+
+public class IntCircularArrayQueue {
+
+	private int front;
+	private int rear;
+	private int[] contents;
+	private int count;
+
+	/**
+	 * default constructor -- creates an empty queue.
+	 */
+	public IntCircularArrayQueue() {
+		this(100);
+	}
+
+	/**
+	 * parameterized constructor --
+	 * creates an empty queue that is initially capable of storing
+	 * 'size' items.
+	 * @param size the initial size of the queue as specified by the user
+	 */
+	public IntCircularArrayQueue(int size) {
+		front = 0;
+		rear = 0;
+		contents = new int[size > 0 ? size : 100];
+		count = 0;
+	}
+
+	/**
+	 * enqueue --
+	 * stores a new item at the rear of the queue; if the queue becomes
+	 * full, its size is automatically increased to accommodate additional items.
+	 * @param newItem the value to be stored at the rear of the queue
+	 */
+	public void enqueue(int newItem) {
+		if (count == contents.length) {
+			expandCapacity();
+		}
+
+		contents[rear] = newItem;
+		rear = (rear + 1) % contents.length;
+		count++;
+	}
+
+	/**
+	 * dequeue -- removes the front-most item from the queue.
+	 * @return the value which was stored at the front of the queue
+	 * @throws EmptyQueueException if the queue is empty
+	 */
+	public int dequeue() throws EmptyQueueException {
+		if (count == 0) {
+			throw new EmptyQueueException("IntCircularArrayQueue collection is empty");
+		}
+
+		int item = contents[front];
+		front = (front + 1) % contents.length;
+		count--;
+
+		return item;
+	}
+
+	/**
+	 * front --
+	 * returns the item stored at the front of the queue; the queue
+	 * is not modified.
+	 * @return the value which is stored at the front of the queue
+	 * @throws EmptyQueueException if the queue is empty
+	 */
+	public int front() throws EmptyQueueException {
+		if (isEmpty()) {
+			throw new EmptyQueueException("IntCircularArrayQueue is empty!");
+		}
+		return contents[front];
+	}
+
+	/**
+	 * isEmpty -- determines whether or not the queue is empty.
+	 * @return true if the queue is empty; false otherwise
+	 */
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * size -- returns the count of the number of items in the queue.
+	 * @return count
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * clear -- removes every item from the queue, keeping its capacity.
+	 */
+	public void clear() {
+		front = 0;
+		rear = 0;
+		count = 0;
+	}
+
+	/**
+	 * search -- looking for the given value in the queue
+	 * @param item the value to search for
+	 * @return a 1-based index representing the order of the items in the queue; returns -1 if not found
+	 */
+	public int search(int item) {
+		int current = front;
+
+		for (int i = 0; i < count; i++) {
+			if (contents[current] == item) {
+				return i + 1;
+			}
+			current = (current + 1) % contents.length;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * expandCapacity --
+	 * a private method called upon by the enqueue method when the queue
+	 * becomes full; the queue size is doubled to accommodate the storage of
+	 * additional items.
+	 */
+	private void expandCapacity() {
+		int[] temp = new int[contents.length * 2];
+		int firstPart = Math.min(count, contents.length - front);
+		System.arraycopy(contents, front, temp, 0, firstPart);
+		System.arraycopy(contents, 0, temp, firstPart, count - firstPart);
+		front = 0;
+		rear = count;
+		contents = temp;
+	}
+
+	/**
+	 * toString method - returns a String representing the current state of the queue.
+	 * @return a String containing all items in the queue
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		int current = front;
+
+		for (int i = 0; i < count; i++) {
+			str.append(contents[current]).append("\n");
+			current = (current + 1) % contents.length;
+		}
+
+		return str.toString();
+	}
+}
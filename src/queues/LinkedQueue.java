@@ -72,7 +72,7 @@ public class LinkedQueue<E> implements QueueADT<E> {
      * @return true if the queue is empty; false if the queue is not empty
      */
     public boolean isEmpty() {
-        return size()==0;
+        return front == null;
     }
 
     /**
@@ -0,0 +1,243 @@
+package queues;
+import exceptionclasses.EmptyQueueException;
+
+/**
+ * <p>Title: The PersistentQueue Class</p>
+ *
+ * <p>Description: Defines an immutable queue. Adding or removing an item does
+ * not change the queue; it returns a new queue that shares all its other nodes
+ * with the old one, so keeping an old version of the queue costs nothing.
+ * Items can also be taken from the rear and put back at the front, which is
+ * what undoing an enqueue or a dequeue needs.</p>
+ *
+ * <p>The items are kept in two linked lists: the front list holds the oldest
+ * items in order, the rear list holds the newest items in reverse order. Both
+ * ends can be reached in constant time. When one list runs out, the other one
+ * is split in half, which costs time proportional to its length but leaves
+ * half of the items on each side. Used like an ordinary queue, where only the
+ * newest version is changed, every operation therefore takes amortized
+ * constant time.</p>
+ *
+ * <p>That bound does not carry over to old versions. The split queue is
+ * remembered by the version that needed it, and every version made from that
+ * version afterwards starts from the split queue, so taking from an old version
+ * again does not split the same list twice. But a version that was never split
+ * can be changed again and again, e.g. a road state restored by several undos,
+ * and each of the new versions may need its own split: a single operation can
+ * then take time proportional to the size of the queue.</p>
+ *
+ * @author Lehan Zhang
+ */
+
+public final class PersistentQueue<E> {
+    private final Node<E> front; // oldest items, front of the queue first
+    private final Node<E> rear; // newest items, rear of the queue first
+    private final int frontSize, rearSize; // number of nodes in each list
+    private PersistentQueue<E> balanced; // the same items split evenly, once needed; later versions start from it
+
+    /**
+     * default constructor - creates an empty queue
+     */
+    public PersistentQueue() {
+        this(null, null, 0, 0);
+    }
+
+    private PersistentQueue(Node<E> front, Node<E> rear, int frontSize, int rearSize) {
+        this.front = front;
+        this.rear = rear;
+        this.frontSize = frontSize;
+        this.rearSize = rearSize;
+    }
+
+    /**
+     * enqueue method - adds the specified item to the rear of the queue
+     * @param newItem a reference to the item to be added to the queue
+     * @return a queue holding the items of this queue followed by newItem
+     */
+    public PersistentQueue<E> enqueue(E newItem) {
+        if (balanced != null) {
+            return balanced.enqueue(newItem);
+        }
+        if (isEmpty()) {
+            return new PersistentQueue<>(new Node<>(newItem), null, 1, 0);
+        }
+        return new PersistentQueue<>(front, new Node<>(newItem, rear), frontSize, rearSize + 1);
+    }
+
+    /**
+     * addFirst method - adds the specified item to the front of the queue
+     * @param newItem a reference to the item to be added to the queue
+     * @return a queue holding newItem followed by the items of this queue
+     */
+    public PersistentQueue<E> addFirst(E newItem) {
+        if (balanced != null) {
+            return balanced.addFirst(newItem);
+        }
+        return new PersistentQueue<>(new Node<>(newItem, front), rear, frontSize + 1, rearSize);
+    }
+
+    /**
+     * dequeue method - removes the item at the front of the queue
+     * @return a queue holding the items of this queue except the front one
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public PersistentQueue<E> dequeue() throws EmptyQueueException {
+        if (isEmpty()) {
+            throw new EmptyQueueException("PersistentQueue collection is empty");
+        }
+        if (front == null || balanced != null) {
+            return balance().dequeue();
+        }
+        return new PersistentQueue<>(front.getNext(), rear, frontSize - 1, rearSize);
+    }
+
+    /**
+     * removeLast method - removes the item at the rear of the queue
+     * @return a queue holding the items of this queue except the rear one
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public PersistentQueue<E> removeLast() throws EmptyQueueException {
+        if (isEmpty()) {
+            throw new EmptyQueueException("The queue is empty.");
+        }
+        if (rear == null || balanced != null) {
+            return balance().removeLast();
+        }
+        return new PersistentQueue<>(front, rear.getNext(), frontSize, rearSize - 1);
+    }
+
+    /**
+     * front method - returns a reference to the item at the front of the queue
+     * @return a reference to the item at the front of the queue
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public E front() throws EmptyQueueException {
+        if (isEmpty()) {
+            throw new EmptyQueueException("Queue is empty");
+        }
+        if (front == null) {
+            return balance().front();
+        }
+        return front.getItem();
+    }
+
+    /**
+     * rear method - returns a reference to the item at the rear of the queue
+     * @return a reference to the item at the rear of the queue
+     * @throws EmptyQueueException if the queue is empty
+     */
+    public E rear() throws EmptyQueueException {
+        if (isEmpty()) {
+            throw new EmptyQueueException("Queue is empty");
+        }
+        if (rear == null) {
+            return balance().rear();
+        }
+        return rear.getItem();
+    }
+
+    /**
+     * isEmpty method - determines whether or not the queue is empty
+     * @return true if the queue is empty; false if the queue is not empty
+     */
+    public boolean isEmpty() {
+        return frontSize + rearSize == 0;
+    }
+
+    /**
+     * size method - returns a count of the number of items in the queue
+     * @return the number of items in the queue
+     */
+    public int size() {
+        return frontSize + rearSize;
+    }
+
+    /**
+     * toString method - returns a String representing the state of the queue
+     * @return a string containing all items in the queue, front to rear, one per line
+     */
+    public String toString() {
+        StringBuilder copy = new StringBuilder();
+        for (Node<E> current = front; current != null; current = current.getNext()) {
+            copy.append(current.getItem()).append("\n");
+        }
+        Object[] newest = new Object[rearSize];
+        int i = rearSize;
+        for (Node<E> current = rear; current != null; current = current.getNext()) {
+            newest[--i] = current.getItem();
+        }
+        for (Object item : newest) {
+            copy.append(item).append("\n");
+        }
+        return copy.toString();
+    }
+
+    /**
+     * Returns this queue with its items split evenly between the two lists.
+     * Only called when one of the lists is empty and the other is not, or
+     * when the split queue is already known.
+     */
+    private PersistentQueue<E> balance() {
+        PersistentQueue<E> result = balanced;
+        if (result == null) {
+            if (front == null) {
+                // the newest half stays in the rear list, the oldest half becomes the front list
+                int keep = rearSize / 2;
+                Object[] kept = take(rear, keep);
+                Node<E> newFront = reverse(skip(rear, keep), null);
+                result = new PersistentQueue<>(newFront, build(kept), rearSize - keep, keep);
+            } else {
+                int keep = frontSize / 2;
+                Object[] kept = take(front, keep);
+                Node<E> newRear = reverse(skip(front, keep), null);
+                result = new PersistentQueue<>(build(kept), newRear, keep, frontSize - keep);
+            }
+            balanced = result; // safe to share between threads: its fields are final
+        }
+        return result;
+    }
+
+    /**
+     * Returns the items of the first count nodes of list.
+     */
+    private static <E> Object[] take(Node<E> list, int count) {
+        Object[] items = new Object[count];
+        for (int i = 0; i < count; i++) {
+            items[i] = list.getItem();
+            list = list.getNext();
+        }
+        return items;
+    }
+
+    /**
+     * Returns the list after its first count nodes.
+     */
+    private static <E> Node<E> skip(Node<E> list, int count) {
+        for (int i = 0; i < count; i++) {
+            list = list.getNext();
+        }
+        return list;
+    }
+
+    /**
+     * Returns a new list of the nodes of list in reverse order, followed by tail.
+     */
+    private static <E> Node<E> reverse(Node<E> list, Node<E> tail) {
+        for (Node<E> current = list; current != null; current = current.getNext()) {
+            tail = new Node<>(current.getItem(), tail);
+        }
+        return tail;
+    }
+
+    /**
+     * Returns a new list of the items, in the same order.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> Node<E> build(Object[] items) {
+        Node<E> list = null;
+        for (int i = items.length - 1; i >= 0; i--) {
+            list = new Node<>((E) items[i], list);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,156 @@
+package stacks;
+
+/**
+ * <p>Title: The IntArrayStack Class</p>
+ *
+ * <p>Description: An ArrayStack of int values. It behaves like ArrayStack,
+ * but stores the items in an int array, so pushing and popping indexes,
+ * counts or command codes never boxes them into Integer objects.</p>
+ *
+ * @author Lehan Zhang
+ */
+import exceptionclasses.EmptyStackException;
+import java.util.Arrays;
+
+public class IntArrayStack {
+	/**
+	 * contents - the array containing the stack items
+	 */
+	private int[] contents;
+	/**
+	 * top - an index to the top-most item in the stack
+	 */
+	private int top;
+
+	/**
+	 * default constructor --
+	 * Creates an empty stack with room for 10 items before it grows.
+	 */
+	public IntArrayStack() {
+		this(10);
+	}
+
+	/**
+	 * parameterized constructor --
+	 * Creates a stack whose initial size is specified by the user.
+	 *
+	 * @param size the initial size of the stack
+	 */
+	public IntArrayStack(int size) {
+		contents = new int[Math.max(size, 1)];
+		top = -1;
+	}
+
+	/**
+	 * push method --
+	 * Stores a new item on the top of the stack; the stack size
+	 * is increased if necessary.
+	 *
+	 * @param item the value to be stored on the top of the stack
+	 */
+	public void push(int item) {
+		if (top == contents.length - 1) {
+			this.expandCapacity();
+		}
+		top++;
+		contents[top] = item;
+	}
+
+	/**
+	 * pop method --
+	 * Removes the top-most item from the stack.
+	 *
+	 * @return the value which was stored on top of the stack
+	 * @throws EmptyStackException if the stack is empty
+	 */
+	public int pop() {
+		if (isEmpty()) {
+			throw new EmptyStackException("IntArrayStack collection is empty");
+		}
+		int itemRemoved = contents[top];
+		top--;
+		return itemRemoved;
+	}
+
+	/**
+	 * peek method --
+	 * Returns the top-most item on the stack without removing it
+	 *
+	 * @return the value which is currently stored on top of the stack.
+	 * @throws EmptyStackException if the stack is empty
+	 */
+	public int peek() {
+		if (isEmpty()) {
+			throw new EmptyStackException("IntArrayStack collection is empty");
+		}
+		return contents[top];
+	}
+
+	/**
+	 * search method --
+	 * Returns the 1-based position where a value is on the stack, counted
+	 * from the top; the topmost item on the stack is at distance 1.
+	 *
+	 * @param target the value to search for
+	 * @return the 1-based position from the top of the stack where the value
+	 * is located; returns -1 if the value is not on the stack
+	 */
+	public int search(int target) {
+		for (int i = top; i >= 0; i--) {
+			if (contents[i] == target) {
+				return top - i + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * isEmpty method --
+	 * Determines whether or not the stack is empty.
+	 *
+	 * @return true if the stack is empty; false if the stack is not empty
+	 */
+	public boolean isEmpty() {
+		return top == -1;
+	}
+
+	/**
+	 * size method --
+	 * Returns a count of the number of items in the stack.
+	 *
+	 * @return the number of items in the stack
+	 */
+	public int size() {
+		return top + 1;
+	}
+
+	/**
+	 * clear method --
+	 * Removes every item from the stack, keeping its capacity.
+	 */
+	public void clear() {
+		top = -1;
+	}
+
+	/**
+	 * toString method --
+	 * Returns a String representing the state of the stack
+	 *
+	 * @return a string containing all items in the stack, top first
+	 */
+	public String toString() {
+		StringBuilder str = new StringBuilder();
+		for (int i = top; i >= 0; i--) {
+			str.append(contents[i]).append("\n");
+		}
+		return str.toString();
+	}
+
+	/**
+	 * Creates a new array to store the contents of the stack with
+	 * twice the capacity of the old one.
+	 */
+	private void expandCapacity() {
+		contents = Arrays.copyOf(contents, contents.length * 2);
+	}
+}
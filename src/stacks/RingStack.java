@@ -0,0 +1,214 @@
+package stacks;
+
+import exceptionclasses.EmptyStackException;
+
+/**
+ * <p>Title: The RingStack Class</p>
+ *
+ * <p>Description: A stack kept in a circular array, so that besides pushing
+ * and popping at the top, the oldest item can be removed from the bottom in
+ * constant time. This makes it a bounded history: push new items, and remove
+ * items from the bottom whenever the stack holds more than it should. The
+ * array is doubled when a push finds it full, like ArrayStack; a stack whose
+ * bottom is trimmed to a fixed size never grows past it. Items can also be
+ * read by their position from the bottom.</p>
+ *
+ * @author Lehan Zhang
+ */
+public class RingStack<E> implements StackADT<E> {
+	/**
+	 * contents - a circular array containing the stack items
+	 */
+	private E[] contents;
+	/**
+	 * bottom - the index of the bottom-most item in contents
+	 */
+	private int bottom;
+	/**
+	 * count - the number of items in the stack
+	 */
+	private int count;
+
+	/**
+	 * default constructor --
+	 * Creates an empty stack capable of storing 16 items before it grows.
+	 */
+	public RingStack() {
+		this(16);
+	}
+
+	/**
+	 * parameterized constructor --
+	 * Creates a stack whose initial size is specified by the user.
+	 *
+	 * @param size the initial size of the stack
+	 */
+	@SuppressWarnings("unchecked")
+	public RingStack(int size) {
+		contents = (E[]) (new Object[size > 0 ? size : 16]);
+		bottom = 0;
+		count = 0;
+	}
+
+	/**
+	 * push method --
+	 * Stores a new item on the top of the stack; the stack size
+	 * is increased if necessary.
+	 *
+	 * @param item a reference to the item to be stored on the top of the stack
+	 */
+	public void push(E item) {
+		if (count == contents.length) {
+			expandCapacity();
+		}
+		contents[index(count)] = item;
+		count++;
+	}
+
+	/**
+	 * pop method --
+	 * Removes the top-most item from the stack.
+	 *
+	 * @return a reference to the item which was stored on top of the stack
+	 * @throws EmptyStackException if the stack is empty
+	 */
+	public E pop() {
+		if (isEmpty()) {
+			throw new EmptyStackException("RingStack is empty!");
+		}
+		count--;
+		int top = index(count);
+		E itemRemoved = contents[top];
+		contents[top] = null;
+		return itemRemoved;
+	}
+
+	/**
+	 * peek method --
+	 * Returns the top-most item on the stack without removing it.
+	 *
+	 * @return a reference to the item which is currently stored on top of the stack
+	 * @throws EmptyStackException if the stack is empty
+	 */
+	public E peek() {
+		if (isEmpty()) {
+			throw new EmptyStackException("RingStack is empty!");
+		}
+		return contents[index(count - 1)];
+	}
+
+	/**
+	 * removeBottom method --
+	 * Removes the bottom-most (oldest) item from the stack.
+	 *
+	 * @return a reference to the item which was stored at the bottom of the stack
+	 * @throws EmptyStackException if the stack is empty
+	 */
+	public E removeBottom() {
+		if (isEmpty()) {
+			throw new EmptyStackException("RingStack is empty!");
+		}
+		E itemRemoved = contents[bottom];
+		contents[bottom] = null;
+		bottom = (bottom + 1) % contents.length;
+		count--;
+		return itemRemoved;
+	}
+
+	/**
+	 * peekBottom method --
+	 * Returns the bottom-most (oldest) item on the stack without removing it.
+	 *
+	 * @return a reference to the item which is currently stored at the bottom of the stack
+	 * @throws EmptyStackException if the stack is empty
+	 */
+	public E peekBottom() {
+		if (isEmpty()) {
+			throw new EmptyStackException("RingStack is empty!");
+		}
+		return contents[bottom];
+	}
+
+	/**
+	 * get method --
+	 * Returns the item at a 0-based position counted from the bottom of the stack.
+	 *
+	 * @param position 0 for the bottom-most item, size() - 1 for the top-most one
+	 * @return a reference to the item at that position
+	 * @throws IndexOutOfBoundsException if the position is not in the stack
+	 */
+	public E get(int position) {
+		if (position < 0 || position >= count) {
+			throw new IndexOutOfBoundsException("Position " + position + " out of " + count);
+		}
+		return contents[index(position)];
+	}
+
+	/**
+	 * isEmpty method --
+	 * Determines whether or not the stack is empty.
+	 *
+	 * @return true if the stack is empty; false if the stack is not empty
+	 */
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	/**
+	 * size method --
+	 * Returns a count of the number of items in the stack.
+	 *
+	 * @return the number of items in the stack
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * clear method --
+	 * Removes every item from the stack, keeping its capacity.
+	 */
+	public void clear() {
+		while (count > 0) {
+			count--;
+			contents[index(count)] = null;
+		}
+		bottom = 0;
+	}
+
+	/**
+	 * toString method --
+	 * Returns a String representing the state of the stack
+	 *
+	 * @return a string containing all items in the stack, top-most first
+	 */
+	public String toString() {
+		String str = "";
+		for (int i = count - 1; i >= 0; i--) {
+			str += contents[index(i)].toString() + "\n";
+		}
+		return str;
+	}
+
+	/**
+	 * Returns the index in contents of the item at a position from the bottom.
+	 */
+	private int index(int position) {
+		int i = bottom + position;
+		return i < contents.length ? i : i - contents.length;
+	}
+
+	/**
+	 * Creates a new array to store the contents of the stack with
+	 * twice the capacity of the old one, moving the bottom item to index 0.
+	 */
+	@SuppressWarnings("unchecked")
+	private void expandCapacity() {
+		E[] temp = (E[]) new Object[contents.length * 2];
+		for (int i = 0; i < count; i++) {
+			temp[i] = contents[index(i)];
+		}
+		contents = temp;
+		bottom = 0;
+	}
+}